@@ -0,0 +1,233 @@
+// ===================================================================
+// AWGNMedium
+// ===================================================================
+
+
+
+// ===================================================================
+// A point-to-point medium that sends each bit as an antipodal signal
+// (+1 for a 0, -1 for a 1) and adds white Gaussian noise to it, as a
+// radio link does.  The receiver decides each bit on the sign of the
+// signal, so a bit flips when the noise carries the signal past zero.
+//
+// Beside each bit, the medium delivers a soft value: the
+// log-likelihood ratio of a 0 to a 1 given the signal received, which
+// on this channel is 2y / sigma^2 for a signal y and noise of
+// variance sigma^2.  It is quantized into a byte, at a fixed number of
+// steps per unit (so that a value of 4 is one nat), and clamped to
+// +/-127 so that it never loses its sign.  A data link layer whose
+// decoder keeps soft values weighs each bit by its confidence; any
+// other takes the bits as they are.
+//
+// The noise is set by the signal-to-noise ratio per bit sent, Es/N0,
+// in decibels, as in AWGN@2.  A code of rate R turns that into an
+// Eb/N0 higher by 10 log10(1/R) decibels (3 for rate 1/2).
+class AWGNMedium extends Medium {
+// ===================================================================
+
+
+
+    // ===============================================================
+    // PUBLIC METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // The constructors.  By default, Es/N0 is 4 dB, at which about one
+    // bit in eighty flips.  The ratio may also be given as a string,
+    // as the simulator does for AWGN@2.
+    public AWGNMedium () {
+
+	this(4.0);
+
+    } // AWGNMedium
+
+    public AWGNMedium (String signalToNoiseDecibels) {
+
+	this(Double.parseDouble(signalToNoiseDecibels));
+
+    } // AWGNMedium
+
+    public AWGNMedium (double signalToNoiseDecibels) {
+
+	this.signalToNoiseDecibels = signalToNoiseDecibels;
+	double variance = 0.5 / Math.pow(10.0, signalToNoiseDecibels / 10.0);
+	sigma = Math.sqrt(variance);
+	softPerSignal = softPerNat * 2.0 / variance;
+
+    } // AWGNMedium
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Register one of the two allowed clients as connected to an end
+    // of the medium.
+    public void register (PhysicalLayer client) {
+
+	// If there is an end of the wire available, then assign this
+	// client to it.
+	if (client1 == null) {
+
+	    client1 = client;
+
+	} else if (client2 == null) {
+
+	    client2 = client;
+
+	} else {
+
+	    throw new RuntimeException();
+
+	}
+
+    } // register
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Allow a client to send a bit to the other client.
+    public void send (PhysicalLayer sender, boolean bit) {
+
+	PhysicalLayer receiver = peerOf(sender);
+
+	byte soft = receiveSignal(bit ? -1.0 : 1.0);
+	bitsCarried++;
+	if ((soft < 0) != bit) {
+
+	    bit = !bit;
+	    bitsFlipped++;
+
+	}
+
+	// Deliver the bit to the receiver by performing an upcall to
+	// it.
+	receiver.receive(bit, soft);
+
+    } // send
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Allow a client to send a block of bytes to the other client.
+    // Every bit needs a draw of its own noise, for its soft value, so
+    // the soft values are gathered into an array alongside the block.
+    // The block is copied only if some bit in it flips.
+    public void send (PhysicalLayer sender, byte[] data) {
+
+	PhysicalLayer receiver = peerOf(sender);
+
+	byte[] delivered = data;
+	byte[] soft = new byte[8 * data.length];
+	for (int i = 0; i < data.length; i++) {
+
+	    int currentByte = data[i];
+	    for (int j = 0; j < 8; j++) {
+
+		int bit = (currentByte >>> j) & 0x1;
+		byte value = receiveSignal(bit == 0 ? 1.0 : -1.0);
+		soft[8 * i + j] = value;
+		if ((value < 0 ? 1 : 0) != bit) {
+
+		    if (delivered == data) {
+
+			delivered = data.clone();
+
+		    }
+		    delivered[i] ^= (byte)(1 << j);
+		    bitsFlipped++;
+
+		}
+
+	    }
+
+	}
+	bitsCarried += (long)data.length * 8;
+
+	receiver.receive(delivered, soft);
+
+    } // send
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // PRIVATE METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Add noise to a signal, and return the soft value of what is
+    // received.
+    private byte receiveSignal (double signal) {
+
+	double received = signal + sigma * random.nextGaussian();
+	long soft = Math.round(received * softPerSignal);
+	if (soft == 0) {
+
+	    return (byte)(received < 0.0 ? -1 : 1);
+
+	}
+	return (byte)Math.max(-maxSoft, Math.min(maxSoft, soft));
+
+    } // receiveSignal
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Return the client at the other end of the wire from the
+    // sender, which must be a known client.
+    private PhysicalLayer peerOf (PhysicalLayer sender) {
+
+	if (client1 == sender) {
+
+	    return client2;
+
+	} else if (client2 == sender) {
+
+	    return client1;
+
+	} else {
+
+	    throw new RuntimeException();
+
+	}
+
+    } // peerOf
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // DATA MEMBERS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // The two physical layer clients on either end of the wire.
+    PhysicalLayer client1;
+    PhysicalLayer client2;
+
+    // The signal-to-noise ratio, in decibels; the standard deviation
+    // of the noise; and the soft value of a signal of 1.
+    final double signalToNoiseDecibels;
+    final double sigma;
+    final double softPerSignal;
+
+    // The steps of a soft value to a nat of log-likelihood, and the
+    // largest magnitude of one.
+    static final double softPerNat = 4.0;
+    static final long maxSoft = 127;
+    // ===============================================================
+
+
+
+// ===================================================================
+} // class AWGNMedium
+// ===================================================================
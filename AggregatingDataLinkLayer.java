@@ -0,0 +1,546 @@
+// =============================================================================
+// IMPORTS
+
+import java.util.Arrays;
+import java.util.Timer;
+import java.util.TimerTask;
+// =============================================================================
+
+
+
+// =============================================================================
+/**
+ *  A data link layer that uses start/stop tags and byte packing to frame the
+ *  data, and that aggregates many small messages into each frame, so that the
+ *  tags are paid for once per frame rather than once per message.
+ *
+ *  What is sent is held in a pending frame as a series of subframes, each a
+ *  length, the data, and a CRC of both.  A subframe of fewer than 128 bytes
+ *  has a length of one byte and a CRC-8, and a longer one a length of two
+ *  bytes (the first with its high bit set) and a CRC-16, so that a short
+ *  message costs two bytes beyond its data, not the three of a frame of its
+ *  own, and a long one is checked in proportion.  A message too large for
+ *  what room remains is split across subframes and frames.  The pending frame
+ *  is sent when it is full; when its oldest subframe has waited for the
+ *  latency budget, by a timer (an event in simulated time if the medium keeps
+ *  time, and otherwise a task on a timer thread of this layer's own, which
+ *  sends under the layer's lock); or when the client flushes this layer.
+ *
+ *  The receiver checks each subframe on its own, so a damaged subframe costs
+ *  only itself and those after it in the frame (whose boundaries can no
+ *  longer be trusted), and the intact ones before it are still delivered.
+ **/
+public class AggregatingDataLinkLayer extends DataLinkLayer {
+// =============================================================================
+
+
+
+    // =========================================================================
+    /**
+     * The constructor.  Make a new aggregating data link layer.
+     *
+     * @param physicalLayer The physical layer through which this data link
+     * layer should communicate.
+     **/
+    public AggregatingDataLinkLayer (PhysicalLayer physicalLayer) {
+
+	// Initialize the layer.
+	initialize(physicalLayer);
+
+    } // AggregatingDataLinkLayer
+    // =========================================================================
+
+
+
+    // =========================================================================
+    /**
+     * Accept a buffer of data to send.  Add it to the pending frame as one or
+     * more subframes, sending the pending frame whenever it fills.
+     *
+     * @param data An array of bytes to be framed and transmitted.
+     **/
+    public synchronized void send (byte[] data) {
+
+	// Add each piece that fits into the room left, sending the pending
+	// frame whenever there is no room for another piece.  A piece that
+	// would be short must fit a short subframe.
+	int dataIndex = 0;
+	do {
+
+	    if (_maxFrameSize - _pendingLength <= _shortOverhead) {
+
+		sendPending();
+
+	    }
+	    int room = _maxFrameSize - _pendingLength;
+	    int pieceLength = Math.min(data.length - dataIndex,
+				       room - _longOverhead);
+	    if (pieceLength < _shortLimit) {
+
+		pieceLength = Math.min(Math.min(data.length - dataIndex,
+						room - _shortOverhead),
+				       _shortLimit - 1);
+
+	    }
+	    addSubframe(data, dataIndex, pieceLength);
+	    dataIndex += pieceLength;
+
+	} while (dataIndex < data.length);
+
+    } // send (byte[] data)
+    // =========================================================================
+
+
+
+    // =========================================================================
+    /**
+     * Send the pending frame now, if there is one.
+     **/
+    public synchronized void flush () {
+
+	sendPending();
+
+    } // flush
+    // =========================================================================
+
+
+
+    // =========================================================================
+    /**
+     * Append one subframe to the pending frame: its length, its data, and the
+     * CRC of both, each short or long as the data is.  If it begins the
+     * pending frame, start timing the frame.
+     *
+     * @param data The original buffer of data from which to take the piece.
+     * @param begin The starting index of the piece.
+     * @param length The number of bytes in the piece.
+     **/
+    private void addSubframe (byte[] data, int begin, int length) {
+
+	if (_pendingLength == 0) {
+
+	    startLatencyTimer();
+
+	}
+
+	int start = _pendingLength;
+	if (length < _shortLimit) {
+
+	    _pending[_pendingLength++] = (byte)length;
+
+	} else {
+
+	    _pending[_pendingLength++] = (byte)(0x80 | (length >>> 8));
+	    _pending[_pendingLength++] = (byte)length;
+
+	}
+	System.arraycopy(data, begin, _pending, _pendingLength, length);
+	_pendingLength += length;
+	if (length < _shortLimit) {
+
+	    int crc = calculateCRC8(_pending, start, _pendingLength);
+	    _pending[_pendingLength++] = (byte)crc;
+
+	} else {
+
+	    int crc = calculateCRC16(_pending, start, _pendingLength);
+	    _pending[_pendingLength++] = (byte)(crc >>> 8);
+	    _pending[_pendingLength++] = (byte)crc;
+
+	}
+	_pendingSubframes++;
+
+    } // addSubframe (byte[] data, int begin, int length)
+    // =========================================================================
+
+
+
+    // =========================================================================
+    /**
+     * Frame the pending subframes, escaping any byte that is itself a tag,
+     * and send the frame.
+     **/
+    private void sendPending () {
+
+	if (_pendingLength == 0) {
+
+	    return;
+
+	}
+
+	// Begin with the start tag, and end with a stop tag.
+	int frameIndex = 0;
+	_framedData[frameIndex++] = _startTag;
+	for (int i = 0; i < _pendingLength; i++) {
+
+	    byte currentByte = _pending[i];
+	    if ((currentByte == _startTag) ||
+		(currentByte == _stopTag) ||
+		(currentByte == _escapeTag)) {
+
+		_framedData[frameIndex++] = _escapeTag;
+
+	    }
+	    _framedData[frameIndex++] = currentByte;
+
+	}
+	_framedData[frameIndex++] = _stopTag;
+
+	// The medium may hold on to the frame, so send a copy of its own.
+	framesSent++;
+	subframesSent += _pendingSubframes;
+	_pendingLength = 0;
+	_pendingSubframes = 0;
+	physicalLayer.send(Arrays.copyOf(_framedData, frameIndex));
+
+    } // sendPending ()
+    // =========================================================================
+
+
+
+    // =========================================================================
+    /**
+     * Set a timer to send the pending frame, just begun, once it has waited
+     * for the latency budget, unless it has been sent by then.
+     **/
+    private void startLatencyTimer () {
+
+	final long frame = framesSent;
+	EventScheduler scheduler = physicalLayer.scheduler();
+	if (scheduler == null) {
+
+	    if (_timer == null) {
+
+		_timer = new Timer("Aggregating", true);
+
+	    }
+	    _timer.schedule(new TimerTask() {
+
+		    public void run () {
+
+			synchronized (AggregatingDataLinkLayer.this) {
+
+			    if (framesSent == frame) {
+
+				sendPending();
+
+			    }
+
+			}
+
+		    }
+
+		}, Math.max(1, _latencyBudget / 1000000));
+	    return;
+
+	}
+
+	scheduler.schedule(EventScheduler.ticks(_latencyBudget / 1.0e9),
+			   new Event() {
+
+		public void fire () {
+
+		    if (framesSent == frame) {
+
+			sendPending();
+
+		    }
+
+		}
+
+	    });
+
+    } // startLatencyTimer ()
+    // =========================================================================
+
+
+
+    // =========================================================================
+    /**
+     * Calculate the CRC-8 (x^8 + x^2 + x + 1) or the CRC-16 (CCITT, x^16 +
+     * x^12 + x^5 + 1) of a sequence of bytes, a byte at a time from a table.
+     *
+     * @param data A buffer of bytes.
+     * @param begin The starting index of the bytes to examine.
+     * @param end The ending index of the bytes to examine.
+     * @return The CRC, in the low 8 or 16 bits.
+     **/
+    private static int calculateCRC8 (byte[] data, int begin, int end) {
+
+	int crc = 0xff;
+	for (int i = begin; i < end; i++) {
+
+	    crc = _crc8Table[(crc ^ data[i]) & 0xff];
+
+	}
+	return crc;
+
+    } // calculateCRC8 (byte[] data, int begin, int end)
+
+    private static int calculateCRC16 (byte[] data, int begin, int end) {
+
+	int crc = 0xffff;
+	for (int i = begin; i < end; i++) {
+
+	    crc = ((crc << 8) ^ _crc16Table[((crc >>> 8) ^ data[i]) & 0xff]) &
+		0xffff;
+
+	}
+	return crc;
+
+    } // calculateCRC16 (byte[] data, int begin, int end)
+
+    private static int[] makeCRCTable (int width, int polynomial) {
+
+	int[] table = new int[256];
+	int top = 1 << (width - 1);
+	int mask = (1 << width) - 1;
+	for (int i = 0; i < 256; i++) {
+
+	    int crc = i << (width - 8);
+	    for (int bit = 0; bit < 8; bit++) {
+
+		crc = ((crc & top) != 0 ? (crc << 1) ^ polynomial : crc << 1);
+
+	    }
+	    table[i] = crc & mask;
+
+	}
+	return table;
+
+    } // makeCRCTable (int width, int polynomial)
+    // =========================================================================
+
+
+
+    // =========================================================================
+    /**
+     * Determine whether the buffered data forms a complete frame.  Whether
+     * the byte received is escaped is followed as each byte arrives, so that
+     * an escaped escape tag before a stop tag is not mistaken for escaping
+     * it.
+     *
+     * @return Whether a complete buffer has arrived.
+     **/
+    protected boolean receivedCompleteFrame () {
+
+	if (bufferIndex == 1) {
+
+	    _escaped = false;
+
+	}
+
+	byte received = incomingBuffer[bufferIndex - 1];
+	if (_escaped) {
+
+	    _escaped = false;
+	    return false;
+
+	}
+	if ((bufferIndex > 1) && (received == _escapeTag)) {
+
+	    _escaped = true;
+	    return false;
+
+	}
+
+	// A frame is complete iff the byte received is an non-escaped stop tag,
+	// and is not the first of the frame.
+	return (bufferIndex >= 2) && (received == _stopTag);
+
+    } // receivedCompleteFrame
+    // =========================================================================
+
+
+
+    // =========================================================================
+    /**
+     * Remove the framing metadata, check each subframe, and deliver the
+     * intact ones.  All but the last intact subframe are delivered to the
+     * client here, in order; the last is returned, to be delivered as any
+     * frame's data is.
+     *
+     * @return The data of the last intact subframe; <tt>null</tt> if no
+     *         subframe was intact.
+     **/
+    protected byte[] processFrame () {
+
+	// Check the start tag.
+	if (incomingBuffer[0] != _startTag) {
+
+	    EventSink.current().event(EventSink.missingStartTag,
+				      "AggregatingDLL: Missing start tag!");
+	    return null;
+
+	}
+
+	// Remove the escape tags between the start and stop tags.
+	int length = 0;
+	for (int frameIndex = 1; frameIndex < bufferIndex - 1; frameIndex++) {
+
+	    if (incomingBuffer[frameIndex] == _escapeTag) {
+
+		frameIndex++;
+
+	    }
+	    _unstuffed[length++] = incomingBuffer[frameIndex];
+
+	}
+
+	// Check each subframe in turn.  Once one fails, the lengths after it
+	// cannot be trusted, so the rest of the frame is dropped too.  A long
+	// length must not be one that a short could have held.
+	byte[] previous = null;
+	int index = 0;
+	while (index < length) {
+
+	    boolean isShort = ((_unstuffed[index] & 0x80) == 0);
+	    int pieceLength = -1;
+	    if (isShort) {
+
+		pieceLength = _unstuffed[index] & 0xff;
+
+	    } else if (length - index >= 2) {
+
+		pieceLength = ((_unstuffed[index] & 0x7f) << 8) |
+		    (_unstuffed[index + 1] & 0xff);
+		if (pieceLength < _shortLimit) {
+
+		    pieceLength = -1;
+
+		}
+
+	    }
+	    int begin = index + (isShort ? 1 : 2);
+	    int end = begin + pieceLength;
+	    int checkLength = (isShort ? 1 : 2);
+	    boolean intact = ((pieceLength >= 0) &&
+			      (end + checkLength <= length));
+	    if (intact && isShort) {
+
+		intact = (calculateCRC8(_unstuffed, index, end) ==
+			  (_unstuffed[end] & 0xff));
+
+	    } else if (intact) {
+
+		intact = (calculateCRC16(_unstuffed, index, end) ==
+			  (((_unstuffed[end] & 0xff) << 8) |
+			   (_unstuffed[end + 1] & 0xff)));
+
+	    }
+	    if (!intact) {
+
+		EventSink.current().event(EventSink.frameRejected);
+		subframesDamaged++;
+		if (previous != null) {
+
+		    framesDiscarded++;
+
+		}
+		break;
+
+	    }
+
+	    EventSink.current().event(EventSink.frameAccepted);
+	    subframesReceived++;
+	    if (previous != null) {
+
+		client.receive(previous);
+
+	    }
+	    previous = Arrays.copyOfRange(_unstuffed, begin, end);
+	    index = end + checkLength;
+
+	}
+
+	return previous;
+
+    } // processFrame
+    // =========================================================================
+
+
+
+    // =========================================================================
+    // DATA MEMBERS
+
+    /**
+     * The tag that marks the beginning of a frame.
+     **/
+    final byte _startTag = (byte)'{';
+
+    /**
+     * The tag that marks the end of a frame.
+     **/
+    final byte _stopTag = (byte)'}';
+
+    /**
+     * The tag that marks the following byte as data (and not metadata).
+     **/
+    final byte _escapeTag = (byte)'\\';
+
+    /**
+     * The maximum number of bytes of subframes (lengths and CRCs included,
+     * but not escape tags) in a frame.  A frame escaped throughout must
+     * still fit in the incoming buffer.
+     **/
+    final int _maxFrameSize = 1024;
+
+    /**
+     * The bytes that a short and a long subframe add to their data (the
+     * length and the CRC), and the length from which a subframe is long.
+     **/
+    final int _shortOverhead = 2;
+    final int _longOverhead = 4;
+    final int _shortLimit = 128;
+
+    /**
+     * The longest that a subframe may wait to be sent, in nanoseconds.
+     **/
+    final long _latencyBudget = 1000000;
+
+    /**
+     * The tables from which CRCs are calculated a byte at a time.
+     **/
+    static final int[] _crc8Table = makeCRCTable(8, 0x07);
+    static final int[] _crc16Table = makeCRCTable(16, 0x1021);
+
+    /**
+     * The pending frame's subframes, and their number and length.
+     **/
+    final byte[] _pending = new byte[_maxFrameSize];
+    int _pendingSubframes;
+    int _pendingLength;
+
+    /**
+     * The thread on which the latency budget is kept if the medium does not
+     * keep time, started when first needed.
+     **/
+    Timer _timer;
+
+    /**
+     * The buffers in which a frame is escaped for sending, and from which
+     * one received is unescaped.
+     **/
+    final byte[] _framedData = new byte[(_maxFrameSize * 2) + 2];
+    final byte[] _unstuffed = new byte[bufferSize];
+
+    /**
+     * Whether the last byte received was an escape tag, itself unescaped.
+     **/
+    boolean _escaped;
+
+    /**
+     * The number of frames and subframes sent, and of subframes received
+     * intact and damaged.
+     **/
+    long framesSent;
+    long subframesSent;
+    long subframesReceived;
+    long subframesDamaged;
+    // =========================================================================
+
+
+
+// =============================================================================
+} // class AggregatingDataLinkLayer
+// =============================================================================
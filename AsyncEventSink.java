@@ -0,0 +1,323 @@
+// ===================================================================
+// AsyncEventSink
+// ===================================================================
+
+
+
+// ===================================================================
+// IMPORTS
+
+import java.io.PrintStream;
+// ===================================================================
+
+
+
+// ===================================================================
+// A sink that shows the text of each event, written out by a thread
+// of its own so that the layers never wait on the console.
+//
+// The events are held in a ring of entries, allocated once and
+// reused: a reporting thread fills the next free entry (copying any
+// data into the entry's own buffer), and the writer takes every
+// filled entry at once, turns them into text, and writes them out
+// together.  Entries are only turned into text by the writer.  If the
+// writer falls a whole ring behind, reporting threads wait for it, so
+// no event is lost.  Events without text are ignored.
+class AsyncEventSink extends EventSink {
+// ===================================================================
+
+
+
+    // ===============================================================
+    // PUBLIC METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // The constructors.  By default, write to the standard output
+    // (as it is when the sink is made) through a ring of 4096 entries.
+    public AsyncEventSink () {
+
+	this(System.out, defaultCapacity);
+
+    } // AsyncEventSink
+
+    public AsyncEventSink (PrintStream out, int capacity) {
+
+	this.out = out;
+	entries = new Entry[capacity];
+	for (int i = 0; i < capacity; i++) {
+
+	    entries[i] = new Entry();
+
+	}
+
+	writer = new Thread(new Runnable() {
+
+		public void run () {
+
+		    write();
+
+		}
+
+	    }, "Event writer");
+	writer.setDaemon(true);
+	writer.start();
+
+    } // AsyncEventSink
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Ignore an event without text; queue one with text.
+    public void event (String kind) {
+
+    } // event
+
+    public void event (String kind, String text) {
+
+	put(text, null, 0, 0, null);
+
+    } // event
+
+    public void event (String kind,
+		       String text,
+		       byte[] data,
+		       int offset,
+		       int length,
+		       String suffix) {
+
+	put(text, data, offset, length, suffix);
+
+    } // event
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Wait until the writer has written every event queued so far.
+    public synchronized void flush () {
+
+	while ((taken < filled) && writer.isAlive()) {
+
+	    waitHere();
+
+	}
+
+    } // flush
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Write every event queued, and stop the writer.
+    public void close () {
+
+	flush();
+	synchronized (this) {
+
+	    closed = true;
+	    notifyAll();
+
+	}
+	try {
+
+	    writer.join();
+
+	} catch (InterruptedException e) {
+
+	    throw new RuntimeException("Interrupted while closing events");
+
+	}
+
+    } // close
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // PRIVATE METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Fill the next free entry, waiting for one if the ring is full.
+    private synchronized void put (String text,
+				   byte[] data,
+				   int offset,
+				   int length,
+				   String suffix) {
+
+	if (closed) {
+
+	    throw new RuntimeException("Event reported after closing");
+
+	}
+	while (filled - taken == entries.length) {
+
+	    waitHere();
+
+	}
+
+	Entry entry = entries[(int)(filled % entries.length)];
+	entry.text = text;
+	entry.suffix = suffix;
+	entry.length = (data == null ? -1 : length);
+	if (data != null) {
+
+	    if (entry.data.length < length) {
+
+		entry.data = new byte[Math.max(length, entry.data.length * 2)];
+
+	    }
+	    System.arraycopy(data, offset, entry.data, 0, length);
+
+	}
+
+	filled++;
+	if (filled - taken == 1) {
+
+	    notifyAll();
+
+	}
+
+    } // put
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Run the writer: wait for entries, then turn all that have been
+    // filled into text and write them out at once.  The entries taken
+    // are not reused until they have been written, so the reporting
+    // threads can go on filling others meanwhile.
+    private void write () {
+
+	StringBuilder text = new StringBuilder();
+	String newline = System.lineSeparator();
+	while (true) {
+
+	    long from;
+	    long to;
+	    synchronized (this) {
+
+		while ((taken == filled) && !closed) {
+
+		    waitHere();
+
+		}
+		if (taken == filled) {
+
+		    return;
+
+		}
+		from = taken;
+		to = filled;
+
+	    }
+
+	    text.setLength(0);
+	    for (long i = from; i < to; i++) {
+
+		Entry entry = entries[(int)(i % entries.length)];
+		if (entry.text != null) {
+
+		    text.append(entry.text);
+
+		}
+		if (entry.length >= 0) {
+
+		    text.append(new String(entry.data, 0, entry.length));
+
+		}
+		if (entry.suffix != null) {
+
+		    text.append(entry.suffix);
+
+		}
+		text.append(newline);
+
+	    }
+	    out.print(text);
+	    out.flush();
+
+	    synchronized (this) {
+
+		taken = to;
+		notifyAll();
+
+	    }
+
+	}
+
+    } // write
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Wait to be notified.
+    private void waitHere () {
+
+	try {
+
+	    wait();
+
+	} catch (InterruptedException e) {
+
+	    throw new RuntimeException("Interrupted while waiting on events");
+
+	}
+
+    } // waitHere
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // One event in the ring.  Its data occupies the first length bytes
+    // of its buffer; a length of -1 means that it has none.
+    private static class Entry {
+
+	String text;
+	String suffix;
+	byte[] data = new byte[64];
+	int length;
+
+    } // class Entry
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // DATA MEMBERS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Where the text is written, and the number of entries in the
+    // ring unless told otherwise.
+    final PrintStream out;
+    static final int defaultCapacity = 4096;
+
+    // The ring, and the number of entries ever filled and ever taken
+    // (the entries in use lie between the two, modulo the size of the
+    // ring).  Guarded by this sink.
+    final Entry[] entries;
+    long filled;
+    long taken;
+    boolean closed;
+
+    // The writer thread.
+    final Thread writer;
+    // ===============================================================
+
+
+
+// ===================================================================
+} // class AsyncEventSink
+// ===================================================================
@@ -0,0 +1,79 @@
+// ===================================================================
+// BigEndian
+// ===================================================================
+
+
+
+// ===================================================================
+// Read and write big-endian integers in a byte array, as the headers
+// of the layers above the data link layer lay them out.
+class BigEndian {
+// ===================================================================
+
+
+
+    // ===============================================================
+    // PUBLIC METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Read an integer of two, four or eight bytes from a byte array,
+    // beginning at the given index.  A short is returned unsigned.
+    static int getShort (byte[] b, int i) {
+
+	return ((b[i] & 0xff) << 8) | (b[i + 1] & 0xff);
+
+    } // getShort
+
+    static int getInt (byte[] b, int i) {
+
+	return (((b[i] & 0xff) << 24) |
+		((b[i + 1] & 0xff) << 16) |
+		((b[i + 2] & 0xff) << 8) |
+		(b[i + 3] & 0xff));
+
+    } // getInt
+
+    static long getLong (byte[] b, int i) {
+
+	return ((long)getInt(b, i) << 32) | (getInt(b, i + 4) & 0xffffffffL);
+
+    } // getLong
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Write an integer of two, four or eight bytes into a byte array,
+    // beginning at the given index.
+    static void putShort (byte[] b, int i, int value) {
+
+	b[i] = (byte)(value >>> 8);
+	b[i + 1] = (byte)value;
+
+    } // putShort
+
+    static void putInt (byte[] b, int i, int value) {
+
+	b[i] = (byte)(value >>> 24);
+	b[i + 1] = (byte)(value >>> 16);
+	b[i + 2] = (byte)(value >>> 8);
+	b[i + 3] = (byte)value;
+
+    } // putInt
+
+    static void putLong (byte[] b, int i, long value) {
+
+	putInt(b, i, (int)(value >>> 32));
+	putInt(b, i + 4, (int)value);
+
+    } // putLong
+    // ===============================================================
+
+
+
+// ===================================================================
+} // class BigEndian
+// ===================================================================
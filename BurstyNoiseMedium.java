@@ -6,6 +6,14 @@
 
 
 
+// ===================================================================
+// IMPORTS
+
+import java.util.SplittableRandom;
+// ===================================================================
+
+
+
 // ===================================================================
 // A point-to-point medium that, with low probability, will flip some
 // number of bits within a given sequence.
@@ -20,6 +28,30 @@ class BurstyNoiseMedium extends Medium {
 
 
 
+    // ===============================================================
+    // The constructor.
+    public BurstyNoiseMedium () {
+
+	bitsUntilBurst = bitsUntilEvent(burstProbability);
+
+    } // BurstyNoiseMedium
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Replace the source of randomness, and draw the gap to the first
+    // burst afresh from it.
+    public void setRandom (SplittableRandom random) {
+
+	super.setRandom(random);
+	bitsUntilBurst = bitsUntilEvent(burstProbability);
+
+    } // setRandom
+    // ===============================================================
+
+
+
     // ===============================================================
     // Register one of the two allowed clients as connected to an end
     // of the medium.
@@ -67,28 +99,17 @@ class BurstyNoiseMedium extends Medium {
 
 	}
 
-	// Are we currently in burst mode, or should we randomly enter
-	// it?  Note that if we just exited burst mode, we cannot
-	// re-enter it for at least one bit transmission.
-	if ((burstCount > 0) ||
-	    (Math.random() < burstProbability) && (burstCount != -1)) {
+	// Are we currently in burst mode, or has the gap before the
+	// next burst run out?  Note that if we just exited burst mode,
+	// we cannot re-enter it for at least one bit transmission.
+	if ((burstCount > 0) || ((burstCount == 0) && (bitsUntilBurst == 0))) {
 
-	    // We're in burst mode. Advance the count of bits that
-	    // could contribute to the burst and, with a given
-	    // probability, flip this bit.
-	    burstCount++;
-	    if (Math.random() < errorProbability) {
+	    // We're in burst mode.  Advance the burst and, with a
+	    // given probability, flip this bit.
+	    if (advanceBurst()) {
 
 		bit = !bit;
-
-	    }
-
-	    // Have we reached the maximum length for this burst?
-	    if (burstCount >= maxBurstLength) {
-
-		// We have.  End the burst by setting the count to -1,
-		// thus marking the burst as having just ended.
-		burstCount = -1;
+		bitsFlipped++;
 
 	    }
 
@@ -97,6 +118,11 @@ class BurstyNoiseMedium extends Medium {
 	    // We are not in burst mode.  This bit will be sent
 	    // normally.  Thus, we can make the wire eligible to burst
 	    // another error on the next bit.
+	    if (burstCount == 0) {
+
+		bitsUntilBurst--;
+
+	    }
 	    burstCount = 0;
 
 	}
@@ -104,6 +130,7 @@ class BurstyNoiseMedium extends Medium {
 
 	// Deliver the bit to the receiver by performing an upcall to
 	// it.
+	bitsCarried++;
 	receiver.receive(bit);
 
     } // send
@@ -111,6 +138,108 @@ class BurstyNoiseMedium extends Medium {
 
 
 
+    // ===============================================================
+    // Allow a client to send a block of bytes to the other client.
+    // Bits between bursts cannot flip, so they are skipped over in
+    // one step; only the bits inside a burst are examined one by one.
+    // The block is copied only if some bit in it flips.
+    public void send (PhysicalLayer sender, byte[] data) {
+
+	PhysicalLayer receiver = null;
+	if (client1 == sender) {
+
+	    receiver = client2;
+
+	} else if (client2 == sender) {
+
+	    receiver = client1;
+
+	} else {
+
+	    throw new RuntimeException();
+
+	}
+
+	byte[] delivered = data;
+	long blockBits = (long)data.length * 8;
+	long position = 0;
+	while (position < blockBits) {
+
+	    if ((burstCount > 0) || ((burstCount == 0) && (bitsUntilBurst == 0))) {
+
+		// Inside a burst.
+		if (advanceBurst()) {
+
+		    if (delivered == data) {
+
+			delivered = data.clone();
+
+		    }
+		    delivered[(int)(position >>> 3)] ^= (byte)(1 << (position & 7));
+		    bitsFlipped++;
+
+		}
+		position++;
+
+	    } else if (burstCount == -1) {
+
+		// The one bit that must follow the end of a burst.
+		burstCount = 0;
+		position++;
+
+	    } else {
+
+		// Skip ahead to the start of the next burst, or to the
+		// end of the block, whichever comes first.
+		long skip = Math.min(bitsUntilBurst, blockBits - position);
+		bitsUntilBurst -= skip;
+		position += skip;
+
+	    }
+
+	}
+	bitsCarried += blockBits;
+
+	receiver.receive(delivered);
+
+    } // send
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // PRIVATE METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Advance the count of bits that could contribute to the current
+    // burst, ending it if it has reached its maximum length.  Return
+    // whether the bit at this point of the burst should flip.
+    private boolean advanceBurst () {
+
+	burstCount++;
+	boolean flip = (random.nextDouble() < errorProbability);
+
+	// Have we reached the maximum length for this burst?
+	if (burstCount >= maxBurstLength) {
+
+	    // We have.  End the burst by setting the count to -1, thus
+	    // marking the burst as having just ended, and choose the
+	    // gap before the next one.
+	    burstCount = -1;
+	    bitsUntilBurst = bitsUntilEvent(burstProbability);
+
+	}
+
+	return flip;
+
+    } // advanceBurst
+    // ===============================================================
+
+
+
     // ===============================================================
     // DATA MEMBERS
     // ===============================================================
@@ -126,11 +255,14 @@ class BurstyNoiseMedium extends Medium {
     // to keep track of the number of bits since we entered burst
     // error mode.  Thus, the number of bits that flip in a birst is
     // at most maxBurstLength (if the first and last bits of the
-    // sequence do flip).
+    // sequence do flip).  Bursts begin independently on each eligible
+    // bit, so the number of eligible bits before the next burst is
+    // drawn once and counted down.
     final double burstProbability = 0.005;
     final int maxBurstLength = 15;
     final double errorProbability = 0.25;
     int burstCount;
+    long bitsUntilBurst;
     // ===============================================================
 
 
@@ -0,0 +1,398 @@
+// ===================================================================
+// BusMedium
+// ===================================================================
+
+
+
+// ===================================================================
+// IMPORTS
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+// ===================================================================
+
+
+
+// ===================================================================
+// A multi-access medium, like a shared Ethernet segment, to which any
+// number of physical layers may be connected.  Every frame sent on
+// the bus is heard by every other client.  Access to the bus follows
+// CSMA/CD: a station waits for the bus to be idle before sending (1-
+// persistent carrier sense), two or more stations that start at once
+// collide and abort, and each colliding station waits a random number
+// of slots, drawn by binary exponential backoff, before trying again.
+//
+// Time on the bus is counted in bit times.  Frames are queued at
+// their stations as they are sent, and the contention among them is
+// resolved when the medium is asked to finish.  Thus, frames sent in
+// the same round by several hosts really do compete for the bus.
+class BusMedium extends Medium {
+// ===================================================================
+
+
+
+    // ===============================================================
+    // PUBLIC METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // The constructors.  By default, use the timing of classic 10
+    // Mb/s Ethernet: a 512-bit slot, a 96-bit interframe gap, at most
+    // 16 attempts per frame, and a backoff range that stops doubling
+    // after 10 collisions.
+    public BusMedium () {
+
+	this(512, 96, 16, 10);
+
+    } // BusMedium
+
+    public BusMedium (int slotTime,
+		      int interframeGap,
+		      int maxAttempts,
+		      int backoffLimit) {
+
+	this.slotTime = slotTime;
+	this.interframeGap = interframeGap;
+	this.maxAttempts = maxAttempts;
+	this.backoffLimit = backoffLimit;
+	stations = new ArrayList<Station>();
+
+    } // BusMedium
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Register a client as a new station on the bus.  There is no
+    // limit on the number of stations.
+    public void register (PhysicalLayer client) {
+
+	for (int i = 0; i < stations.size(); i++) {
+
+	    if (stations.get(i).client == client) {
+
+		throw new RuntimeException();
+
+	    }
+
+	}
+	stations.add(new Station(client));
+
+    } // register
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Allow a client to send a single bit.  A lone bit is broadcast
+    // at once, outside of the contention for the bus.
+    public void send (PhysicalLayer sender, boolean bit) {
+
+	Station from = stationOf(sender);
+	for (int i = 0; i < stations.size(); i++) {
+
+	    Station to = stations.get(i);
+	    if (to != from) {
+
+		to.client.receive(bit);
+
+	    }
+
+	}
+	bitsCarried++;
+
+    } // send
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Allow a client to send a frame.  The frame waits in the
+    // station's queue until it wins the bus.  The medium keeps a
+    // reference to the frame, which must not be changed afterwards.
+    public void send (PhysicalLayer sender, byte[] data) {
+
+	Station from = stationOf(sender);
+	if (from.queue.isEmpty() && (from.readyTime < now)) {
+
+	    from.readyTime = now;
+
+	}
+	from.queue.add(new Frame(data, now));
+
+    } // send
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Run the bus until every queued frame has been delivered or
+    // dropped, then report on its performance.
+    public void finish () {
+
+	while (true) {
+
+	    // Find the earliest time at which some station will want
+	    // the bus.  If none will, we are done.
+	    long earliest = Long.MAX_VALUE;
+	    for (int i = 0; i < stations.size(); i++) {
+
+		Station station = stations.get(i);
+		if (!station.queue.isEmpty() &&
+		    (station.readyTime < earliest)) {
+
+		    earliest = station.readyTime;
+
+		}
+
+	    }
+	    if (earliest == Long.MAX_VALUE) {
+
+		break;
+
+	    }
+
+	    // The bus sits idle until then.
+	    if (earliest > now) {
+
+		now = earliest;
+
+	    }
+
+	    // Every station that became ready while the bus was busy
+	    // has been sensing the carrier, and starts as soon as the
+	    // bus falls idle.  Gather them all.
+	    contenders.clear();
+	    for (int i = 0; i < stations.size(); i++) {
+
+		Station station = stations.get(i);
+		if (!station.queue.isEmpty() && (station.readyTime <= now)) {
+
+		    contenders.add(station);
+
+		}
+
+	    }
+
+	    if (contenders.size() == 1) {
+
+		transmit(contenders.get(0));
+
+	    } else {
+
+		collide();
+
+	    }
+
+	}
+
+	report();
+
+    } // finish
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // PRIVATE METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Find the station for a client.  Send only if the sender is a
+    // known client.
+    private Station stationOf (PhysicalLayer client) {
+
+	for (int i = 0; i < stations.size(); i++) {
+
+	    Station station = stations.get(i);
+	    if (station.client == client) {
+
+		return station;
+
+	    }
+
+	}
+
+	throw new RuntimeException();
+
+    } // stationOf
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Give the bus to a station that holds it alone.  Its frame is
+    // heard by every other station, after which the bus must rest for
+    // the interframe gap.
+    private void transmit (Station sender) {
+
+	Frame frame = sender.queue.remove();
+	long frameBits = (long)frame.data.length * 8;
+
+	for (int i = 0; i < stations.size(); i++) {
+
+	    Station receiver = stations.get(i);
+	    if (receiver != sender) {
+
+		receiver.client.receive(frame.data);
+
+	    }
+
+	}
+
+	now += frameBits;
+	framesDelivered++;
+	bitsDelivered += frameBits;
+	bitsCarried += frameBits;
+	totalLatency += (now - frame.queuedTime);
+
+	now += interframeGap;
+	sender.attempts = 0;
+	sender.readyTime = now;
+
+    } // transmit
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Handle the stations that started at once.  The collision is
+    // detected and jammed within a slot, after which each station
+    // backs off for a random number of slots, the range doubling with
+    // each collision its frame has suffered.  A frame that has used
+    // up all of its attempts is dropped.
+    private void collide () {
+
+	collisions++;
+	now += slotTime;
+
+	for (int i = 0; i < contenders.size(); i++) {
+
+	    Station station = contenders.get(i);
+	    station.attempts++;
+
+	    if (station.attempts >= maxAttempts) {
+
+		station.queue.remove();
+		framesDropped++;
+		station.attempts = 0;
+		station.readyTime = now;
+
+	    } else {
+
+		int range = 1 << Math.min(station.attempts, backoffLimit);
+		long slots = (long)(random.nextDouble() * range);
+		station.readyTime = now + (slots * slotTime);
+
+	    }
+
+	}
+
+    } // collide
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Print a summary of the bus's performance so far.
+    private void report () {
+
+	double utilization = (now == 0 ? 0.0 : (double)bitsDelivered / now);
+	double meanLatency = (framesDelivered == 0 ?
+			      0.0 :
+			      (double)totalLatency / framesDelivered);
+
+	System.out.println("Bus: " + stations.size() + " stations, " +
+			   framesDelivered + " frames delivered, " +
+			   framesDropped + " dropped, " +
+			   collisions + " collisions");
+	System.out.println("Bus: " + now + " bit times, utilization " +
+			   utilization + ", mean latency " +
+			   meanLatency + " bit times");
+
+    } // report
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // A frame waiting at a station, with the time at which it was
+    // queued.
+    private static class Frame {
+
+	Frame (byte[] data, long queuedTime) {
+
+	    this.data = data;
+	    this.queuedTime = queuedTime;
+
+	}
+
+	final byte[] data;
+	final long queuedTime;
+
+    } // class Frame
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // A client of the bus, its queue of frames, the number of times
+    // the frame at the head of the queue has collided, and the time
+    // at which it will next try to send.
+    private static class Station {
+
+	Station (PhysicalLayer client) {
+
+	    this.client = client;
+	    queue = new ArrayDeque<Frame>();
+
+	}
+
+	final PhysicalLayer client;
+	final ArrayDeque<Frame> queue;
+	int attempts;
+	long readyTime;
+
+    } // class Station
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // DATA MEMBERS
+    // ===============================================================
+
+
+    // ===============================================================
+    // The stations on the bus, and space to gather those contending
+    // for it at a given moment.
+    final ArrayList<Station> stations;
+    final ArrayList<Station> contenders = new ArrayList<Station>();
+
+    // The timing and backoff parameters, in bit times where they are
+    // times.
+    final int slotTime;
+    final int interframeGap;
+    final int maxAttempts;
+    final int backoffLimit;
+
+    // The current time on the bus, in bit times.
+    long now;
+
+    // Statistics about the frames carried so far.
+    long framesDelivered;
+    long framesDropped;
+    long bitsDelivered;
+    long collisions;
+    long totalLatency;
+    // ===============================================================
+
+
+
+// ===================================================================
+} // class BusMedium
+// ===================================================================
@@ -183,12 +183,12 @@ public class CRCDataLinkLayer extends DataLinkLayer {
 
 
     private void printBit(BitVector bits){
-        int one;
+	EventSink events = EventSink.current();
+	StringBuilder line = new StringBuilder();
         for (int i = 0; i < bits.length(); i++) {
-            one = (bits.getBit(i) ? 1 : 0);
-            System.out.print(one);
+	    line.append(bits.getBit(i) ? '1' : '0');
         }
-        System.out.println();
+	events.event(EventSink.bits, line.toString());
     }
 
     
@@ -275,7 +275,8 @@ public class CRCDataLinkLayer extends DataLinkLayer {
 	int frameIndex = 0;
 	if (incomingBuffer[frameIndex++] != _startTag) {
 
-	    System.err.println("ParityDLL: Missing start tag!");
+	    EventSink.current().event(EventSink.missingStartTag,
+				      "ParityDLL: Missing start tag!");
 	    return null;
 
 	}
@@ -308,11 +309,12 @@ public class CRCDataLinkLayer extends DataLinkLayer {
     for (int i=0;i<frameBits.length();i++){
         if (frameBits.getBit(i)^divResult.getBit(i)==true){
             check = true;
-            System.out.println("CRC checked error found");
+	    EventSink.current().event(EventSink.frameRejected,
+				      "CRC checked error found");
             return null;
         }
     }
-    System.out.println("No error");
+    EventSink.current().event(EventSink.frameAccepted, "No error");
 
 
     byte[] finalData = new byte[originalIndex-2];
@@ -0,0 +1,613 @@
+// ===================================================================
+// CRCEvaluator
+// ===================================================================
+
+
+
+// ===================================================================
+// IMPORTS
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+// ===================================================================
+
+
+
+// ===================================================================
+// Measure how well candidate CRC generator polynomials detect errors
+// in frames of given lengths, so that a generator can be chosen on
+// the evidence.  For each polynomial and frame length, report:
+//
+//   - the minimum distance: the fewest flipped bits that can pass
+//     the check unnoticed (if at most four);
+//   - A2, A3, A4: the number of error patterns of weight 2, 3 and 4
+//     in a frame that the check cannot detect;
+//   - the longest burst that is always detected;
+//   - the period of x modulo the generator, past which any two flips
+//     that many bits apart go unnoticed;
+//   - an estimate of the probability that a frame is corrupted
+//     undetectably on a channel that flips each bit independently,
+//     from the weights counted (so a lower bound).
+//
+// A polynomial is given in hexadecimal with its leading term, so the
+// generator of CRCDataLinkLayer (x^16 + 1) is 0x10001, and CRC-16-
+// CCITT is 0x11021.  A frame length is given in bytes of data; the
+// frame checked also holds the start tag and the check bits, as in
+// CRCDataLinkLayer, but escapes are not counted.
+//
+// An error pattern is undetectable exactly when the generator divides
+// it.  Each bit position i is represented by its syndrome, x^i modulo
+// the generator, packed into the bits of a long, and a pattern is
+// undetectable exactly when the syndromes of its bits XOR to zero.
+// Weight-2 patterns are pairs of equal syndromes.  Weight-3 patterns
+// are found by looking up, for each pair, the later positions whose
+// syndrome is their XOR.  Weight-4 patterns are counted from the
+// number of pairs sharing each XOR value: every undetectable set of
+// four bits splits into two such pairs in three ways.  The pairs are
+// scanned in parallel on a fork-join pool, one range of first
+// positions per task.
+class CRCEvaluator {
+// ===================================================================
+
+
+
+    // ===============================================================
+    // PUBLIC METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // The entry point.  The polynomials and the frame lengths are
+    // separated by commas.
+    public static void main (String[] args) {
+
+	if (args.length > 3) {
+
+	    System.err.println("Usage: java CRCEvaluator " +
+			       "[<polynomials> [<frame sizes in bytes> " +
+			       "[<bit error probability>]]]");
+	    System.exit(1);
+
+	}
+
+	String[] polynomials = (args.length > 0 ?
+				args[0].split(",") :
+				defaultPolynomials);
+	String[] sizes = (args.length > 1 ?
+			  args[1].split(",") :
+			  defaultSizes);
+	double p = (args.length > 2 ? Double.parseDouble(args[2]) : 1.0e-4);
+
+	System.out.println("CRCEvaluator: " +
+			   ForkJoinPool.getCommonPoolParallelism() +
+			   " workers, undetected probability at p = " + p);
+	System.out.println(String.format("%-10s %6s %7s %5s %14s %14s %16s %6s %9s %12s",
+					 "generator", "bytes", "bits",
+					 "dmin", "A2", "A3", "A4",
+					 "burst", "period", "P(undet)"));
+
+	for (int i = 0; i < polynomials.length; i++) {
+
+	    long polynomial = Long.decode(polynomials[i]);
+	    for (int j = 0; j < sizes.length; j++) {
+
+		int bytes = Integer.parseInt(sizes[j]);
+		System.out.println(evaluate(polynomial, bytes, p));
+
+	    }
+
+	}
+
+    } // main
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Evaluate one polynomial for frames carrying the given number of
+    // bytes of data, and return a line of results.
+    public static String evaluate (long polynomial, int bytes, double p) {
+
+	int degree = 63 - Long.numberOfLeadingZeros(polynomial);
+	if ((degree < 1) || (degree > maxDegree)) {
+
+	    throw new RuntimeException("Generator degree must be from 1 to " +
+				       maxDegree + ": " +
+				       Long.toHexString(polynomial));
+
+	}
+
+	// The start tag and the data, then the check bits.
+	int n = ((1 + bytes) * 8) + degree;
+	if (n >= (1 << positionBits)) {
+
+	    throw new RuntimeException("Frame too long: " + n + " bits");
+
+	}
+
+	long[] syndromes = syndromes(polynomial, degree, n);
+	long[] index = indexBySyndrome(syndromes);
+
+	long a2 = countPairs(index);
+	long a3 = ForkJoinPool.commonPool().invoke(new TripleCount(syndromes,
+								   index,
+								   0,
+								   n));
+	long a4 = countQuadruples(syndromes, degree, a2);
+
+	int distance = (a2 > 0 ? 2 : (a3 > 0 ? 3 : (a4 > 0 ? 4 : 5)));
+	double undetected = (a2 * Math.pow(p, 2) * Math.pow(1 - p, n - 2)) +
+	    (a3 * Math.pow(p, 3) * Math.pow(1 - p, n - 3)) +
+	    (a4 < 0 ? 0.0 : a4 * Math.pow(p, 4) * Math.pow(1 - p, n - 4));
+
+	long period = period(polynomial, degree);
+	int burst = longestDetectedBurst(polynomial, degree);
+
+	return String.format("%-10s %6d %7d %5s %14d %14d %16s %6s %9s %12.4e",
+			     "0x" + Long.toHexString(polynomial),
+			     bytes,
+			     n,
+			     (distance == 5 ?
+			      (a4 < 0 ? ">=4" : ">=5") :
+			      Integer.toString(distance)),
+			     a2,
+			     a3,
+			     (a4 < 0 ? "-" : Long.toString(a4)),
+			     (burst > burstLimit ?
+			      ">" + burstLimit :
+			      Integer.toString(burst)),
+			     (period < 0 ? ">" + periodLimit : Long.toString(period)),
+			     undetected);
+
+    } // evaluate
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // PRIVATE METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Return the syndrome of each of the first n bit positions: x^i
+    // modulo the generator, as a packed polynomial.
+    private static long[] syndromes (long polynomial, int degree, int n) {
+
+	long[] syndromes = new long[n];
+	long syndrome = 1;
+	for (int i = 0; i < n; i++) {
+
+	    syndromes[i] = syndrome;
+	    syndrome = step(syndrome, polynomial, degree);
+
+	}
+	return syndromes;
+
+    } // syndromes
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Multiply a syndrome by x, modulo the generator.
+    private static long step (long syndrome, long polynomial, int degree) {
+
+	syndrome <<= 1;
+	if ((syndrome >>> degree) != 0) {
+
+	    syndrome ^= polynomial;
+
+	}
+	return syndrome;
+
+    } // step
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Return the positions keyed by syndrome and then position, each
+    // packed into a long, in sorted order, so that the positions with
+    // a given syndrome after a given point can be found by search.
+    private static long[] indexBySyndrome (long[] syndromes) {
+
+	long[] index = new long[syndromes.length];
+	for (int i = 0; i < syndromes.length; i++) {
+
+	    index[i] = (syndromes[i] << positionBits) | i;
+
+	}
+	Arrays.sort(index);
+	return index;
+
+    } // indexBySyndrome
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Count the positions after the given one whose syndrome is the
+    // given one.
+    private static int countAfter (long[] index, long syndrome, int position) {
+
+	int from = insertionPoint(index, (syndrome << positionBits) |
+				  (position + 1));
+	int to = insertionPoint(index, (syndrome + 1) << positionBits);
+	return to - from;
+
+    } // countAfter
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Return the index of the first key no less than the given one.
+    private static int insertionPoint (long[] index, long key) {
+
+	int found = Arrays.binarySearch(index, key);
+	return (found >= 0 ? found : -(found + 1));
+
+    } // insertionPoint
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Count the undetectable patterns of weight 2: the pairs of
+    // positions with equal syndromes.
+    private static long countPairs (long[] index) {
+
+	long pairs = 0;
+	int runStart = 0;
+	for (int i = 1; i <= index.length; i++) {
+
+	    if ((i == index.length) ||
+		((index[i] >>> positionBits) !=
+		 (index[runStart] >>> positionBits))) {
+
+		long run = i - runStart;
+		pairs += (run * (run - 1)) / 2;
+		runStart = i;
+
+	    }
+
+	}
+	return pairs;
+
+    } // countPairs
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Count the undetectable patterns of weight 4 from the number of
+    // pairs of positions that share each XOR of syndromes.  Two pairs
+    // with the same XOR either make an undetectable set of four
+    // (counted once for each of its three splits into pairs) or share
+    // a position, leaving the other two with equal syndromes.  Return
+    // -1 if the pairs are too many to tally in memory.
+    private static long countQuadruples (long[] syndromes,
+					 int degree,
+					 long a2) {
+
+	long n = syndromes.length;
+	long matches = 0;
+	if (degree <= tableDegree) {
+
+	    int[] tally = ForkJoinPool.commonPool().invoke(
+		new PairTally(syndromes, 1 << degree, 0, syndromes.length));
+	    for (int v = 0; v < tally.length; v++) {
+
+		long count = tally[v];
+		matches += (count * (count - 1)) / 2;
+
+	    }
+
+	} else if ((n * (n - 1)) / 2 <= maxSortedPairs) {
+
+	    long[] values = new long[(int)((n * (n - 1)) / 2)];
+	    int next = 0;
+	    for (int i = 0; i < n; i++) {
+
+		for (int j = i + 1; j < n; j++) {
+
+		    values[next++] = syndromes[i] ^ syndromes[j];
+
+		}
+
+	    }
+	    Arrays.parallelSort(values);
+	    int runStart = 0;
+	    for (int i = 1; i <= values.length; i++) {
+
+		if ((i == values.length) || (values[i] != values[runStart])) {
+
+		    long run = i - runStart;
+		    matches += (run * (run - 1)) / 2;
+		    runStart = i;
+
+		}
+
+	    }
+
+	} else {
+
+	    return -1;
+
+	}
+
+	return (matches - (a2 * (n - 2))) / 3;
+
+    } // countQuadruples
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Return the smallest e > 0 for which x^e is 1 modulo the
+    // generator, or -1 if there is none up to the limit (as when the
+    // generator is divisible by x).
+    private static long period (long polynomial, int degree) {
+
+	long syndrome = step(1, polynomial, degree);
+	for (long e = 1; e <= periodLimit; e++) {
+
+	    if (syndrome == 1) {
+
+		return e;
+
+	    }
+	    syndrome = step(syndrome, polynomial, degree);
+
+	}
+	return -1;
+
+    } // period
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Return the length of the longest burst that is always detected,
+    // by trying every burst (a pattern whose first and last bits are
+    // flipped) of each length in turn, in Gray-code order so that one
+    // XOR moves from each pattern to the next.  A burst in any other
+    // place is the same burst multiplied by a power of x, so only one
+    // place need be tried when the generator is not divisible by x.
+    // Return more than the limit if every burst up to it is detected.
+    private static int longestDetectedBurst (long polynomial, int degree) {
+
+	long[] syndromes = syndromes(polynomial, degree, burstLimit);
+	for (int length = 1; length <= burstLimit; length++) {
+
+	    long syndrome = syndromes[0];
+	    if (length > 1) {
+
+		syndrome ^= syndromes[length - 1];
+
+	    }
+	    if (syndrome == 0) {
+
+		return length - 1;
+
+	    }
+
+	    long inner = (length > 2 ? 1L << (length - 2) : 1);
+	    for (long k = 1; k < inner; k++) {
+
+		// Flip the inner bit that changes from one Gray code to
+		// the next.
+		syndrome ^= syndromes[1 + Long.numberOfTrailingZeros(k)];
+		if (syndrome == 0) {
+
+		    return length - 1;
+
+		}
+
+	    }
+
+	}
+	return burstLimit + 1;
+
+    } // longestDetectedBurst
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Count the undetectable patterns of weight 3 whose first position
+    // lies in a range, splitting the range among tasks.
+    @SuppressWarnings("serial")
+    private static class TripleCount extends RecursiveTask<Long> {
+
+	TripleCount (long[] syndromes, long[] index, int first, int last) {
+
+	    this.syndromes = syndromes;
+	    this.index = index;
+	    this.first = first;
+	    this.last = last;
+
+	}
+
+	protected Long compute () {
+
+	    if (work(first, last) > leafWork) {
+
+		int middle = split(first, last, syndromes.length);
+		TripleCount left =
+		    new TripleCount(syndromes, index, first, middle);
+		TripleCount right =
+		    new TripleCount(syndromes, index, middle, last);
+		left.fork();
+		long count = right.compute();
+		return count + left.join();
+
+	    }
+
+	    long count = 0;
+	    for (int i = first; i < last; i++) {
+
+		for (int j = i + 1; j < syndromes.length; j++) {
+
+		    count += countAfter(index, syndromes[i] ^ syndromes[j], j);
+
+		}
+
+	    }
+	    return count;
+
+	}
+
+	// The number of pairs with a first position in the range.
+	long work (int from, int to) {
+
+	    long n = syndromes.length;
+	    return ((to - from) * ((2 * n) - from - to - 1)) / 2;
+
+	}
+
+	final long[] syndromes;
+	final long[] index;
+	final int first;
+	final int last;
+
+    } // class TripleCount
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Tally, for each XOR of syndromes, the pairs of positions whose
+    // first position lies in a range, splitting the range among tasks
+    // that each keep a tally of their own.
+    @SuppressWarnings("serial")
+    private static class PairTally extends RecursiveTask<int[]> {
+
+	PairTally (long[] syndromes, int values, int first, int last) {
+
+	    this.syndromes = syndromes;
+	    this.values = values;
+	    this.first = first;
+	    this.last = last;
+
+	}
+
+	protected int[] compute () {
+
+	    long n = syndromes.length;
+	    long pairs = ((last - first) * ((2 * n) - first - last - 1)) / 2;
+	    if ((pairs > leafWork) && (pairs > values)) {
+
+		int middle = split(first, last, syndromes.length);
+		PairTally left = new PairTally(syndromes, values, first, middle);
+		PairTally right = new PairTally(syndromes, values, middle, last);
+		left.fork();
+		int[] tally = right.compute();
+		int[] other = left.join();
+		for (int v = 0; v < tally.length; v++) {
+
+		    tally[v] += other[v];
+
+		}
+		return tally;
+
+	    }
+
+	    int[] tally = new int[values];
+	    for (int i = first; i < last; i++) {
+
+		long syndrome = syndromes[i];
+		for (int j = i + 1; j < syndromes.length; j++) {
+
+		    tally[(int)(syndrome ^ syndromes[j])]++;
+
+		}
+
+	    }
+	    return tally;
+
+	}
+
+	final long[] syndromes;
+	final int values;
+	final int first;
+	final int last;
+
+    } // class PairTally
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Split a range of first positions where the number of pairs
+    // beginning on either side is about equal.  Earlier positions
+    // begin more pairs, so the split lies before the middle.
+    private static int split (int first, int last, int n) {
+
+	long total = 0;
+	for (int i = first; i < last; i++) {
+
+	    total += n - 1 - i;
+
+	}
+
+	long half = 0;
+	int middle = first;
+	while ((middle < last - 1) && (half + (n - 1 - middle) <= total / 2)) {
+
+	    half += n - 1 - middle;
+	    middle++;
+
+	}
+	return Math.max(middle, first + 1);
+
+    } // split
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // DATA MEMBERS
+    // ===============================================================
+
+
+    // ===============================================================
+    // The polynomials evaluated when none are named: the generator of
+    // CRCDataLinkLayer, then CRC-16-CCITT, CRC-16-IBM, CRC-16-T10-DIF,
+    // CRC-16-DNP, and CRC-16-CDMA2000.  The frame sizes evaluated when
+    // none are named, starting with that of CRCDataLinkLayer.
+    static final String[] defaultPolynomials = { "0x10001",
+						 "0x11021",
+						 "0x18005",
+						 "0x18bb7",
+						 "0x13d65",
+						 "0x1c867" };
+    static final String[] defaultSizes = { "8", "64", "256", "1024" };
+
+    // The largest generator degree handled, and the number of bits
+    // given to a position in the index.
+    static final int maxDegree = 32;
+    static final int positionBits = 24;
+
+    // Generators up to this degree have their pair XORs tallied in a
+    // table; beyond it, they are sorted if there are no more than so
+    // many pairs, or else weight 4 is not counted.
+    static final int tableDegree = 20;
+    static final long maxSortedPairs = 1L << 25;
+
+    // The longest burst tried, the longest period sought, and the
+    // number of pairs below which a task does its work itself.
+    static final int burstLimit = 26;
+    static final long periodLimit = 1L << 24;
+    static final long leafWork = 1L << 20;
+    // ===============================================================
+
+
+
+// ===================================================================
+} // class CRCEvaluator
+// ===================================================================
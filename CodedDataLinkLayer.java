@@ -0,0 +1,224 @@
+// =============================================================================
+// IMPORTS
+
+import java.util.Arrays;
+// =============================================================================
+
+
+
+// =============================================================================
+/**
+ *  A data link layer that protects each frame with an error-correcting code,
+ *  and that, since bit errors would corrupt start and stop tags, does not tag
+ *  its frames: every frame has the same length, and the receiver counts bytes
+ *  to find its end.
+ *
+ *  Before coding, a frame holds a length byte, a fixed number of bytes of data
+ *  (padded with zeroes), and a CRC-16 of both, with which the decoded frame is
+ *  checked.  That layout, and the sending and counting of frames, are kept
+ *  here, so that every coded layer lays out its frames alike; a subclass
+ *  encodes and decodes them.
+ **/
+abstract class CodedDataLinkLayer extends DataLinkLayer {
+// =============================================================================
+
+
+
+    // =========================================================================
+    /**
+     * The constructor.  Lay out frames of no more than the given number of
+     * bytes of data.  The subclass must still initialize the layer.
+     *
+     * @param maxFrameSize The maximum number of data bytes in a frame.
+     **/
+    protected CodedDataLinkLayer (int maxFrameSize) {
+
+	_maxFrameSize = maxFrameSize;
+	_info = new byte[maxFrameSize + 3];
+	_decoded = new byte[maxFrameSize + 3];
+
+    } // CodedDataLinkLayer
+    // =========================================================================
+
+
+
+    // =========================================================================
+    /**
+     * Accept a buffer of data to send.  Send it as divided into multiple frames
+     * of a fixed, maximum size, each encoded whole.  Call the physical layer to
+     * actually send each frame.
+     *
+     * @param data An array of bytes to be framed and transmitted.
+     **/
+    public void send (byte[] data) {
+
+	// Send at least one frame, so that an empty message arrives too.
+	int beginIndex = 0;
+	do {
+
+	    int endIndex = Math.min(beginIndex + _maxFrameSize, data.length);
+	    byte[] frame = new byte[codedFrameSize()];
+	    fillInfo(data, beginIndex, endIndex);
+	    encode(_info, frame);
+	    physicalLayer.send(frame);
+	    beginIndex = endIndex;
+
+	} while (beginIndex < data.length);
+
+    } // send (byte[] data)
+    // =========================================================================
+
+
+
+    // =========================================================================
+    /**
+     * Return the number of bytes in a coded frame.
+     *
+     * @return The length of every frame sent.
+     **/
+    abstract protected int codedFrameSize ();
+    // =========================================================================
+
+
+
+    // =========================================================================
+    /**
+     * Encode the bytes of a frame laid out for coding.
+     *
+     * @param info The bytes to be encoded.
+     * @param coded The buffer into which the coded bits are packed, most
+     *              significant first; it must be zeroed.
+     **/
+    abstract protected void encode (byte[] info, byte[] coded);
+    // =========================================================================
+
+
+
+    // =========================================================================
+    /**
+     * Lay out the bits to be encoded for one frame: the length, the data
+     * padded to the full size, and the CRC of both.
+     *
+     * @param data The original buffer of data from which to extract a frame's
+     *             worth.
+     * @param begin The starting index from the original data buffer.
+     * @param end The ending index from the original frame buffer.
+     **/
+    private void fillInfo (byte[] data, int begin, int end) {
+
+	_info[0] = (byte)(end - begin);
+	System.arraycopy(data, begin, _info, 1, end - begin);
+	Arrays.fill(_info, 1 + end - begin, 1 + _maxFrameSize, (byte)0);
+	int crc = calculateCRC(_info, 0, 1 + _maxFrameSize);
+	_info[1 + _maxFrameSize] = (byte)(crc >>> 8);
+	_info[2 + _maxFrameSize] = (byte)crc;
+
+    } // fillInfo (byte[] data, int begin, int end)
+    // =========================================================================
+
+
+
+    // =========================================================================
+    /**
+     * Determine whether a decoded frame is laid out as one that was sent: its
+     * length in range, and its CRC matching.
+     *
+     * @param info The bytes of the decoded frame.
+     * @return Whether the frame passes its check.
+     **/
+    protected boolean intact (byte[] info) {
+
+	int length = info[0] & 0xff;
+	int crc = (((info[1 + _maxFrameSize] & 0xff) << 8) |
+		   (info[2 + _maxFrameSize] & 0xff));
+	return ((length <= _maxFrameSize) &&
+		(calculateCRC(info, 0, 1 + _maxFrameSize) == crc));
+
+    } // intact (byte[] info)
+    // =========================================================================
+
+
+
+    // =========================================================================
+    /**
+     * Extract the data from a decoded frame that is intact.
+     *
+     * @param info The bytes of the decoded frame.
+     * @return The data carried in the frame.
+     **/
+    protected byte[] dataOf (byte[] info) {
+
+	return Arrays.copyOfRange(info, 1, 1 + (info[0] & 0xff));
+
+    } // dataOf (byte[] info)
+    // =========================================================================
+
+
+
+    // =========================================================================
+    /**
+     * Calculate the CRC-16 (CCITT, x^16 + x^12 + x^5 + 1) of a sequence of
+     * bytes, a bit at a time.
+     *
+     * @param data A buffer of bytes.
+     * @param begin The starting index of the bytes to examine.
+     * @param end The ending index of the bytes to examine.
+     * @return The CRC, in the low 16 bits.
+     **/
+    private static int calculateCRC (byte[] data, int begin, int end) {
+
+	int crc = 0xffff;
+	for (int i = begin; i < end; i++) {
+
+	    crc ^= (data[i] & 0xff) << 8;
+	    for (int bit = 0; bit < 8; bit++) {
+
+		crc = ((crc & 0x8000) != 0 ? (crc << 1) ^ 0x1021 : crc << 1);
+
+	    }
+
+	}
+	return crc & 0xffff;
+
+    } // calculateCRC (byte[] data, int begin, int end)
+    // =========================================================================
+
+
+
+    // =========================================================================
+    /**
+     * Determine whether the buffered data forms a complete frame.
+     *
+     * @return Whether a complete buffer has arrived.
+     **/
+    protected boolean receivedCompleteFrame () {
+
+	// Every frame has the same length.
+	return (bufferIndex == codedFrameSize());
+
+    } // receivedCompleteFrame
+    // =========================================================================
+
+
+
+    // =========================================================================
+    // DATA MEMBERS
+
+    /**
+     * The maximum number of data (not metadata) bytes in a frame.
+     **/
+    final int _maxFrameSize;
+
+    /**
+     * The bytes of a frame before coding, as sent and as decoded, kept apart
+     * so that sending and receiving may go on at once.
+     **/
+    final byte[] _info;
+    final byte[] _decoded;
+    // =========================================================================
+
+
+
+// =============================================================================
+} // class CodedDataLinkLayer
+// =============================================================================
@@ -0,0 +1,736 @@
+// ===================================================================
+// Compressor
+// ===================================================================
+
+
+
+// ===================================================================
+// IMPORTS
+
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+// ===================================================================
+
+
+
+// ===================================================================
+// Compress the messages that a network layer sends, and expand those
+// that it receives.  Every bit sent crosses the medium one at a time,
+// so every byte saved here is time saved there.  Each message sent is
+// preceded by a header:
+//
+//   magic     2 bytes  (``CZ'')
+//   method    1 byte   0 if stored as it was, 1 for deflate, 2 for LZ
+//   original  4 bytes  the length of the message
+//   stored    4 bytes  the number of bytes that follow
+//   check     1 byte   the low byte of the CRC-32 of the fields above
+//
+// A message is compressed by one of two methods, named as:
+//
+//   deflate[/<level>]  zlib's deflate, at the given level (by default
+//                      6), with a checksum that catches damage
+//   lz                 a simple LZ77 coder in the manner of LZ4: much
+//                      faster, compressing less, and unchecked
+//
+// and is stored as it was if that would not make it smaller, so it
+// never grows by more than its header.  The receiver expands whatever
+// method was used.  One Deflater, Inflater and LZ hash table are made
+// for each layer and reused for every message.
+//
+// The data link layer delivers the messages in pieces of its own
+// size.  The receiver reads each header into a small buffer, and
+// gathers what follows into a buffer that it keeps; a message that
+// arrives in one piece is expanded straight from it.  A header is
+// believed only if it passes its check and claims no more than the
+// layer was told its messages may hold, and no more stored than
+// compressing such a message can emit, so that a damaged header can
+// neither make the receiver allocate a vast buffer nor hold back the
+// messages after it.  A header that is not believed is slid past a
+// byte at a time until one is found.
+class Compressor {
+// ===================================================================
+
+
+
+    // ===============================================================
+    // PUBLIC METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // The constructor.  Compress by the method named messages of no
+    // more than the given length, and pass the messages expanded to
+    // the given network layer.
+    public Compressor (NetworkLayer client, String method, int largest) {
+
+	this.client = client;
+	this.method = method;
+	this.largest = largest;
+	String[] fields = method.split("/");
+	if (fields[0].equals("deflate") && (fields.length <= 2)) {
+
+	    int level = (fields.length == 2 ?
+			 Integer.parseInt(fields[1]) :
+			 Deflater.DEFAULT_COMPRESSION);
+	    deflater = new Deflater(level);
+	    code = deflated;
+
+	} else if (fields[0].equals("lz") && (fields.length == 1)) {
+
+	    table = new int[1 << hashBits];
+	    code = lz;
+
+	} else {
+
+	    throw new RuntimeException("Unknown compression method " + method);
+
+	}
+
+    } // Compressor
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Return a message compressed, with its header, or stored with its
+    // header if compressing does not make it smaller.
+    public byte[] compress (byte[] message) {
+
+	if (message.length > largest) {
+
+	    throw new RuntimeException("Message of " + message.length +
+				       " bytes is longer than " + largest);
+
+	}
+	int limit = headerSize + message.length;
+	if (work.length < headerSize + mostStored(message.length)) {
+
+	    work = new byte[headerSize + mostStored(message.length)];
+
+	}
+
+	int length;
+	if (code == deflated) {
+
+	    // Give the deflater no more room than the stored message
+	    // would take, so that it gives up as soon as it is beaten.
+	    deflater.reset();
+	    deflater.setInput(message);
+	    deflater.finish();
+	    length = headerSize;
+	    while (!deflater.finished() && (length < limit)) {
+
+		length += deflater.deflate(work, length, limit - length);
+
+	    }
+	    if (!deflater.finished()) {
+
+		length = limit;
+
+	    }
+
+	} else {
+
+	    length = headerSize + lzCompress(message, work, headerSize);
+
+	}
+
+	byte[] packed;
+	if (length < limit) {
+
+	    putHeader(work, code, message.length, length - headerSize);
+	    packed = Arrays.copyOf(work, length);
+	    messagesCompressed++;
+
+	} else {
+
+	    packed = new byte[limit];
+	    putHeader(packed, stored, message.length, message.length);
+	    System.arraycopy(message, 0, packed, headerSize, message.length);
+	    messagesBypassed++;
+
+	}
+	bytesIn += message.length;
+	bytesOut += packed.length;
+	return packed;
+
+    } // compress
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Take a piece of what was sent, found in the given part of an
+    // array: fill the header being read, or gather what follows it,
+    // and expand each message once it has arrived in full.
+    public void receive (byte[] data, int offset, int length) {
+
+	int i = offset;
+	int end = offset + length;
+	while (i < end) {
+
+	    if ((headerFilled == 0) &&
+		(end - i >= headerSize) &&
+		plausible(data, i) &&
+		(end - i - headerSize >= BigEndian.getInt(data, i + 7))) {
+
+		// The whole message is here: expand it where it lies.
+		int storedLength = BigEndian.getInt(data, i + 7);
+		expand(data[i + 2], BigEndian.getInt(data, i + 3),
+		       data, i + headerSize, storedLength);
+		i += headerSize + storedLength;
+
+	    } else if (headerFilled < headerSize) {
+
+		header[headerFilled++] = data[i++];
+		if (headerFilled == headerSize) {
+
+		    if (plausible(header, 0)) {
+
+			bodyLength = BigEndian.getInt(header, 7);
+			bodyFilled = 0;
+			if (body.length < bodyLength) {
+
+			    body = new byte[bodyLength];
+
+			}
+
+		    } else {
+
+			System.arraycopy(header, 1, header, 0, headerSize - 1);
+			headerFilled = headerSize - 1;
+			bytesSkipped++;
+
+		    }
+
+		}
+
+	    } else {
+
+		int count = Math.min(bodyLength - bodyFilled, end - i);
+		System.arraycopy(data, i, body, bodyFilled, count);
+		bodyFilled += count;
+		i += count;
+
+	    }
+
+	    if ((headerFilled == headerSize) && (bodyFilled == bodyLength)) {
+
+		headerFilled = 0;
+		bodyFilled = 0;
+		expand(header[2], BigEndian.getInt(header, 3),
+		       body, 0, bodyLength);
+
+	    }
+
+	}
+
+    } // receive
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Return a line summarizing what has been compressed and expanded.
+    public String report () {
+
+	return (method + ": " +
+		messagesCompressed + " of " +
+		(messagesCompressed + messagesBypassed) +
+		" messages compressed, " +
+		bytesIn + " bytes sent as " + bytesOut + ", " +
+		(bytesIn - bytesOut) * 8 + " bits saved; " +
+		messagesExpanded + " expanded, " +
+		messagesDamaged + " damaged, " +
+		bytesSkipped + " bytes skipped");
+
+    } // report
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // PRIVATE METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Expand a message stored in the given part of an array by the
+    // given method, and pass it to the network layer.  If it cannot
+    // be expanded to its original length, count it damaged and drop
+    // it.
+    private void expand (int code,
+			 int original,
+			 byte[] data,
+			 int offset,
+			 int length) {
+
+	if (code == stored) {
+
+	    messagesExpanded++;
+	    client.receiveExpanded(data, offset, length);
+	    return;
+
+	}
+
+	if (expanded.length <= original) {
+
+	    expanded = new byte[original + 1];
+
+	}
+	boolean intact;
+	if (code == deflated) {
+
+	    intact = inflate(data, offset, length, original);
+
+	} else {
+
+	    intact = (lzExpand(data, offset, length, expanded, original) ==
+		      original);
+
+	}
+	if (!intact) {
+
+	    messagesDamaged++;
+	    return;
+
+	}
+
+	messagesExpanded++;
+	client.receiveExpanded(expanded, 0, original);
+
+    } // expand
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Inflate a message into the buffer of expanded messages.  Return
+    // whether it came out whole, at its original length.  The buffer
+    // has a byte to spare, so that a message that would come out
+    // longer is caught.
+    private boolean inflate (byte[] data, int offset, int length, int original) {
+
+	if (inflater == null) {
+
+	    inflater = new Inflater();
+
+	}
+	inflater.reset();
+	inflater.setInput(data, offset, length);
+	int filled = 0;
+	try {
+
+	    while (!inflater.finished() && (filled <= original)) {
+
+		int count = inflater.inflate(expanded,
+					     filled,
+					     original + 1 - filled);
+		if ((count == 0) &&
+		    (inflater.needsInput() || inflater.needsDictionary())) {
+
+		    return false;
+
+		}
+		filled += count;
+
+	    }
+
+	} catch (DataFormatException e) {
+
+	    return false;
+
+	}
+	return inflater.finished() && (filled == original);
+
+    } // inflate
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Compress a message by LZ into the given array, starting at the
+    // given offset, and return the number of bytes written.  The
+    // array must hold the message's length plus 1/255 of it plus 16.
+    //
+    // The output is a series of sequences, each a token (the number
+    // of literal bytes in the high four bits, and the length of the
+    // match less four in the low four, either extended by bytes that
+    // are added to it while they are 255), the literal bytes, and the
+    // offset of the match back from where it is copied to (two bytes,
+    // low byte first).  The last sequence has literals alone.  The hash
+    // table holds, for the hash of each four bytes, where they were
+    // last seen plus a base that grows with every message, so that
+    // it need not be cleared between messages.
+    private int lzCompress (byte[] message, byte[] out, int start) {
+
+	int n = message.length;
+	if (base > Integer.MAX_VALUE - n - 1) {
+
+	    Arrays.fill(table, 0);
+	    base = 1;
+
+	}
+
+	int q = start;
+	int anchor = 0;
+	int i = 0;
+	int limit = n - lastLiterals;
+	while (i < limit) {
+
+	    int word = getIntLE(message, i);
+	    int hash = (word * -1640531535) >>> (32 - hashBits);
+	    int candidate = table[hash] - base;
+	    table[hash] = base + i;
+	    if ((candidate < 0) ||
+		(i - candidate > maxOffset) ||
+		(getIntLE(message, candidate) != word)) {
+
+		// Skip ahead faster the longer nothing has matched.
+		i += 1 + ((i - anchor) >>> skipShift);
+		continue;
+
+	    }
+
+	    // Extend the match forward, and back over literals.
+	    int matchEnd = i + minMatch;
+	    int from = candidate + minMatch;
+	    while ((matchEnd < limit) && (message[matchEnd] == message[from])) {
+
+		matchEnd++;
+		from++;
+
+	    }
+	    while ((i > anchor) && (candidate > 0) &&
+		   (message[i - 1] == message[candidate - 1])) {
+
+		i--;
+		candidate--;
+
+	    }
+
+	    q = putSequence(message, anchor, i - anchor, out, q,
+			    i - candidate, matchEnd - i);
+	    i = matchEnd;
+	    anchor = i;
+
+	}
+
+	q = putSequence(message, anchor, n - anchor, out, q, 0, 0);
+	base += n + 1;
+	return q - start;
+
+    } // lzCompress
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Write one LZ sequence, and return where the next begins.  A
+    // match length of zero marks the last sequence, which has no
+    // match.
+    private static int putSequence (byte[] message,
+				    int literalStart,
+				    int literals,
+				    byte[] out,
+				    int q,
+				    int offset,
+				    int matchLength) {
+
+	int token = q++;
+	int matchCode = (matchLength == 0 ? 0 : matchLength - minMatch);
+	out[token] = (byte)((Math.min(literals, 15) << 4) |
+			    Math.min(matchCode, 15));
+	if (literals >= 15) {
+
+	    q = putLength(out, q, literals - 15);
+
+	}
+	System.arraycopy(message, literalStart, out, q, literals);
+	q += literals;
+
+	if (matchLength != 0) {
+
+	    out[q++] = (byte)offset;
+	    out[q++] = (byte)(offset >>> 8);
+	    if (matchCode >= 15) {
+
+		q = putLength(out, q, matchCode - 15);
+
+	    }
+
+	}
+	return q;
+
+    } // putSequence
+
+    private static int putLength (byte[] out, int q, int length) {
+
+	while (length >= 255) {
+
+	    out[q++] = (byte)255;
+	    length -= 255;
+
+	}
+	out[q++] = (byte)length;
+	return q;
+
+    } // putLength
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Expand an LZ message from the given part of an array into
+    // another, which it must not overrun.  Return its length, or -1
+    // if what was given is not a well-formed message of no more than
+    // that length.
+    private static int lzExpand (byte[] data,
+				 int offset,
+				 int length,
+				 byte[] out,
+				 int original) {
+
+	int p = offset;
+	int end = offset + length;
+	int q = 0;
+	while (p < end) {
+
+	    int token = data[p++] & 0xff;
+	    int literals = token >>> 4;
+	    if (literals == 15) {
+
+		int b;
+		do {
+
+		    if (p == end) {
+
+			return -1;
+
+		    }
+		    b = data[p++] & 0xff;
+		    literals += b;
+
+		} while ((b == 255) && (literals <= original));
+
+	    }
+	    if ((literals > end - p) || (literals > original - q)) {
+
+		return -1;
+
+	    }
+	    System.arraycopy(data, p, out, q, literals);
+	    p += literals;
+	    q += literals;
+	    if (p == end) {
+
+		break;
+
+	    }
+
+	    if (end - p < 2) {
+
+		return -1;
+
+	    }
+	    int back = (data[p] & 0xff) | ((data[p + 1] & 0xff) << 8);
+	    p += 2;
+	    int matchLength = token & 15;
+	    if (matchLength == 15) {
+
+		int b;
+		do {
+
+		    if (p == end) {
+
+			return -1;
+
+		    }
+		    b = data[p++] & 0xff;
+		    matchLength += b;
+
+		} while ((b == 255) && (matchLength <= original));
+
+	    }
+	    matchLength += minMatch;
+	    if ((back == 0) || (back > q) || (matchLength > original - q)) {
+
+		return -1;
+
+	    }
+
+	    // A match may overlap what it copies, repeating it.
+	    if (back >= matchLength) {
+
+		System.arraycopy(out, q - back, out, q, matchLength);
+		q += matchLength;
+
+	    } else {
+
+		for (int k = 0; k < matchLength; k++, q++) {
+
+		    out[q] = out[q - back];
+
+		}
+
+	    }
+
+	}
+	return q;
+
+    } // lzExpand
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Return whether a header, at the given offset in an array, is
+    // plausible: intact, and within what this layer's messages may
+    // hold.
+    private boolean plausible (byte[] b, int i) {
+
+	int code = b[i + 2];
+	int original = BigEndian.getInt(b, i + 3);
+	int storedLength = BigEndian.getInt(b, i + 7);
+	return ((BigEndian.getShort(b, i) == magic) &&
+		(b[i + checkOffset] == headerCheck(b, i)) &&
+		(code >= stored) && (code <= lz) &&
+		(original >= 0) && (original <= largest) &&
+		(storedLength >= 0) &&
+		(code == stored ?
+		 storedLength == original :
+		 storedLength <= mostStored(original)));
+
+    } // plausible
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Return the check of a header at the given offset in an array,
+    // and the most bytes that compressing a message of the given
+    // length can emit (the LZ coder's worst case, which also bounds
+    // deflate, since it gives up at the stored length).
+    private static byte headerCheck (byte[] b, int i) {
+
+	CRC32 crc = new CRC32();
+	crc.update(b, i, checkOffset);
+	return (byte)crc.getValue();
+
+    } // headerCheck
+
+    private static int mostStored (int original) {
+
+	return original + original / 255 + 16;
+
+    } // mostStored
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Write a header at the front of an array.
+    private static void putHeader (byte[] b,
+				   int code,
+				   int original,
+				   int storedLength) {
+
+	b[0] = (byte)(magic >>> 8);
+	b[1] = (byte)magic;
+	b[2] = (byte)code;
+	BigEndian.putInt(b, 3, original);
+	BigEndian.putInt(b, 7, storedLength);
+	b[checkOffset] = headerCheck(b, 0);
+
+    } // putHeader
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Read an integer from a byte array little-endian, for the LZ
+    // coder's hashing.
+    private static int getIntLE (byte[] b, int i) {
+
+	return ((b[i] & 0xff) |
+		((b[i + 1] & 0xff) << 8) |
+		((b[i + 2] & 0xff) << 16) |
+		((b[i + 3] & 0xff) << 24));
+
+    } // getIntLE
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // DATA MEMBERS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // The layout of a header, and the codes of the methods.
+    static final int magic = 0x435a;
+    static final int checkOffset = 11;
+    static final int headerSize = 12;
+    static final int stored = 0;
+    static final int deflated = 1;
+    static final int lz = 2;
+
+    // The LZ coder's parameters: the bits of its hash, the shortest
+    // and farthest match, the bytes at the end always sent as
+    // literals, and how quickly it skips ahead through bytes that do
+    // not match.
+    static final int hashBits = 14;
+    static final int minMatch = 4;
+    static final int maxOffset = 0xffff;
+    static final int lastLiterals = 12;
+    static final int skipShift = 6;
+
+    // The network layer served, the method named, its code, and the
+    // longest message compressed or expanded.
+    final NetworkLayer client;
+    final String method;
+    final int code;
+    final int largest;
+
+    // The deflater or the LZ hash table (and its base) used to
+    // compress, the inflater used to expand, made when first needed,
+    // and the buffer in which messages are compressed.
+    Deflater deflater;
+    Inflater inflater;
+    int[] table;
+    int base = 1;
+    byte[] work = new byte[0];
+
+    // The header being read and the number of its bytes read so far;
+    // the buffer in which what follows is gathered, with its length
+    // and the number of its bytes gathered so far; and the buffer into
+    // which messages are expanded.
+    final byte[] header = new byte[headerSize];
+    int headerFilled;
+    byte[] body = new byte[0];
+    int bodyLength;
+    int bodyFilled;
+    byte[] expanded = new byte[0];
+
+    // What has been compressed and expanded.
+    long messagesCompressed;
+    long messagesBypassed;
+    long bytesIn;
+    long bytesOut;
+    long messagesExpanded;
+    long messagesDamaged;
+    long bytesSkipped;
+    // ===============================================================
+
+
+
+// ===================================================================
+} // class Compressor
+// ===================================================================
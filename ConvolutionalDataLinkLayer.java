@@ -0,0 +1,382 @@
+// =============================================================================
+// IMPORTS
+
+import java.util.Arrays;
+// =============================================================================
+
+
+
+// =============================================================================
+/**
+ *  A data link layer that protects each frame with a rate-1/2 convolutional
+ *  code, decoded by the Viterbi algorithm, so that it corrects many scattered
+ *  bit errors in a frame rather than the one that a Hamming code can.
+ *
+ *  Frames are laid out, checked, and counted as by every coded layer (see
+ *  CodedDataLinkLayer); after the bytes of a frame come K - 1 zero bits that
+ *  return the encoder to its starting state, so that the decoder knows where
+ *  the path ends.
+ *
+ *  The code is named by its two generators in octal, as in
+ *  Convolutional@171,133 (the default, with a constraint length K of 7, as
+ *  used by NASA and 802.11) or Convolutional@7,5 (K = 3).  The decoder keeps
+ *  its path metrics in two arrays of ints, one entry per state, and its
+ *  survivor decisions packed a bit per state into an array of longs, one row
+ *  per step, from which it traces back; nothing is allocated per step or per
+ *  frame but the data returned.  It works on soft values, one per coded bit
+ *  (positive for a 0, negative for a 1, in proportion to confidence), as a
+ *  medium such as the AWGN medium delivers them; bits received hard are given
+ *  values of equal magnitude.
+ **/
+public class ConvolutionalDataLinkLayer extends CodedDataLinkLayer {
+// =============================================================================
+
+
+
+    // =========================================================================
+    /**
+     * The constructors.  Make a new convolutional data link layer with the
+     * default code, or with the one named by two octal generators.
+     *
+     * @param physicalLayer The physical layer through which this data link
+     * layer should communicate.
+     * @param generators The generators, in octal, separated by a comma.
+     **/
+    public ConvolutionalDataLinkLayer (PhysicalLayer physicalLayer) {
+
+	this(physicalLayer, "171,133");
+
+    } // ConvolutionalDataLinkLayer
+
+    public ConvolutionalDataLinkLayer (PhysicalLayer physicalLayer,
+				       String generators) {
+
+	super(_frameDataSize);
+
+	// Parse the generators, and find the constraint length from the
+	// highest tap of either.
+	String[] fields = generators.split(",");
+	if (fields.length != 2) {
+
+	    throw new RuntimeException("A rate-1/2 code needs two generators: " +
+				       generators);
+
+	}
+	_generator1 = Integer.parseInt(fields[0].trim(), 8);
+	_generator2 = Integer.parseInt(fields[1].trim(), 8);
+	_constraintLength =
+	    32 - Integer.numberOfLeadingZeros(_generator1 | _generator2);
+	if ((_constraintLength < 2) || (_constraintLength > _maxConstraintLength)) {
+
+	    throw new RuntimeException("Constraint length must be from 2 to " +
+				       _maxConstraintLength + ": " + generators);
+
+	}
+
+	// Size the frame and the decoder's arrays.
+	_stateCount = 1 << (_constraintLength - 1);
+	_infoBits = 8 * (_maxFrameSize + 3) + _constraintLength - 1;
+	_codedBits = 2 * _infoBits;
+	_codedFrameSize = (_codedBits + 7) / 8;
+	_wordsPerStep = (_stateCount + 63) / 64;
+	_metrics = new int[_stateCount];
+	_nextMetrics = new int[_stateCount];
+	_decisions = new long[_infoBits * _wordsPerStep];
+	_recoded = new byte[_codedFrameSize];
+
+	// For each state and each of its two predecessors, note the pair of
+	// bits sent on the transition between them.
+	_outputs = new byte[2 * _stateCount];
+	for (int state = 0; state < _stateCount; state++) {
+
+	    for (int j = 0; j < 2; j++) {
+
+		int predecessor = (state >>> 1) | (j * (_stateCount >>> 1));
+		int register = (predecessor << 1) | (state & 1);
+		_outputs[2 * state + j] = (byte)outputPair(register);
+
+	    }
+
+	}
+
+	// Initialize the layer, keeping the soft values of the bits.
+	initialize(physicalLayer);
+	keepSoftValues();
+
+    } // ConvolutionalDataLinkLayer
+    // =========================================================================
+
+
+
+    // =========================================================================
+    /**
+     * Return the number of bytes in a coded frame.
+     *
+     * @return The length of every frame sent.
+     **/
+    protected int codedFrameSize () {
+
+	return _codedFrameSize;
+
+    } // codedFrameSize ()
+    // =========================================================================
+
+
+
+    // =========================================================================
+    /**
+     * Encode the bits of a frame, most significant first, followed by K - 1
+     * zero bits, emitting two coded bits for each.
+     *
+     * @param info The bytes to be encoded.
+     * @param coded The buffer into which the coded bits are packed, most
+     *              significant first; it must be zeroed.
+     **/
+    protected void encode (byte[] info, byte[] coded) {
+
+	int register = 0;
+	int mask = (1 << _constraintLength) - 1;
+	for (int i = 0; i < _infoBits; i++) {
+
+	    int bit = (i < 8 * info.length ?
+		       (info[i >>> 3] >>> (7 - (i & 7))) & 1 :
+		       0);
+	    register = ((register << 1) | bit) & mask;
+	    int pair = outputPair(register);
+	    int first = 2 * i;
+	    coded[first >>> 3] |= (byte)((pair >>> 1) << (7 - (first & 7)));
+	    coded[(first + 1) >>> 3] |= (byte)((pair & 1) << (7 - ((first + 1) & 7)));
+
+	}
+
+    } // encode (byte[] info, byte[] coded)
+    // =========================================================================
+
+
+
+    // =========================================================================
+    /**
+     * Find the pair of bits that the encoder emits with the given contents of
+     * its register.
+     *
+     * @param register The last K bits encoded, the newest lowest.
+     * @return The first coded bit in bit 1, and the second in bit 0.
+     **/
+    private int outputPair (int register) {
+
+	return (((Integer.bitCount(register & _generator1) & 1) << 1) |
+		(Integer.bitCount(register & _generator2) & 1));
+
+    } // outputPair (int register)
+    // =========================================================================
+
+
+
+    // =========================================================================
+    /**
+     * Decode a frame of soft values by the Viterbi algorithm into the bytes
+     * that were encoded.  At each step, each state's path metric is the
+     * better of the metrics of its two predecessors plus the correlation of
+     * the values received with the bits their transitions would have sent;
+     * which predecessor won is noted as one bit of the step's decisions.
+     * Since the frame ends in state 0, the path is traced back from there.
+     *
+     * @param soft The soft values, one for each coded bit, and perhaps more.
+     * @param info The buffer into which the decoded bytes are written.
+     **/
+    private void decode (byte[] soft, byte[] info) {
+
+	int[] metrics = _metrics;
+	int[] next = _nextMetrics;
+	Arrays.fill(metrics, _unreachable);
+	metrics[0] = 0;
+	int half = _stateCount >>> 1;
+	int[] branch = _branch;
+
+	for (int step = 0; step < _infoBits; step++) {
+
+	    // The metric of each pair of bits that a transition may send.
+	    int r1 = soft[2 * step];
+	    int r2 = soft[2 * step + 1];
+	    branch[0] = r1 + r2;
+	    branch[1] = r1 - r2;
+	    branch[2] = -r1 + r2;
+	    branch[3] = -r1 - r2;
+
+	    // Add, compare, and select for every state, gathering the
+	    // decisions a word at a time.
+	    int row = step * _wordsPerStep;
+	    for (int word = 0; word < _wordsPerStep; word++) {
+
+		long decisions = 0;
+		int first = word * 64;
+		int last = Math.min(first + 64, _stateCount);
+		for (int state = first; state < last; state++) {
+
+		    int predecessor = state >>> 1;
+		    int metric0 = metrics[predecessor] +
+			branch[_outputs[2 * state]];
+		    int metric1 = metrics[predecessor | half] +
+			branch[_outputs[2 * state + 1]];
+		    if (metric1 > metric0) {
+
+			next[state] = metric1;
+			decisions |= 1L << (state - first);
+
+		    } else {
+
+			next[state] = metric0;
+
+		    }
+
+		}
+		_decisions[row + word] = decisions;
+
+	    }
+
+	    int[] swap = metrics;
+	    metrics = next;
+	    next = swap;
+
+	}
+
+	// Trace back from state 0, recovering each bit from the state it led
+	// to, and each predecessor from the decision bit.
+	Arrays.fill(info, (byte)0);
+	int state = 0;
+	for (int step = _infoBits - 1; step >= 0; step--) {
+
+	    if ((step < 8 * info.length) && ((state & 1) != 0)) {
+
+		info[step >>> 3] |= (byte)(1 << (7 - (step & 7)));
+
+	    }
+	    long decision = (_decisions[step * _wordsPerStep + (state >>> 6)] >>>
+			     (state & 63)) & 1;
+	    state = (state >>> 1) | ((int)decision * half);
+
+	}
+
+    } // decode (byte[] soft, byte[] info)
+    // =========================================================================
+
+
+
+    // =========================================================================
+    /**
+     *  Decode the frame, check it, and return the original data.
+     *
+     * @return The data carried in this frame; <tt>null</tt> if the data was not
+     *         successfully received.
+     **/
+    protected byte[] processFrame () {
+
+	decode(incomingSoft, _decoded);
+
+	// Check the decoded frame.
+	if (!intact(_decoded)) {
+
+	    EventSink.current().event(EventSink.frameRejected);
+	    return null;
+
+	}
+
+	// Encode the frame again to count the bits that were corrected.
+	Arrays.fill(_recoded, (byte)0);
+	encode(_decoded, _recoded);
+	int flipped = 0;
+	for (int i = 0; i < _codedFrameSize; i++) {
+
+	    flipped += Integer.bitCount((_recoded[i] ^ incomingBuffer[i]) & 0xff);
+
+	}
+	if (flipped > 0) {
+
+	    corrections++;
+	    bitsCorrected += flipped;
+	    EventSink.current().event(EventSink.frameCorrected);
+
+	} else {
+
+	    EventSink.current().event(EventSink.frameAccepted);
+
+	}
+
+	return dataOf(_decoded);
+
+    } // processFrame
+    // =========================================================================
+
+
+
+    // =========================================================================
+    // DATA MEMBERS
+
+    /**
+     * The maximum number of data (not metadata) bytes in a frame.
+     **/
+    static final int _frameDataSize = 32;
+
+    /**
+     * The largest constraint length allowed, which sets the number of states.
+     **/
+    static final int _maxConstraintLength = 16;
+
+    /**
+     * A path metric below any that a reachable state can have.
+     **/
+    static final int _unreachable = -(1 << 28);
+
+    /**
+     * The code: its generators, its constraint length, and its number of
+     * states (one for each value of the last K - 1 bits encoded).
+     **/
+    final int _generator1;
+    final int _generator2;
+    final int _constraintLength;
+    final int _stateCount;
+
+    /**
+     * The number of bits encoded per frame (the tail included), of bits sent,
+     * and of bytes sent.
+     **/
+    final int _infoBits;
+    final int _codedBits;
+    final int _codedFrameSize;
+
+    /**
+     * The pair of bits sent on the transition into each state from each of
+     * its predecessors (the one with high bit 0, then the one with 1).
+     **/
+    final byte[] _outputs;
+
+    /**
+     * The decoder's path metrics, before and after each step, and its
+     * decisions, a bit per state and a row of words per step.
+     **/
+    final int[] _metrics;
+    final int[] _nextMetrics;
+    final long[] _decisions;
+    final int _wordsPerStep;
+
+    /**
+     * The decoder's metric for each pair of bits at the current step.
+     **/
+    final int[] _branch = new int[4];
+
+    /**
+     * A frame encoded again after decoding.
+     **/
+    final byte[] _recoded;
+
+    /**
+     * The number of bits corrected in all.
+     **/
+    long bitsCorrected;
+    // =========================================================================
+
+
+
+// =============================================================================
+} // class ConvolutionalDataLinkLayer
+// =============================================================================
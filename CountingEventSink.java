@@ -0,0 +1,120 @@
+// ===================================================================
+// CountingEventSink
+// ===================================================================
+
+
+
+// ===================================================================
+// IMPORTS
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+// ===================================================================
+
+
+
+// ===================================================================
+// A sink that counts the events of each kind and shows no text.  Any
+// number of threads may report at once; each kind's count is spread
+// across cells so that they rarely contend.  When closed, it prints
+// the counts.
+class CountingEventSink extends EventSink {
+// ===================================================================
+
+
+
+    // ===============================================================
+    // PUBLIC METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // The constructor.
+    public CountingEventSink () {
+
+	counts = new ConcurrentHashMap<String, LongAdder>();
+
+    } // CountingEventSink
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Count an event.
+    public void event (String kind) {
+
+	LongAdder count = counts.get(kind);
+	if (count == null) {
+
+	    LongAdder added = new LongAdder();
+	    count = counts.putIfAbsent(kind, added);
+	    if (count == null) {
+
+		count = added;
+
+	    }
+
+	}
+	count.increment();
+
+    } // event
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Return the number of events of a kind counted so far.
+    public long count (String kind) {
+
+	LongAdder count = counts.get(kind);
+	return (count == null ? 0 : count.sum());
+
+    } // count
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Print the counts, in order of kind.
+    public void close () {
+
+	TreeMap<String, LongAdder> sorted =
+	    new TreeMap<String, LongAdder>(counts);
+	StringBuilder line = new StringBuilder("Events:");
+	Iterator<Map.Entry<String, LongAdder>> i =
+	    sorted.entrySet().iterator();
+	while (i.hasNext()) {
+
+	    Map.Entry<String, LongAdder> entry = i.next();
+	    line.append(' ').append(entry.getKey()).append(" = ")
+		.append(entry.getValue().sum())
+		.append(i.hasNext() ? "," : "");
+
+	}
+	System.out.println(line);
+
+    } // close
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // DATA MEMBERS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // The count of each kind of event.
+    final ConcurrentHashMap<String, LongAdder> counts;
+    // ===============================================================
+
+
+
+// ===================================================================
+} // class CountingEventSink
+// ===================================================================
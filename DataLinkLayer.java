@@ -70,11 +70,93 @@ abstract class DataLinkLayer {
 
 
 
+    // ===============================================================
+    // Send at once anything that has been held back to be sent with
+    // what comes later, and deliver anything received that has been
+    // held back to be processed with what arrives later.  A layer
+    // that sends each frame as soon as it is built, and processes
+    // each as soon as it arrives, holds nothing back.
+    public void flush () {
+
+    } // flush
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Ask that a soft value be kept for each bit received, for a layer
+    // whose decoder can use them.  Call after initialize().
+    protected void keepSoftValues () {
+
+	incomingSoft = new byte[8 * bufferSize];
+
+    } // keepSoftValues
+    // ===============================================================
+
+
+
     // ===============================================================
     // Allow the physical layer to deliver a byte into this layer's
-    // buffer.
+    // buffer.  If the layer keeps soft values, each bit of the byte is
+    // given one as certain as a hard decision allows.
     void receive (byte data) {
 
+	if (incomingSoft != null) {
+
+	    int base = 8 * bufferIndex;
+	    for (int k = 0; k < 8; k++) {
+
+		incomingSoft[base + k] = (((data >>> (7 - k)) & 0x1) == 0 ?
+					  hardSoftValue :
+					  (byte)-hardSoftValue);
+
+	    }
+
+	}
+	store(data);
+
+    } // receive (byte data)
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Allow the physical layer to deliver a byte into this layer's
+    // buffer along with the soft values of its bits, which begin at
+    // the given offset, least significant bit first, as they were
+    // carried.  They are kept most significant first, in the order of
+    // the bits of the buffer, if the layer keeps them at all.
+    void receive (byte data, byte[] soft, int offset) {
+
+	if (incomingSoft != null) {
+
+	    int base = 8 * bufferIndex;
+	    for (int k = 0; k < 8; k++) {
+
+		incomingSoft[base + k] = soft[offset + 7 - k];
+
+	    }
+
+	}
+	store(data);
+
+    } // receive (byte data, byte[] soft, int offset)
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Add a byte received to the buffer, and process the frame if the
+    // byte completes it.
+    private void store (byte data) {
+
+	// If this byte begins a frame, time the frame.
+	if (bufferIndex == 0) {
+
+	    startFrameTimer();
+
+	}
+
 	// Add the new byte to the buffer of bytes.
 	incomingBuffer[bufferIndex] = data;
 	bufferIndex++;
@@ -84,20 +166,75 @@ abstract class DataLinkLayer {
 	byte[] originalData = null;
 	if (receivedCompleteFrame()) { //if the byte that just came complete a frame
 
+	    framesReceived++;
 	    originalData = processFrame(); // restore the original data from this frame
 	    bufferIndex = 0;
+	    if (originalData == null) {
+
+		framesDiscarded++;
+
+	    }
 
 	}
 
 	// If the frame was processed successfully, deliver the
-	// processed frame to the client.
-	if (originalData != null) {
+	// processed frame to the client, unless the layer has kept it
+	// to deliver later.
+	if ((originalData != null) && (originalData != deferred)) {
 
 	    client.receive(originalData);
 
 	}
 
-    } // receive
+    } // store
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Set the longest time, in ticks of simulated time, that a frame
+    // may take to arrive in full.  It must exceed the time needed to
+    // send the longest frame.
+    public void setFrameTimeout (long frameTimeout) {
+
+	this.frameTimeout = frameTimeout;
+
+    } // setFrameTimeout
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // If the medium keeps time, start a timer for the frame that has
+    // just begun to arrive.  Should the frame still be incomplete
+    // when the timer expires, its stop tag was lost, and the bytes
+    // received so far are discarded rather than left to corrupt the
+    // next frame.
+    private void startFrameTimer () {
+
+	EventScheduler scheduler = physicalLayer.scheduler();
+	if (scheduler == null) {
+
+	    return;
+
+	}
+
+	final int frame = ++framesStarted;
+	scheduler.schedule(frameTimeout, new Event() {
+
+		public void fire () {
+
+		    if ((framesStarted == frame) && (bufferIndex > 0)) {
+
+			bufferIndex = 0;
+
+		    }
+
+		}
+
+	    });
+
+    } // startFrameTimer
     // ===============================================================
 
 
@@ -113,7 +250,9 @@ abstract class DataLinkLayer {
     // Given a complete frame, process its contents, extracting
     // metadata and performing any error checking, then delivering (if
     // possible) the original data.  (Return a null pointer if the
-    // data cannot be recovered.)
+    // data cannot be recovered, or deferred if the layer has kept the
+    // frame to process later, delivering it to the client and
+    // counting it as discarded or not itself.)
     abstract protected byte[] processFrame ();
     // ===============================================================
 
@@ -140,8 +279,34 @@ abstract class DataLinkLayer {
     // The number of bytes received so far into the incoming buffer.
     int bufferIndex;
 
+    // For a layer that keeps them, a soft value for each bit of the
+    // incoming buffer: positive for a 0 and negative for a 1, in
+    // proportion to the log-likelihood ratio of the two.  Otherwise,
+    // null.
+    byte[] incomingSoft;
+
+    // The soft value of a bit received without one (negated for a 1).
+    static final byte hardSoftValue = 16;
+
     // The incoming buffer size.
     final int bufferSize = 32768;
+
+    // What processFrame() returns for a frame kept to be processed
+    // later.
+    static final byte[] deferred = new byte[0];
+
+    // On a medium that keeps time, the number of frames that have
+    // begun to arrive, and how long each may take to arrive in full
+    // (one millisecond by default).
+    int framesStarted;
+    long frameTimeout = EventScheduler.ticks(0.001);
+
+    // The number of complete frames received, of those discarded
+    // because an error was detected, and of those in which an error
+    // was corrected (by a layer that can correct errors).
+    long framesReceived;
+    long framesDiscarded;
+    long corrections;
     // ===============================================================
 
 
@@ -0,0 +1,499 @@
+// ===================================================================
+// DeliveryVerifier
+// ===================================================================
+
+
+
+// ===================================================================
+// IMPORTS
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.SplittableRandom;
+import java.util.zip.CRC32;
+// ===================================================================
+
+
+
+// ===================================================================
+// Check, end to end, that what a network layer receives is what was
+// sent.  On the way down, each message is tagged with a header:
+//
+//   magic     4 bytes  (``NLVM'')
+//   stream    4 bytes  a random number naming the sending layer
+//   sequence  8 bytes  the message's place in its stream, from zero
+//   length    4 bytes  the number of bytes of payload that follow
+//   check     4 bytes  the CRC-32 of the fields above
+//   hash     16 bytes  the first half of the SHA-256 digest of the
+//                      fields above and the payload
+//
+// On the way up, the pieces that the data link layer delivers are
+// gathered, the messages found in them, and each message's hash
+// checked.  A message whose hash matches arrived intact; it is also
+// counted as duplicated if its sequence number has been seen before,
+// or as reordered if a later one has.  A message whose hash does not
+// match was corrupted: if the data link layer discarded a frame while
+// it was arriving, the damage was detected (it lost a piece), and
+// otherwise it slipped past the data link layer's checks unnoticed.
+// A header that fails its own check is rejected in the same way as
+// soon as it has arrived, before its length is trusted, so that one
+// damaged length cannot hold back every message after it.  After a
+// mismatch, the receiver searches onward for the next header.
+//
+// Messages that never arrive intact are lost; the receiver can count
+// them only when told how many were sent.  Duplicates are recognized
+// within a window of recent sequence numbers; one that arrives later
+// still is taken for a duplicate, since it cannot be told apart.
+class DeliveryVerifier {
+// ===================================================================
+
+
+
+    // ===============================================================
+    // PUBLIC METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // The constructor.  Verified payloads are passed to the given
+    // network layer.
+    public DeliveryVerifier (NetworkLayer client) {
+
+	this.client = client;
+	streamId = new SplittableRandom().nextInt();
+	streams = new HashMap<Integer, Stream>();
+	buffer = new byte[initialBufferSize];
+	try {
+
+	    digest = MessageDigest.getInstance("SHA-256");
+
+	} catch (NoSuchAlgorithmException e) {
+
+	    throw new RuntimeException("No SHA-256 digest available");
+
+	}
+
+    } // DeliveryVerifier
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Return a message tagged with the next sequence number of this
+    // layer's stream, ready to be sent.
+    public byte[] tag (byte[] payload) {
+
+	byte[] message = new byte[headerSize + payload.length];
+	BigEndian.putInt(message, 0, magic);
+	BigEndian.putInt(message, 4, streamId);
+	BigEndian.putLong(message, 8, nextSequence++);
+	BigEndian.putInt(message, 16, payload.length);
+	BigEndian.putInt(message, checkOffset, headerCheck(message, 0));
+	System.arraycopy(payload, 0, message, headerSize, payload.length);
+	hash(message, 0, payload.length, message, hashOffset);
+	return message;
+
+    } // tag
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Take a piece delivered by the data link layer (or a whole
+    // message, if the network layer reassembles them), and verify
+    // every message that it completes.
+    public void receive (byte[] data) {
+
+	receive(data, 0, data.length);
+
+    } // receive
+
+    public void receive (byte[] data, int offset, int length) {
+
+	append(data, offset, length);
+	scan(false);
+
+    } // receive
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Judge whatever remains gathered, as when no more will arrive:
+    // a header whose payload has not arrived in full is taken as
+    // corrupted.
+    public void finish () {
+
+	scan(true);
+
+    } // finish
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Return the number of messages of the given stream delivered
+    // intact at least once.
+    public long delivered (int stream) {
+
+	Stream s = streams.get(stream);
+	return (s == null ? 0 : s.distinct);
+
+    } // delivered
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Return a line summarizing what arrived, counting as lost the
+    // messages of each given stream that were sent but never arrived
+    // intact.
+    public String report (int[] senders, long[] sent) {
+
+	long lost = 0;
+	for (int i = 0; i < senders.length; i++) {
+
+	    lost += sent[i] - delivered(senders[i]);
+
+	}
+
+	long intact = 0;
+	long duplicated = 0;
+	long reordered = 0;
+	Iterator<Stream> i = streams.values().iterator();
+	while (i.hasNext()) {
+
+	    Stream s = i.next();
+	    intact += s.intact;
+	    duplicated += s.duplicated;
+	    reordered += s.reordered;
+
+	}
+
+	return (intact + " intact, " +
+		lost + " lost, " +
+		duplicated + " duplicated, " +
+		reordered + " reordered, " +
+		corruptedDetected + " damaged with an error detected, " +
+		corruptedUndetected + " corrupted undetected, " +
+		bytesSkipped + " bytes skipped");
+
+    } // report
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // PRIVATE METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Find and verify the messages gathered so far.  Unless at the
+    // end, stop at a message that has not arrived in full.
+    private void scan (boolean atEnd) {
+
+	while (end - start >= magicSize) {
+
+	    // Look for the start of a header.
+	    if (BigEndian.getInt(buffer, start) != magic) {
+
+		start++;
+		bytesSkipped++;
+		continue;
+
+	    }
+	    if (!inMessage) {
+
+		inMessage = true;
+		discardsAtStart = client.dataLinkLayer.framesDiscarded;
+
+	    }
+
+	    // Wait for the header, and make sure that it is intact and
+	    // plausible.
+	    int available = end - start;
+	    int length = (available >= headerSize ?
+			  BigEndian.getInt(buffer, start + 16) :
+			  -1);
+	    if ((available >= headerSize) &&
+		((BigEndian.getInt(buffer, start + checkOffset) !=
+		  headerCheck(buffer, start)) ||
+		 (length < 0) || (length > maxPayloadSize))) {
+
+		reject();
+		continue;
+
+	    }
+
+	    // Wait for the payload, then check the message.
+	    if ((available < headerSize) || (available < headerSize + length)) {
+
+		if (atEnd) {
+
+		    reject();
+		    continue;
+
+		}
+		return;
+
+	    }
+
+	    hash(buffer, start, length, computed, 0);
+	    if (!Arrays.equals(computed, 0, hashSize,
+			       buffer, start + hashOffset,
+			       start + hashOffset + hashSize)) {
+
+		reject();
+		continue;
+
+	    }
+
+	    accept(BigEndian.getInt(buffer, start + 4),
+		   BigEndian.getLong(buffer, start + 8),
+		   start + headerSize,
+		   length);
+	    start += headerSize + length;
+	    inMessage = false;
+
+	}
+
+	if (atEnd) {
+
+	    bytesSkipped += end - start;
+	    start = end;
+
+	}
+
+    } // scan
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Count the message at the start of the buffer as corrupted, and
+    // move past its magic number to search for the next header.
+    private void reject () {
+
+	if (client.dataLinkLayer.framesDiscarded != discardsAtStart) {
+
+	    corruptedDetected++;
+
+	} else {
+
+	    corruptedUndetected++;
+
+	}
+	inMessage = false;
+	start++;
+	bytesSkipped++;
+
+    } // reject
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Count a message that arrived intact, and pass it on.
+    private void accept (int stream, long sequence, int offset, int length) {
+
+	Stream s = streams.get(stream);
+	if (s == null) {
+
+	    s = new Stream();
+	    streams.put(stream, s);
+
+	}
+
+	s.intact++;
+	if (sequence > s.highest) {
+
+	    // Forget whether the sequence numbers now leaving the window
+	    // were seen, making room for those entering it.
+	    long from = Math.max(s.highest + 1, sequence - window + 1);
+	    for (long q = from; q < sequence; q++) {
+
+		s.clear(q);
+
+	    }
+	    s.highest = sequence;
+	    s.set(sequence);
+	    s.distinct++;
+
+	} else if ((sequence <= s.highest - window) || s.isSet(sequence)) {
+
+	    s.duplicated++;
+	    return;
+
+	} else {
+
+	    s.set(sequence);
+	    s.distinct++;
+	    s.reordered++;
+
+	}
+
+	client.receiveVerified(buffer, offset, length);
+
+    } // accept
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Add a piece to the gathered bytes, making room for it by moving
+    // what remains to the front, or else by growing the buffer.
+    private void append (byte[] data, int offset, int length) {
+
+	if (end + length > buffer.length) {
+
+	    System.arraycopy(buffer, start, buffer, 0, end - start);
+	    end -= start;
+	    start = 0;
+	    if (end + length > buffer.length) {
+
+		buffer = Arrays.copyOf(buffer,
+				       Math.max(buffer.length * 2,
+						end + length));
+
+	    }
+
+	}
+	System.arraycopy(data, offset, buffer, end, length);
+	end += length;
+
+    } // append
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Compute the check of a header, from its fields before the check.
+    private static int headerCheck (byte[] message, int offset) {
+
+	CRC32 crc = new CRC32();
+	crc.update(message, offset, checkOffset);
+	return (int)crc.getValue();
+
+    } // headerCheck
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Compute the hash of a message, from its header fields before
+    // the hash and its payload, into the given place.
+    private void hash (byte[] message,
+		       int offset,
+		       int length,
+		       byte[] into,
+		       int intoOffset) {
+
+	digest.update(message, offset, hashOffset);
+	digest.update(message, offset + headerSize, length);
+	byte[] full = digest.digest();
+	System.arraycopy(full, 0, into, intoOffset, hashSize);
+
+    } // hash
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // What is known of one sender's stream: the highest sequence
+    // number seen, which of the window of numbers up to it have been
+    // seen (one bit each, in a ring), and the counts of messages.
+    private static class Stream {
+
+	boolean isSet (long sequence) {
+
+	    int bit = (int)(sequence & (window - 1));
+	    return (seen[bit >>> 6] & (1L << bit)) != 0;
+
+	}
+
+	void set (long sequence) {
+
+	    int bit = (int)(sequence & (window - 1));
+	    seen[bit >>> 6] |= 1L << bit;
+
+	}
+
+	void clear (long sequence) {
+
+	    int bit = (int)(sequence & (window - 1));
+	    seen[bit >>> 6] &= ~(1L << bit);
+
+	}
+
+	long highest = -1;
+	final long[] seen = new long[window / 64];
+	long intact;
+	long distinct;
+	long duplicated;
+	long reordered;
+
+    } // class Stream
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // DATA MEMBERS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // The layout of a header.
+    static final int magic = 0x4e4c564d;
+    static final int magicSize = 4;
+    static final int checkOffset = 20;
+    static final int hashOffset = 24;
+    static final int hashSize = 16;
+    static final int headerSize = hashOffset + hashSize;
+
+    // The largest payload believed, the number of recent sequence
+    // numbers remembered for each stream (a power of two), and the
+    // initial size of the buffer of gathered bytes.
+    static final int maxPayloadSize = 1 << 24;
+    static final int window = 1 << 16;
+    static final int initialBufferSize = 4096;
+
+    // The network layer served, the name of its stream, and the
+    // sequence number of the next message it sends.
+    final NetworkLayer client;
+    final int streamId;
+    long nextSequence;
+
+    // The bytes gathered and not yet verified lie in the buffer from
+    // start up to end.  While a header is being gathered, the number
+    // of frames the data link layer had discarded when it began.
+    byte[] buffer;
+    int start;
+    int end;
+    boolean inMessage;
+    long discardsAtStart;
+
+    // The digest, and the hash computed for the message received.
+    final MessageDigest digest;
+    final byte[] computed = new byte[hashSize];
+
+    // What is known of each sender's stream, and the counts of
+    // corrupted messages and of bytes that belonged to no message.
+    final HashMap<Integer, Stream> streams;
+    long corruptedDetected;
+    long corruptedUndetected;
+    long bytesSkipped;
+    // ===============================================================
+
+
+
+// ===================================================================
+} // class DeliveryVerifier
+// ===================================================================
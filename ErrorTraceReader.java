@@ -0,0 +1,245 @@
+// ===================================================================
+// ErrorTraceReader
+// ===================================================================
+
+
+
+// ===================================================================
+// IMPORTS
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+// ===================================================================
+
+
+
+// ===================================================================
+// Read back, in order, the positions of the flipped bits in a trace
+// written by ErrorTraceWriter (which describes the file format).
+//
+// The file is read through a read-only memory mapping of a window of
+// the file, moved along as it is consumed.  The pages are shared with
+// any other process reading the same trace and are not part of the
+// heap, so even very large traces cost little memory.
+class ErrorTraceReader {
+// ===================================================================
+
+
+
+    // ===============================================================
+    // PUBLIC METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // The constructor.  Open the trace and read its header.
+    public ErrorTraceReader (String path) {
+
+	this.path = path;
+	try {
+
+	    RandomAccessFile file = new RandomAccessFile(path, "r");
+	    channel = file.getChannel();
+	    fileSize = channel.size();
+	    if (fileSize < headerSize) {
+
+		throw new RuntimeException("Error trace " + path +
+					   " is too short");
+
+	    }
+	    mapWindow(0);
+
+	} catch (IOException e) {
+
+	    throw new RuntimeException("Cannot open error trace " + path +
+				       ": " + e.getMessage());
+
+	}
+
+	if (window.getInt() != magic) {
+
+	    throw new RuntimeException(path + " is not an error trace");
+
+	}
+	bitsCovered = window.getLong();
+	flips = window.getLong();
+
+	flipsRead = 0;
+	nextFlip = -1;
+	advance();
+
+    } // ErrorTraceReader
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Return the position of the next flip not yet consumed, or
+    // Long.MAX_VALUE if there are none left.
+    public long peek () {
+
+	return nextFlip;
+
+    } // peek
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Consume the next flip and return its position.
+    public long next () {
+
+	long position = nextFlip;
+	advance();
+	return position;
+
+    } // next
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Return the number of bits that the trace covers, and the number
+    // of flips it holds.
+    public long bitsCovered () {
+
+	return bitsCovered;
+
+    } // bitsCovered
+
+    public long flips () {
+
+	return flips;
+
+    } // flips
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Close the trace.
+    public void close () {
+
+	try {
+
+	    window = null;
+	    channel.close();
+
+	} catch (IOException e) {
+
+	    throw new RuntimeException("Cannot close error trace " + path +
+				       ": " + e.getMessage());
+
+	}
+
+    } // close
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // PRIVATE METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Decode the next gap and move to the flip that it leads to.
+    private void advance () {
+
+	if (flipsRead == flips) {
+
+	    nextFlip = Long.MAX_VALUE;
+	    return;
+
+	}
+
+	// Make sure that the longest possible integer is mapped.
+	long offset = windowStart + window.position();
+	if ((window.remaining() < maxVarintSize) &&
+	    (windowStart + window.limit() < fileSize)) {
+
+	    mapWindow(offset);
+
+	}
+
+	long gap = 0;
+	int shift = 0;
+	byte current;
+	do {
+
+	    current = window.get();
+	    gap |= (long)(current & 0x7f) << shift;
+	    shift += 7;
+
+	} while (current < 0);
+
+	nextFlip += gap + 1;
+	flipsRead++;
+
+    } // advance
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Map the window of the file that begins at the given offset.
+    private void mapWindow (long offset) {
+
+	try {
+
+	    window = channel.map(FileChannel.MapMode.READ_ONLY,
+				 offset,
+				 Math.min(windowSize, fileSize - offset));
+	    windowStart = offset;
+
+	} catch (IOException e) {
+
+	    throw new RuntimeException("Cannot map error trace " + path +
+				       ": " + e.getMessage());
+
+	}
+
+    } // mapWindow
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // DATA MEMBERS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // The layout of a trace: a magic number (``ETRC''), the size of
+    // the header, and the most bytes a gap can take.
+    static final int magic = 0x45545243;
+    static final int headerSize = 4 + 8 + 8;
+    static final int maxVarintSize = 10;
+
+    // The trace file, and the window of it that is mapped (along with
+    // the offset of that window in the file).
+    final String path;
+    FileChannel channel;
+    long fileSize;
+    MappedByteBuffer window;
+    long windowStart;
+    static final long windowSize = 64L << 20;
+
+    // What the header says about the trace, the number of flips
+    // decoded so far, and the position of the next one.
+    long bitsCovered;
+    long flips;
+    long flipsRead;
+    long nextFlip;
+    // ===============================================================
+
+
+
+// ===================================================================
+} // class ErrorTraceReader
+// ===================================================================
@@ -0,0 +1,208 @@
+// ===================================================================
+// ErrorTraceWriter
+// ===================================================================
+
+
+
+// ===================================================================
+// IMPORTS
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+// ===================================================================
+
+
+
+// ===================================================================
+// Write a trace of the positions of the bits that a medium flipped,
+// counting positions over every bit the medium carried, in order.
+//
+// The trace file begins with a header of ErrorTraceReader.headerSize
+// bytes: a magic number, the number of bits the trace covers, and the
+// number of flips.  The flips follow, each as the gap (in bits) since
+// the previous flip, written as a variable-length integer of seven
+// bits per byte, low bits first, with the top bit of each byte set if
+// more bytes follow.  Errors are rare, so most gaps are large but
+// still fit in two to four bytes.
+//
+// The file is written through a memory mapping of a window of the
+// file, which is moved along as it fills, so that writing a flip
+// costs no system call.
+class ErrorTraceWriter {
+// ===================================================================
+
+
+
+    // ===============================================================
+    // PUBLIC METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // The constructor.  Create (or replace) the trace file.
+    public ErrorTraceWriter (String path) {
+
+	this.path = path;
+	try {
+
+	    file = new RandomAccessFile(path, "rw");
+	    file.setLength(0);
+	    channel = file.getChannel();
+	    mapWindow(ErrorTraceReader.headerSize);
+
+	} catch (IOException e) {
+
+	    throw new RuntimeException("Cannot create error trace " + path +
+				       ": " + e.getMessage());
+
+	}
+
+	lastFlip = -1;
+
+    } // ErrorTraceWriter
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Record that the bit at the given position was flipped.
+    // Positions must be given in increasing order.
+    public void flip (long position) {
+
+	if (position <= lastFlip) {
+
+	    throw new RuntimeException("Error trace positions out of order: " +
+				       position + " after " + lastFlip);
+
+	}
+
+	// Make sure that the longest possible integer fits.
+	if (window.remaining() < ErrorTraceReader.maxVarintSize) {
+
+	    mapWindow(windowStart + window.position());
+
+	}
+
+	long gap = position - lastFlip - 1;
+	while ((gap & ~0x7fL) != 0) {
+
+	    window.put((byte)((gap & 0x7f) | 0x80));
+	    gap >>>= 7;
+
+	}
+	window.put((byte)gap);
+
+	lastFlip = position;
+	flips++;
+
+    } // flip
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Finish the trace, noting that it covers the given number of
+    // bits, and close the file.
+    public void close (long bitsCovered) {
+
+	try {
+
+	    long end = windowStart + window.position();
+	    window.force();
+	    window = null;
+
+	    ByteBuffer header = ByteBuffer.allocate(ErrorTraceReader.headerSize);
+	    header.putInt(ErrorTraceReader.magic);
+	    header.putLong(bitsCovered);
+	    header.putLong(flips);
+	    header.flip();
+	    channel.write(header, 0);
+
+	    channel.truncate(end);
+	    channel.close();
+	    file.close();
+
+	} catch (IOException e) {
+
+	    throw new RuntimeException("Cannot finish error trace " + path +
+				       ": " + e.getMessage());
+
+	}
+
+    } // close
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Return the number of flips recorded so far.
+    public long flips () {
+
+	return flips;
+
+    } // flips
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // PRIVATE METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Map the window of the file that begins at the given offset,
+    // growing the file as needed.
+    private void mapWindow (long offset) {
+
+	try {
+
+	    window = channel.map(FileChannel.MapMode.READ_WRITE,
+				 offset,
+				 windowSize);
+	    windowStart = offset;
+
+	} catch (IOException e) {
+
+	    throw new RuntimeException("Cannot map error trace " + path +
+				       ": " + e.getMessage());
+
+	}
+
+    } // mapWindow
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // DATA MEMBERS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // The trace file, and the window of it that is mapped (along with
+    // the offset of that window in the file).
+    final String path;
+    RandomAccessFile file;
+    FileChannel channel;
+    MappedByteBuffer window;
+    long windowStart;
+    static final int windowSize = 1 << 20;
+
+    // The position of the last flip recorded (-1 before the first),
+    // and the number recorded.
+    long lastFlip;
+    long flips;
+    // ===============================================================
+
+
+
+// ===================================================================
+} // class ErrorTraceWriter
+// ===================================================================
@@ -0,0 +1,26 @@
+// ===================================================================
+// Event
+// ===================================================================
+
+
+
+// ===================================================================
+// Something that is to happen at a given moment of simulated time.
+// Events are handed to an EventScheduler, which fires each one when
+// the simulation reaches its time.
+interface Event {
+// ===================================================================
+
+
+
+    // ===============================================================
+    // Carry out the event.  The scheduler's clock has already been
+    // moved to the event's time.
+    public void fire ();
+    // ===============================================================
+
+
+
+// ===================================================================
+} // interface Event
+// ===================================================================
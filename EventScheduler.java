@@ -0,0 +1,335 @@
+// ===================================================================
+// EventScheduler
+// ===================================================================
+
+
+
+// ===================================================================
+// IMPORTS
+
+import java.util.Arrays;
+// ===================================================================
+
+
+
+// ===================================================================
+// The kernel of a discrete-event simulation.  The scheduler keeps a
+// clock of simulated time and a queue of pending events, and runs
+// the simulation by repeatedly advancing the clock to the earliest
+// pending event and firing it.  Events scheduled for the same moment
+// fire in the order in which they were scheduled.
+//
+// Time is counted in integral ticks of one picosecond, which is fine
+// enough for bit times on fast links and still spans over a hundred
+// days.  The queue is a binary heap kept in parallel arrays, so that
+// scheduling and firing allocate nothing beyond the events themselves.
+class EventScheduler {
+// ===================================================================
+
+
+
+    // ===============================================================
+    // PUBLIC METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // The constructor.  The clock starts at zero with no events.
+    public EventScheduler () {
+
+	times = new long[initialCapacity];
+	sequences = new long[initialCapacity];
+	events = new Event[initialCapacity];
+	size = 0;
+	now = 0;
+
+    } // EventScheduler
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Convert between seconds and ticks.
+    public static long ticks (double seconds) {
+
+	return Math.round(seconds * ticksPerSecond);
+
+    } // ticks
+
+    public static double seconds (long ticks) {
+
+	return (double)ticks / ticksPerSecond;
+
+    } // seconds
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Return the current simulated time, in ticks.
+    public long now () {
+
+	return now;
+
+    } // now
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Schedule an event to fire the given number of ticks from now.
+    public void schedule (long delay, Event event) {
+
+	if (delay < 0) {
+
+	    throw new RuntimeException("Negative event delay " + delay);
+
+	}
+	scheduleAt(now + delay, event);
+
+    } // schedule
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Schedule an event to fire at the given time, which may not be
+    // in the past.
+    public void scheduleAt (long time, Event event) {
+
+	if (time < now) {
+
+	    throw new RuntimeException("Event scheduled in the past: " +
+				       time + " < " + now);
+
+	}
+
+	if (size == times.length) {
+
+	    grow();
+
+	}
+
+	// Add the event at the bottom of the heap and sift it up to
+	// its place.
+	long sequence = nextSequence++;
+	int index = size++;
+	while (index > 0) {
+
+	    int parent = (index - 1) >>> 1;
+	    if (!earlier(time, sequence, times[parent], sequences[parent])) {
+
+		break;
+
+	    }
+	    times[index] = times[parent];
+	    sequences[index] = sequences[parent];
+	    events[index] = events[parent];
+	    index = parent;
+
+	}
+	times[index] = time;
+	sequences[index] = sequence;
+	events[index] = event;
+
+    } // scheduleAt
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Fire the earliest pending event, advancing the clock to its
+    // time.  Return whether there was an event to fire.
+    public boolean step () {
+
+	if (size == 0) {
+
+	    return false;
+
+	}
+
+	Event event = events[0];
+	now = times[0];
+	removeFirst();
+	eventsFired++;
+	event.fire();
+
+	return true;
+
+    } // step
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Fire events until none are left.
+    public void run () {
+
+	while (step()) {
+
+	}
+
+    } // run
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Fire every event due up to and including the given time, then
+    // advance the clock to that time.
+    public void runUntil (long time) {
+
+	while ((size > 0) && (times[0] <= time)) {
+
+	    step();
+
+	}
+	if (now < time) {
+
+	    now = time;
+
+	}
+
+    } // runUntil
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Return the number of events waiting to fire, and the number
+    // fired so far.
+    public int pending () {
+
+	return size;
+
+    } // pending
+
+    public long eventsFired () {
+
+	return eventsFired;
+
+    } // eventsFired
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // PRIVATE METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Determine whether one (time, sequence) pair comes before
+    // another.
+    private static boolean earlier (long time,
+				    long sequence,
+				    long otherTime,
+				    long otherSequence) {
+
+	return ((time < otherTime) ||
+		((time == otherTime) && (sequence < otherSequence)));
+
+    } // earlier
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Remove the root of the heap by moving the last entry to the
+    // top and sifting it down to its place.
+    private void removeFirst () {
+
+	size--;
+	long time = times[size];
+	long sequence = sequences[size];
+	Event event = events[size];
+	events[size] = null;
+
+	int index = 0;
+	while (true) {
+
+	    int child = (index << 1) + 1;
+	    if (child >= size) {
+
+		break;
+
+	    }
+	    if ((child + 1 < size) &&
+		earlier(times[child + 1], sequences[child + 1],
+			times[child], sequences[child])) {
+
+		child++;
+
+	    }
+	    if (!earlier(times[child], sequences[child], time, sequence)) {
+
+		break;
+
+	    }
+	    times[index] = times[child];
+	    sequences[index] = sequences[child];
+	    events[index] = events[child];
+	    index = child;
+
+	}
+
+	if (size > 0) {
+
+	    times[index] = time;
+	    sequences[index] = sequence;
+	    events[index] = event;
+
+	}
+
+    } // removeFirst
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Double the space for pending events.
+    private void grow () {
+
+	int capacity = times.length * 2;
+	times = Arrays.copyOf(times, capacity);
+	sequences = Arrays.copyOf(sequences, capacity);
+	events = Arrays.copyOf(events, capacity);
+
+    } // grow
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // DATA MEMBERS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // The number of ticks in a simulated second.
+    static final long ticksPerSecond = 1000000000000L;
+
+    // The heap of pending events: the time of each, the order in
+    // which each was scheduled (to break ties), and the events
+    // themselves.  Only the first size entries are in use.
+    long[] times;
+    long[] sequences;
+    Event[] events;
+    int size;
+    static final int initialCapacity = 1024;
+
+    // The current simulated time, the sequence number to give the
+    // next event, and the number of events fired so far.
+    long now;
+    long nextSequence;
+    long eventsFired;
+    // ===============================================================
+
+
+
+// ===================================================================
+} // class EventScheduler
+// ===================================================================
@@ -0,0 +1,117 @@
+// ===================================================================
+// EventSink
+// ===================================================================
+
+
+
+// ===================================================================
+// The place to which the layers report what happens to the frames
+// and messages that pass through them, rather than printing it
+// themselves.  An event has a kind, and may carry a line of text to
+// show, built from a fixed part and, optionally, some bytes of data
+// (shown as characters) and a fixed suffix.  The data is passed as it
+// is, so that a sink that shows nothing never pays to turn it into
+// text.
+//
+// There is one current sink, shared by every layer.  Unless told
+// otherwise, it discards everything.  Sinks are named to the
+// Simulator by the part of their class name before EventSink, as
+// Null, Counting, or Async.
+abstract class EventSink {
+// ===================================================================
+
+
+
+    // ===============================================================
+    // PUBLIC METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Report an event, with or without text.  Unless a sink shows the
+    // text, it needs to know only the kind.
+    abstract public void event (String kind);
+
+    public void event (String kind, String text) {
+
+	event(kind);
+
+    } // event
+
+    public void event (String kind,
+		       String text,
+		       byte[] data,
+		       int offset,
+		       int length,
+		       String suffix) {
+
+	event(kind);
+
+    } // event
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Wait until every event reported so far has been dealt with.
+    public void flush () {
+
+    } // flush
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Deal with every event reported, and release what the sink holds.
+    public void close () {
+
+	flush();
+
+    } // close
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Return or replace the current sink.
+    public static EventSink current () {
+
+	return current;
+
+    } // current
+
+    public static void setCurrent (EventSink sink) {
+
+	current = sink;
+
+    } // setCurrent
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // DATA MEMBERS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // The kinds of event reported.
+    static final String messageSent = "message sent";
+    static final String messageReceived = "message received";
+    static final String frameAccepted = "frame accepted";
+    static final String frameRejected = "frame rejected";
+    static final String frameCorrected = "frame corrected";
+    static final String missingStartTag = "missing start tag";
+    static final String bits = "bits";
+
+    // The sink to which the layers report.
+    static volatile EventSink current = new NullEventSink();
+    // ===============================================================
+
+
+
+// ===================================================================
+} // class EventSink
+// ===================================================================
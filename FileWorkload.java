@@ -0,0 +1,249 @@
+// ===================================================================
+// FileWorkload
+// ===================================================================
+
+
+
+// ===================================================================
+// IMPORTS
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.SplittableRandom;
+// ===================================================================
+
+
+
+// ===================================================================
+// A workload that sends the contents of a file, cut into messages
+// whose sizes are drawn from a SizeDistribution, and stops at the end
+// of the file (or sooner, if told to).  It is named with the path of
+// the file first, as File@/tmp/data.bin,size=uniform/1/1500.  Beyond
+// the options common to all workloads, it understands:
+//
+//   size=<distribution>  the distribution of sizes (fixed/4k unless
+//                        told otherwise)
+//   seed=<number>        the seed for the sizes
+//   loop                 start over at the end of the file, to send
+//                        more than it holds
+//
+// As with an ErrorTraceReader, the file is read through a read-only
+// memory mapping of a window of it, moved along as it is consumed, so
+// that files of many gigabytes can be sent without reading them onto
+// the heap.
+class FileWorkload extends Workload {
+// ===================================================================
+
+
+
+    // ===============================================================
+    // PUBLIC METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // The constructor.  Open the file and map its first window.
+    public FileWorkload (String argument) {
+
+	int comma = argument.indexOf(',');
+	path = (comma == -1 ? argument : argument.substring(0, comma));
+	sizes = new SizeDistribution("fixed/4k");
+	random = new SplittableRandom();
+	if (comma != -1) {
+
+	    parseOptions(argument.substring(comma + 1));
+
+	}
+
+	try {
+
+	    RandomAccessFile file = new RandomAccessFile(path, "r");
+	    channel = file.getChannel();
+	    fileSize = channel.size();
+
+	} catch (IOException e) {
+
+	    throw new RuntimeException("Cannot open workload file " + path +
+				       ": " + e.getMessage());
+
+	}
+
+	if (fileSize == 0) {
+
+	    throw new RuntimeException("Workload file " + path +
+				       " is empty");
+
+	}
+	mapWindow(0);
+
+    } // FileWorkload
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Return the most bytes that any one message may hold: the
+    // largest size drawn.
+    public int largestMessage () {
+
+	return sizes.most;
+
+    } // largestMessage
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // PRIVATE METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Draw a size, cut it to what remains of the file and of the
+    // volume, and copy that much from the file, across as many
+    // windows as it spans.
+    protected byte[] generate (long remaining) {
+
+	long position = windowStart + window.position();
+	if (position == fileSize) {
+
+	    if (!loop) {
+
+		close();
+		return null;
+
+	    }
+	    mapWindow(0);
+	    position = 0;
+
+	}
+
+	int size = (int)Math.min(sizes.draw(random),
+				 Math.min(remaining, fileSize - position));
+	byte[] message = new byte[size];
+	int copied = 0;
+	while (copied < size) {
+
+	    if (!window.hasRemaining()) {
+
+		mapWindow(windowStart + window.limit());
+
+	    }
+	    int length = Math.min(size - copied, window.remaining());
+	    window.get(message, copied, length);
+	    copied += length;
+
+	}
+	return message;
+
+    } // generate
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Handle the size, seed, and loop options.
+    protected boolean option (String name, String value) {
+
+	if (name.equals("loop") && (value == null)) {
+
+	    loop = true;
+	    return true;
+
+	} else if (value == null) {
+
+	    return false;
+
+	} else if (name.equals("size")) {
+
+	    sizes = new SizeDistribution(value);
+	    return true;
+
+	} else if (name.equals("seed")) {
+
+	    random = new SplittableRandom(Long.parseLong(value));
+	    return true;
+
+	}
+	return false;
+
+    } // option
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Map the window of the file that begins at the given offset.
+    private void mapWindow (long offset) {
+
+	try {
+
+	    window = channel.map(FileChannel.MapMode.READ_ONLY,
+				 offset,
+				 Math.min(windowSize, fileSize - offset));
+	    windowStart = offset;
+
+	} catch (IOException e) {
+
+	    throw new RuntimeException("Cannot map workload file " + path +
+				       ": " + e.getMessage());
+
+	}
+
+    } // mapWindow
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Close the file.
+    private void close () {
+
+	try {
+
+	    channel.close();
+
+	} catch (IOException e) {
+
+	    throw new RuntimeException("Cannot close workload file " + path +
+				       ": " + e.getMessage());
+
+	}
+
+    } // close
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // DATA MEMBERS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // The file, and the window of it that is mapped (along with the
+    // offset of that window in the file).
+    final String path;
+    FileChannel channel;
+    long fileSize;
+    MappedByteBuffer window;
+    long windowStart;
+    static final long windowSize = 64L << 20;
+
+    // The distribution of sizes, the source of sizes, and whether to
+    // start over at the end of the file.
+    SizeDistribution sizes;
+    SplittableRandom random;
+    boolean loop;
+    // ===============================================================
+
+
+
+// ===================================================================
+} // class FileWorkload
+// ===================================================================
@@ -0,0 +1,437 @@
+// ===================================================================
+// Fleet
+// ===================================================================
+
+
+
+// ===================================================================
+// IMPORTS
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+// ===================================================================
+
+
+
+// ===================================================================
+// Run a fleet of independent links at once, each joining a pair of
+// hosts over a medium of its own, and measure the aggregate
+// throughput as the number of pairs grows.
+//
+// Every host runs on a thread of its own: the sender of each pair
+// sends random messages down its stack, and the receiver takes what
+// arrives from a HandOffMedium and carries it up its stack, blocking
+// whenever there is nothing to take.  Where the Java runtime offers
+// virtual threads, the hosts run on them, so that thousands of pairs
+// are multiplexed onto a few carrier threads; otherwise each host has
+// a platform thread with a small stack.
+//
+// The medium named must deliver as it sends and keep no clock.  While
+// the fleet runs, what the layers print is discarded.
+class Fleet {
+// ===================================================================
+
+
+
+    // ===============================================================
+    // PUBLIC METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // The entry point.  The pair counts are separated by commas, and
+    // a fleet of each size is run in turn.
+    public static void main (String[] args) {
+
+	if ((args.length < 3) || (args.length > 6)) {
+
+	    System.err.println("Usage: java Fleet " +
+			       "<medium type> " +
+			       "<data link layer type> " +
+			       "<pair counts> " +
+			       "[<messages per pair> [<message size> " +
+			       "[<seed>]]]");
+	    System.exit(1);
+
+	}
+
+	String mediumType = args[0];
+	String dataLinkLayerType = args[1];
+	String[] pairCounts = args[2].split(",");
+	int messages = (args.length > 3 ? Integer.parseInt(args[3]) : 1000);
+	int size = (args.length > 4 ? Integer.parseInt(args[4]) : 64);
+	long seed = (args.length > 5 ?
+		     Long.parseLong(args[5]) :
+		     System.nanoTime());
+
+	PrintStream results = System.out;
+	PrintStream errors = System.err;
+	results.println("Fleet: " + messages + " messages of " + size +
+			" bytes per pair, " +
+			(virtualThreadBuilder != null ? "virtual" : "platform") +
+			" threads, seed " + seed);
+	results.println(String.format("%8s %14s %14s %9s %9s %14s %14s",
+				       "pairs", "bytes sent",
+				       "bytes arrived", "failures",
+				       "seconds", "aggregate b/s",
+				       "per pair b/s"));
+
+	SplittableRandom random = new SplittableRandom(seed);
+	try {
+
+	    System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+	    System.setErr(System.out);
+	    for (int i = 0; i < pairCounts.length; i++) {
+
+		int pairs = Integer.parseInt(pairCounts[i]);
+		results.println(run(mediumType,
+				    dataLinkLayerType,
+				    pairs,
+				    messages,
+				    size,
+				    random.split()));
+
+	    }
+
+	} finally {
+
+	    System.setOut(results);
+	    System.setErr(errors);
+
+	}
+
+    } // main
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // PRIVATE METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Build the given number of pairs, start every host at once, wait
+    // for all of them to finish, and return a line of results.
+    private static String run (String mediumType,
+			       String dataLinkLayerType,
+			       int pairs,
+			       int messages,
+			       int size,
+			       SplittableRandom random) {
+
+	final CountDownLatch startGate = new CountDownLatch(1);
+	Pair[] fleet = new Pair[pairs];
+	Thread[] hosts = new Thread[pairs * 2];
+	for (int i = 0; i < pairs; i++) {
+
+	    final Pair pair = new Pair(mediumType,
+				       dataLinkLayerType,
+				       messages,
+				       size,
+				       random.split());
+	    fleet[i] = pair;
+	    hosts[2 * i] = startHost("Sender " + i, new Runnable() {
+
+		    public void run () {
+
+			awaitStart(startGate);
+			pair.sendAll();
+
+		    }
+
+		});
+	    hosts[(2 * i) + 1] = startHost("Receiver " + i, new Runnable() {
+
+		    public void run () {
+
+			awaitStart(startGate);
+			pair.receiveAll();
+
+		    }
+
+		});
+
+	}
+
+	long start = System.nanoTime();
+	startGate.countDown();
+	for (int i = 0; i < hosts.length; i++) {
+
+	    try {
+
+		hosts[i].join();
+
+	    } catch (InterruptedException e) {
+
+		throw new RuntimeException("Interrupted while waiting for " +
+					   hosts[i].getName());
+
+	    }
+
+	}
+	double seconds = (System.nanoTime() - start) / 1.0e9;
+
+	long bytesSent = 0;
+	long bytesArrived = 0;
+	long failures = 0;
+	for (int i = 0; i < pairs; i++) {
+
+	    fleet[i].medium.finish();
+	    bytesSent += fleet[i].bytesSent;
+	    bytesArrived += fleet[i].sink.bytesArrived;
+	    failures += fleet[i].failures;
+
+	}
+
+	double aggregate = bytesArrived * 8 / seconds;
+	return String.format("%8d %14d %14d %9d %9.3f %14.4e %14.4e",
+			     pairs,
+			     bytesSent,
+			     bytesArrived,
+			     failures,
+			     seconds,
+			     aggregate,
+			     aggregate / pairs);
+
+    } // run
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Start a thread for a host: a virtual thread if the runtime has
+    // them, or else a platform thread.
+    protected static Thread startHost (String name, Runnable host) {
+
+	if (virtualThreadBuilder != null) {
+
+	    try {
+
+		Object builder = virtualThreadBuilder.invoke(null);
+		builder = builderName.invoke(builder, name);
+		return (Thread)builderStart.invoke(builder, host);
+
+	    } catch (ReflectiveOperationException e) {
+
+		throw new RuntimeException("Cannot start a virtual thread: " +
+					   e);
+
+	    }
+
+	}
+
+	Thread thread = new Thread(null, host, name, platformStackSize);
+	thread.start();
+	return thread;
+
+    } // startHost
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Wait for every host to be ready to go.
+    protected static void awaitStart (CountDownLatch startGate) {
+
+	try {
+
+	    startGate.await();
+
+	} catch (InterruptedException e) {
+
+	    throw new RuntimeException("Interrupted before starting");
+
+	}
+
+    } // awaitStart
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Find the methods that build virtual threads, if the runtime has
+    // them and allows their use.  Return the method that makes a
+    // builder, or null.
+    private static Method findVirtualThreads () {
+
+	try {
+
+	    Method ofVirtual = Thread.class.getMethod("ofVirtual");
+	    Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+	    builderName = builderClass.getMethod("name", String.class);
+	    builderStart = builderClass.getMethod("start", Runnable.class);
+
+	    // Where virtual threads are still a preview, asking for a
+	    // builder fails unless previews are enabled.
+	    ofVirtual.invoke(null);
+	    return ofVirtual;
+
+	} catch (ReflectiveOperationException e) {
+
+	    return null;
+
+	} catch (UnsupportedOperationException e) {
+
+	    return null;
+
+	}
+
+    } // findVirtualThreads
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Two hosts joined by a medium of their own.  Host 0 sends and
+    // host 1 receives.
+    private static class Pair {
+
+	Pair (String mediumType,
+	      String dataLinkLayerType,
+	      int messages,
+	      int size,
+	      SplittableRandom random) {
+
+	    Medium inner = Simulator.createMedium(mediumType);
+	    if ((inner.localHost() != -1) ||
+		inner.fullDuplex() ||
+		(inner.scheduler() != null)) {
+
+		throw new RuntimeException("Fleet needs a medium that " +
+					   "delivers as it sends: " +
+					   mediumType);
+
+	    }
+	    inner.setRandom(random.split());
+	    medium = new HandOffMedium(inner);
+
+	    PhysicalLayer[] physicalLayers =
+		Simulator.createPhysicalLayers(medium, 2);
+	    dataLinkLayers =
+		Simulator.createDataLinkLayers(dataLinkLayerType,
+					       physicalLayers);
+	    sender = physicalLayers[0];
+	    receiver = physicalLayers[1];
+	    new NetworkLayer(dataLinkLayers[0]);
+	    sink = new Sink(dataLinkLayers[1]);
+
+	    this.messages = messages;
+	    this.size = size;
+	    this.random = random;
+
+	}
+
+	// Run host 0: send every message, then end the stream.
+	void sendAll () {
+
+	    byte[] message = new byte[size];
+	    for (int i = 0; i < messages; i++) {
+
+		random.nextBytes(message);
+		dataLinkLayers[0].send(message);
+		bytesSent += message.length;
+
+	    }
+	    dataLinkLayers[0].flush();
+	    medium.endOfStream(sender);
+
+	}
+
+	// Run host 1: deliver what arrives until the stream ends, and
+	// then whatever the data link layer held back.  If the data
+	// link layer chokes on a damaged frame, drop what it had
+	// buffered and carry on.
+	void receiveAll () {
+
+	    while (true) {
+
+		try {
+
+		    if (!medium.deliverNext(receiver)) {
+
+			dataLinkLayers[1].flush();
+			return;
+
+		    }
+
+		} catch (RuntimeException e) {
+
+		    dataLinkLayers[1].bufferIndex = 0;
+		    failures++;
+
+		}
+
+	    }
+
+	}
+
+	final HandOffMedium medium;
+	final DataLinkLayer[] dataLinkLayers;
+	final PhysicalLayer sender;
+	final PhysicalLayer receiver;
+	final Sink sink;
+	final int messages;
+	final int size;
+	final SplittableRandom random;
+
+	// Owned by the sending host's thread.
+	long bytesSent;
+
+	// Owned by the receiving host's thread.
+	long failures;
+
+    } // class Pair
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // A network layer that counts what arrives and discards it.
+    private static class Sink extends NetworkLayer {
+
+	Sink (DataLinkLayer dataLinkLayer) {
+
+	    super(dataLinkLayer);
+
+	}
+
+	void receive (byte[] data) {
+
+	    bytesArrived += data.length;
+
+	}
+
+	long bytesArrived;
+
+    } // class Sink
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // DATA MEMBERS
+    // ===============================================================
+
+
+    // ===============================================================
+    // The methods used to start virtual threads; null where the
+    // runtime has none.
+    static Method builderName;
+    static Method builderStart;
+    static final Method virtualThreadBuilder = findVirtualThreads();
+
+    // The stack size requested for each platform thread, in bytes.
+    static final long platformStackSize = 256 * 1024;
+    // ===============================================================
+
+
+
+// ===================================================================
+} // class Fleet
+// ===================================================================
@@ -0,0 +1,515 @@
+// ===================================================================
+// Fragmenter
+// ===================================================================
+
+
+
+// ===================================================================
+// IMPORTS
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+// ===================================================================
+
+
+
+// ===================================================================
+// Split the messages that a network layer sends into fragments of a
+// fixed size, and reassemble the fragments that it receives into
+// whole messages.  Each fragment carries a header:
+//
+//   magic    2 bytes  (``FR'')
+//   stream   4 bytes  a random number naming the sending layer
+//   message  4 bytes  the message's number in its stream
+//   offset   4 bytes  where the fragment's payload lies in the message
+//   total    4 bytes  the length of the whole message
+//   length   2 bytes  the number of bytes of payload that follow
+//
+// The data link layer delivers the fragments in pieces of its own
+// size.  The receiver reads each header into a small buffer of its
+// own, and copies the payload that follows straight into its place
+// in the message being reassembled, so nothing is allocated for each
+// fragment or piece.  A header that is not plausible is slid past a
+// byte at a time until one is found.
+//
+// Messages are reassembled in a table of a fixed number of slots,
+// whose buffers are kept and reused for later messages, holding no
+// more than a fixed number of bytes in all.  A message that has not
+// arrived in full within a timeout is abandoned; the time is that of
+// the medium's clock if it keeps one, and otherwise the time of day.
+// If a new message finds no room, the table first abandons what has
+// timed out, and then the message begun longest ago.
+class Fragmenter {
+// ===================================================================
+
+
+
+    // ===============================================================
+    // PUBLIC METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // The constructor.  Send fragments carrying at most the given
+    // number of bytes of payload, and pass the messages reassembled to
+    // the given network layer.
+    public Fragmenter (NetworkLayer client, int fragmentSize) {
+
+	if ((fragmentSize < 1) || (fragmentSize > maxFragmentSize)) {
+
+	    throw new RuntimeException("Fragment size must be from 1 to " +
+				       maxFragmentSize);
+
+	}
+	this.client = client;
+	this.fragmentSize = fragmentSize;
+	streamId = new SplittableRandom().nextInt();
+	fragment = new byte[headerSize + fragmentSize];
+	slots = new Slot[slotCount];
+	for (int i = 0; i < slotCount; i++) {
+
+	    slots[i] = new Slot();
+
+	}
+
+    } // Fragmenter
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Send a message, fragment by fragment, through the data link
+    // layer.  Every fragment but the last is built in the same buffer,
+    // since the data link layer copies what it is given into frames
+    // of its own.
+    public void send (byte[] message) {
+
+	int id = nextMessage++;
+	int offset = 0;
+	do {
+
+	    int length = Math.min(fragmentSize, message.length - offset);
+	    BigEndian.putShort(fragment, 0, magic);
+	    BigEndian.putInt(fragment, 2, streamId);
+	    BigEndian.putInt(fragment, 6, id);
+	    BigEndian.putInt(fragment, 10, offset);
+	    BigEndian.putInt(fragment, 14, message.length);
+	    BigEndian.putShort(fragment, 18, length);
+	    System.arraycopy(message, offset, fragment, headerSize, length);
+
+	    client.dataLinkLayer.send(length == fragmentSize ?
+				      fragment :
+				      Arrays.copyOf(fragment,
+						    headerSize + length));
+	    offset += length;
+
+	} while (offset < message.length);
+
+    } // send
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Take a piece delivered by the data link layer: fill the header
+    // being read, or copy payload into the message it belongs to.
+    public void receive (byte[] data) {
+
+	int i = 0;
+	while (i < data.length) {
+
+	    if (payloadLeft == 0) {
+
+		header[headerFilled++] = data[i++];
+		if (headerFilled == headerSize) {
+
+		    beginFragment();
+
+		}
+
+	    } else {
+
+		int length = Math.min(payloadLeft, data.length - i);
+		if (target != null) {
+
+		    System.arraycopy(data, i, target.buffer, targetOffset,
+				     length);
+		    targetOffset += length;
+
+		} else {
+
+		    bytesSkipped += length;
+
+		}
+		i += length;
+		payloadLeft -= length;
+		if (payloadLeft == 0) {
+
+		    endFragment();
+
+		}
+
+	    }
+
+	}
+
+    } // receive
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Abandon every message that has timed out.
+    public void expire () {
+
+	long now = now();
+	for (int i = 0; i < slots.length; i++) {
+
+	    if (slots[i].inUse && (now - slots[i].startTime > timeout)) {
+
+		release(slots[i]);
+		timedOut++;
+
+	    }
+
+	}
+
+    } // expire
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Return a line summarizing the reassembly.
+    public String report () {
+
+	return (messagesReassembled + " reassembled from " +
+		fragmentsReceived + " fragments, " +
+		duplicates + " duplicate fragments, " +
+		timedOut + " timed out, " +
+		evicted + " evicted, " +
+		tooLarge + " too large, " +
+		bytesSkipped + " bytes skipped");
+
+    } // report
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // PRIVATE METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // With a whole header read, check it, and find the slot for its
+    // message.  If the header is not plausible, drop its first byte
+    // and go on reading.
+    private void beginFragment () {
+
+	int stream = BigEndian.getInt(header, 2);
+	int id = BigEndian.getInt(header, 6);
+	int offset = BigEndian.getInt(header, 10);
+	int total = BigEndian.getInt(header, 14);
+	int length = BigEndian.getShort(header, 18);
+	if ((BigEndian.getShort(header, 0) != magic) ||
+	    (total < 0) ||
+	    (offset < 0) ||
+	    (offset % fragmentSize != 0) ||
+	    (length > fragmentSize) ||
+	    ((long)offset + length > total) ||
+	    ((length == 0) && (total != 0))) {
+
+	    System.arraycopy(header, 1, header, 0, headerSize - 1);
+	    headerFilled = headerSize - 1;
+	    bytesSkipped++;
+	    return;
+
+	}
+
+	headerFilled = 0;
+	payloadLeft = length;
+	fragmentsReceived++;
+	target = findSlot(stream, id, total);
+	targetOffset = offset;
+	targetIndex = offset / fragmentSize;
+	if ((target != null) && target.isSet(targetIndex)) {
+
+	    duplicates++;
+	    target = null;
+
+	}
+	if (payloadLeft == 0) {
+
+	    endFragment();
+
+	}
+
+    } // beginFragment
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // With a fragment's payload copied, mark it received, and deliver
+    // its message if that was the last one missing.
+    private void endFragment () {
+
+	if (target == null) {
+
+	    return;
+
+	}
+
+	Slot slot = target;
+	target = null;
+	slot.set(targetIndex);
+	slot.fragmentsLeft--;
+	if (slot.fragmentsLeft == 0) {
+
+	    messagesReassembled++;
+	    client.receiveMessage(slot.buffer, 0, slot.total);
+	    release(slot);
+
+	}
+
+    } // endFragment
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Return the slot for a message, taking a free one if it has none
+    // yet, or null if there is no room for it.
+    private Slot findSlot (int stream, int id, int total) {
+
+	Slot free = null;
+	for (int i = 0; i < slots.length; i++) {
+
+	    Slot slot = slots[i];
+	    if (slot.inUse) {
+
+		if ((slot.stream == stream) && (slot.id == id)) {
+
+		    return (slot.total == total ? slot : null);
+
+		}
+
+	    } else if (free == null) {
+
+		free = slot;
+
+	    }
+
+	}
+
+	if (total > maxBytes) {
+
+	    tooLarge++;
+	    return null;
+
+	}
+
+	// Make room, first from what has timed out, and then from the
+	// message begun longest ago.
+	if ((free == null) || (bytesInUse + total > maxBytes)) {
+
+	    expire();
+
+	}
+	while ((free == null) || (bytesInUse + total > maxBytes)) {
+
+	    Slot oldest = null;
+	    for (int i = 0; i < slots.length; i++) {
+
+		if (slots[i].inUse &&
+		    ((oldest == null) ||
+		     (slots[i].startTime < oldest.startTime))) {
+
+		    oldest = slots[i];
+
+		}
+
+	    }
+	    if (oldest == null) {
+
+		break;
+
+	    }
+	    release(oldest);
+	    evicted++;
+	    if (free == null) {
+
+		free = oldest;
+
+	    }
+
+	}
+
+	free.claim(stream,
+		   id,
+		   total,
+		   Math.max(1, (total + fragmentSize - 1) / fragmentSize),
+		   now());
+	bytesInUse += total;
+	return free;
+
+    } // findSlot
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Free a slot for another message.  Keep its buffer for reuse,
+    // unless it is larger than a slot's share of the memory allowed.
+    private void release (Slot slot) {
+
+	slot.inUse = false;
+	bytesInUse -= slot.total;
+	if (slot.buffer.length > maxBytes / slotCount) {
+
+	    slot.buffer = empty;
+
+	}
+
+    } // release
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Return the time, in nanoseconds: simulated if the medium keeps
+    // time, and otherwise real.
+    private long now () {
+
+	EventScheduler scheduler = client.dataLinkLayer.physicalLayer.scheduler();
+	return (scheduler == null ?
+		System.nanoTime() :
+		(long)(EventScheduler.seconds(scheduler.now()) * 1.0e9));
+
+    } // now
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // A slot in the reassembly table: the message it holds, the
+    // buffer it is gathered in, and which of its fragments have
+    // arrived (one bit each).  The buffer and the bits are kept when
+    // the slot is freed, and grown only when a message needs more.
+    private static class Slot {
+
+	void claim (int stream, int id, int total, int fragments, long now) {
+
+	    inUse = true;
+	    this.stream = stream;
+	    this.id = id;
+	    this.total = total;
+	    fragmentsLeft = fragments;
+	    startTime = now;
+	    if (buffer.length < total) {
+
+		buffer = new byte[total];
+
+	    }
+	    int words = (fragments + 63) / 64;
+	    if (received.length < words) {
+
+		received = new long[words];
+
+	    } else {
+
+		Arrays.fill(received, 0, words, 0L);
+
+	    }
+
+	}
+
+	boolean isSet (int index) {
+
+	    return (received[index >>> 6] & (1L << index)) != 0;
+
+	}
+
+	void set (int index) {
+
+	    received[index >>> 6] |= 1L << index;
+
+	}
+
+	boolean inUse;
+	int stream;
+	int id;
+	int total;
+	int fragmentsLeft;
+	long startTime;
+	byte[] buffer = empty;
+	long[] received = new long[1];
+
+    } // class Slot
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // DATA MEMBERS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // The layout of a header, and the most payload a fragment may
+    // carry.
+    static final int magic = 0x4652;
+    static final int headerSize = 20;
+    static final int maxFragmentSize = 0xffff;
+
+    // The number of messages that may be reassembled at once, the most
+    // bytes they may hold in all, and how long, in nanoseconds, a
+    // message may take to arrive in full.
+    static final int slotCount = 64;
+    static final long maxBytes = 16L << 20;
+    static final long timeout = 1000000000L;
+    static final byte[] empty = new byte[0];
+
+    // The network layer served, the fragment size, the name of this
+    // layer's stream, the number of its next message, and the buffer
+    // in which its fragments are built.
+    final NetworkLayer client;
+    final int fragmentSize;
+    final int streamId;
+    int nextMessage;
+    final byte[] fragment;
+
+    // The header being read and the number of its bytes read so far;
+    // the payload still to come for the current fragment; and where
+    // that payload goes (the slot, or null to skip it; the offset in
+    // its buffer; and the fragment's index in its message).
+    final byte[] header = new byte[headerSize];
+    int headerFilled;
+    int payloadLeft;
+    Slot target;
+    int targetOffset;
+    int targetIndex;
+
+    // The reassembly table, and the bytes of the messages it holds.
+    final Slot[] slots;
+    long bytesInUse;
+
+    // What has become of the fragments and messages received.
+    long fragmentsReceived;
+    long messagesReassembled;
+    long duplicates;
+    long timedOut;
+    long evicted;
+    long tooLarge;
+    long bytesSkipped;
+    // ===============================================================
+
+
+
+// ===================================================================
+} // class Fragmenter
+// ===================================================================
@@ -0,0 +1,450 @@
+// ===================================================================
+// FullDuplexMedium
+// ===================================================================
+
+
+
+// ===================================================================
+// IMPORTS
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+// ===================================================================
+
+
+
+// ===================================================================
+// A point-to-point medium with a separate channel for each direction,
+// so that both hosts may send at once, each from its own thread.
+// Each channel has its own noise (independent bit flips, as on a
+// LowNoiseMedium), its own random number generator, and its own
+// delivery thread, which hands what arrives to the receiving host.
+// The two channels share nothing, so neither sender ever waits on the
+// other.
+//
+// Blocks pass from a sender to its delivery thread through a bounded
+// queue.  If the receiving host falls behind, the queue fills and the
+// sender waits for room, just as a transmitter must wait for a busy
+// link.
+class FullDuplexMedium extends Medium {
+// ===================================================================
+
+
+
+    // ===============================================================
+    // PUBLIC METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // The constructors.  By default, one bit in a hundred is flipped
+    // in each direction.
+    public FullDuplexMedium () {
+
+	this(0.01);
+
+    } // FullDuplexMedium
+
+    public FullDuplexMedium (String errorProbability) {
+
+	this(Double.parseDouble(errorProbability));
+
+    } // FullDuplexMedium
+
+    public FullDuplexMedium (double errorProbability) {
+
+	this.errorProbability = errorProbability;
+
+    } // FullDuplexMedium
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Register one of the two allowed clients as connected to an end
+    // of the medium.  Once both ends are taken, open a channel each
+    // way between them.
+    public void register (PhysicalLayer client) {
+
+	if (client1 == null) {
+
+	    client1 = client;
+
+	} else if (client2 == null) {
+
+	    client2 = client;
+	    forward = new Channel("1->2", client2);
+	    backward = new Channel("2->1", client1);
+
+	} else {
+
+	    throw new RuntimeException();
+
+	}
+
+    } // register
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Allow a client to send a bit to the other client.
+    public void send (PhysicalLayer sender, boolean bit) {
+
+	channelFrom(sender).send(bit);
+
+    } // send
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Allow a client to send a block of bytes to the other client.
+    public void send (PhysicalLayer sender, byte[] data) {
+
+	channelFrom(sender).send(data);
+
+    } // send
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Replace the source of randomness, and give each channel that
+    // is already open a stream of its own split from it.
+    public void setRandom (SplittableRandom random) {
+
+	super.setRandom(random);
+	if (backward != null) {
+
+	    forward.reseed(random.split());
+	    backward.reseed(random.split());
+
+	}
+
+    } // setRandom
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Either host may send while the other does.
+    public boolean fullDuplex () {
+
+	return true;
+
+    } // fullDuplex
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Report what the two channels have carried and flipped.  The
+    // counts are exact once the medium has finished.
+    public long bitsCarried () {
+
+	return (backward == null ?
+		0 :
+		(forward.bytesDelivered + backward.bytesDelivered) * 8);
+
+    } // bitsCarried
+
+    public long bitsFlipped () {
+
+	return (backward == null ? 0 : forward.flips + backward.flips);
+
+    } // bitsFlipped
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Wait until each channel has delivered everything sent on it,
+    // and report on what each carried.  Bits sent on their own that
+    // never filled a byte are lost.
+    public void finish () {
+
+	if (backward == null) {
+
+	    return;
+
+	}
+
+	forward.close();
+	backward.close();
+
+	long first = Math.min(forward.firstSend, backward.firstSend);
+	long last = Math.max(forward.lastDelivery, backward.lastDelivery);
+	double seconds = (last > first ? (last - first) / 1.0e9 : 0.0);
+	long bits = (forward.bytesDelivered + backward.bytesDelivered) * 8;
+	System.out.println("FullDuplex: " + forward.report() + "; " +
+			   backward.report() + "; " + bits + " bits in " +
+			   seconds + " seconds (" +
+			   (seconds == 0.0 ? 0.0 : bits / seconds) +
+			   " b/s both ways)");
+
+    } // finish
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // PRIVATE METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Determine the channel on which a client sends.  Send only if the
+    // sender is a known client and the other end is connected.
+    private Channel channelFrom (PhysicalLayer sender) {
+
+	if ((client1 == sender) && (forward != null)) {
+
+	    return forward;
+
+	} else if ((client2 == sender) && (backward != null)) {
+
+	    return backward;
+
+	} else {
+
+	    throw new RuntimeException();
+
+	}
+
+    } // channelFrom
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // One direction of the medium.  The sending host's thread applies
+    // the noise and queues each block; the channel's own thread takes
+    // the blocks from the queue and delivers them.  Everything here
+    // but the queue and the delivery statistics belongs to the sending
+    // thread alone.
+    private class Channel implements Runnable {
+
+	Channel (String name, PhysicalLayer receiver) {
+
+	    this.name = name;
+	    this.receiver = receiver;
+	    reseed(random.split());
+	    queue = new ArrayBlockingQueue<byte[]>(queueLength);
+	    thread = new Thread(this, "FullDuplex " + name);
+	    thread.setDaemon(true);
+	    thread.start();
+
+	}
+
+	// Gather a lone bit into a byte, and send the byte once full.
+	void send (boolean bit) {
+
+	    if (bit) {
+
+		pendingByte |= (1 << pendingBits);
+
+	    }
+	    pendingBits++;
+
+	    if (pendingBits == 8) {
+
+		byte[] packed = { (byte)pendingByte };
+		pendingByte = 0;
+		pendingBits = 0;
+		send(packed);
+
+	    }
+
+	}
+
+	// Flip bits in the block by jumping from one error to the next,
+	// copying the block only if some bit flips, then queue it.
+	void send (byte[] data) {
+
+	    if (firstSend == Long.MAX_VALUE) {
+
+		firstSend = System.nanoTime();
+
+	    }
+
+	    byte[] delivered = data;
+	    long blockBits = (long)data.length * 8;
+	    long position = bitsUntilError;
+	    while (position < blockBits) {
+
+		if (delivered == data) {
+
+		    delivered = data.clone();
+
+		}
+		delivered[(int)(position >>> 3)] ^= (byte)(1 << (position & 7));
+		flips++;
+		position += 1 + nextGap();
+
+	    }
+	    bitsUntilError = position - blockBits;
+
+	    put(delivered);
+
+	}
+
+	// Deliver queued blocks until the end of the stream.  Should
+	// the receiving host fail, keep draining the queue, so that the
+	// sender is not left waiting, and report the failure at the end.
+	public void run () {
+
+	    try {
+
+		while (true) {
+
+		    byte[] data = queue.take();
+		    if (data == endOfStream) {
+
+			return;
+
+		    }
+		    if (failure == null) {
+
+			try {
+
+			    receiver.receive(data);
+
+			} catch (RuntimeException e) {
+
+			    failure = e;
+
+			}
+
+		    }
+		    bytesDelivered += data.length;
+		    lastDelivery = System.nanoTime();
+
+		}
+
+	    } catch (InterruptedException e) {
+
+		failure = new RuntimeException("Interrupted while delivering");
+
+	    }
+
+	}
+
+	// Mark the end of the stream and wait for the delivery thread
+	// to reach it.
+	void close () {
+
+	    put(endOfStream);
+	    try {
+
+		thread.join();
+
+	    } catch (InterruptedException e) {
+
+		throw new RuntimeException("Interrupted while finishing " +
+					   name);
+
+	    }
+	    if (failure != null) {
+
+		throw new RuntimeException("Delivery failed on " + name +
+					   ": " + failure, failure);
+
+	    }
+
+	}
+
+	// Take a new source of randomness, and draw the gap to the
+	// first error afresh from it.
+	void reseed (SplittableRandom random) {
+
+	    channelRandom = random;
+	    bitsUntilError = nextGap();
+
+	}
+
+	// Describe what the channel carried.
+	String report () {
+
+	    return (name + " " + bytesDelivered + " bytes, " + flips +
+		    " flips");
+
+	}
+
+	private long nextGap () {
+
+	    return bitsUntilEvent(errorProbability,
+				  channelRandom.nextDouble());
+
+	}
+
+	private void put (byte[] data) {
+
+	    try {
+
+		queue.put(data);
+
+	    } catch (InterruptedException e) {
+
+		throw new RuntimeException("Interrupted while sending on " +
+					   name);
+
+	    }
+
+	}
+
+	// Owned by the sending thread.
+	final String name;
+	SplittableRandom channelRandom;
+	long bitsUntilError;
+	int pendingByte;
+	int pendingBits;
+	long flips;
+	long firstSend = Long.MAX_VALUE;
+
+	// The hand-off between the two threads.
+	final BlockingQueue<byte[]> queue;
+	final Thread thread;
+
+	// Owned by the delivery thread, and read once it has ended.
+	final PhysicalLayer receiver;
+	long bytesDelivered;
+	long lastDelivery;
+	RuntimeException failure;
+
+    } // class Channel
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // DATA MEMBERS
+    // ===============================================================
+
+
+    // ===============================================================
+    // The two physical layer clients on either end of the wire, and
+    // the channel from each to the other.
+    PhysicalLayer client1;
+    PhysicalLayer client2;
+    Channel forward;
+    Channel backward;
+
+    // The probability that a bit will flip in either direction.  Each
+    // channel splits its own generator from the medium's.
+    final double errorProbability;
+
+    // The number of blocks that may wait for delivery in each
+    // direction, and the block that marks the end of a stream.
+    static final int queueLength = 1024;
+    static final byte[] endOfStream = new byte[0];
+    // ===============================================================
+
+
+
+// ===================================================================
+} // class FullDuplexMedium
+// ===================================================================
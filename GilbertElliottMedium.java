@@ -0,0 +1,516 @@
+// ===================================================================
+// GilbertElliottMedium
+// ===================================================================
+
+
+
+// ===================================================================
+// IMPORTS
+
+import java.util.SplittableRandom;
+// ===================================================================
+
+
+
+// ===================================================================
+// A point-to-point medium that follows the two-state Gilbert-Elliott
+// channel model.  The channel is either ``good'' or ``bad'', and
+// flips each bit with a probability that depends on its state.  After
+// each bit, a good channel turns bad with one probability, and a bad
+// channel recovers with another, so errors arrive in bursts whose
+// length and frequency are set by those parameters.
+//
+// Rather than stepping the state machine on every bit, the medium
+// draws the length of each stay in a state at once.  Within a block
+// of bytes, errors for a sparse state are placed by jumping from one
+// to the next, and errors for a dense state are drawn a whole byte at
+// a time from a precomputed table of error masks.  The errors are
+// gathered into a mask that is XORed onto the block as a last step.
+class GilbertElliottMedium extends Medium {
+// ===================================================================
+
+
+
+    // ===============================================================
+    // PUBLIC METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // The constructors.  By default, the channel resembles the
+    // bursty noise medium: bursts start with probability 0.005 per
+    // bit, last 15 bits on average, and flip a quarter of the bits
+    // they cover, while the good state is error free.
+    public GilbertElliottMedium () {
+
+	this(0.005, 1.0 / 15.0, 0.0, 0.25);
+
+    } // GilbertElliottMedium
+
+    public GilbertElliottMedium (double goodToBadProbability,
+				 double badToGoodProbability,
+				 double goodErrorProbability,
+				 double badErrorProbability) {
+
+	// Sanity check.
+	if ((goodToBadProbability <= 0.0) || (goodToBadProbability > 1.0) ||
+	    (badToGoodProbability <= 0.0) || (badToGoodProbability > 1.0)) {
+
+	    throw new RuntimeException("State transition probabilities " +
+				       "must be in (0, 1]");
+
+	}
+
+	this.goodToBadProbability = goodToBadProbability;
+	this.badToGoodProbability = badToGoodProbability;
+	this.goodErrorProbability = goodErrorProbability;
+	this.badErrorProbability = badErrorProbability;
+
+	goodMasks = (goodErrorProbability >= denseErrorProbability ?
+		     new ErrorMaskTable(goodErrorProbability) :
+		     null);
+	badMasks = (badErrorProbability >= denseErrorProbability ?
+		    new ErrorMaskTable(badErrorProbability) :
+		    null);
+
+	// Start in the good state, with a freshly drawn stay.
+	bad = false;
+	bitsLeftInState = 1 + bitsUntilEvent(goodToBadProbability);
+
+	errorMask = new byte[0];
+
+    } // GilbertElliottMedium
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Replace the source of randomness, and draw the first stay in
+    // the good state afresh from it.
+    public void setRandom (SplittableRandom random) {
+
+	super.setRandom(random);
+	bad = false;
+	bitsLeftInState = 1 + bitsUntilEvent(goodToBadProbability);
+
+    } // setRandom
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Register one of the two allowed clients as connected to an end
+    // of the medium.
+    public void register (PhysicalLayer client) {
+
+	// If there is an end of the wire available, then assign this
+	// client to it.
+	if (client1 == null) {
+
+	    client1 = client;
+
+	} else if (client2 == null) {
+
+	    client2 = client;
+
+	} else {
+
+	    throw new RuntimeException();
+
+	}
+
+    } // register
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Allow a client to send a bit to the other client.
+    public void send (PhysicalLayer sender, boolean bit) {
+
+	PhysicalLayer receiver = peerOf(sender);
+
+	// Move to the other state if the current stay is over, then
+	// flip the bit with the probability for the current state.
+	if (bitsLeftInState == 0) {
+
+	    changeState();
+
+	}
+	bitsLeftInState--;
+	bitsCarried++;
+	if (random.nextDouble() <
+	    (bad ? badErrorProbability : goodErrorProbability)) {
+
+	    bit = !bit;
+	    bitsFlipped++;
+
+	}
+
+	// Deliver the bit to the receiver by performing an upcall to
+	// it.
+	receiver.receive(bit);
+
+    } // send
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Allow a client to send a block of bytes to the other client.
+    // Walk the block one stay at a time, marking the errors for each
+    // stay in the error mask, then apply the mask to a copy of the
+    // block.  The block is copied only if some bit in it flips.
+    public void send (PhysicalLayer sender, byte[] data) {
+
+	PhysicalLayer receiver = peerOf(sender);
+
+	if (errorMask.length < data.length) {
+
+	    errorMask = new byte[data.length];
+
+	}
+	firstMarked = data.length;
+	lastMarked = -1;
+
+	long blockBits = (long)data.length * 8;
+	long position = 0;
+	while (position < blockBits) {
+
+	    if (bitsLeftInState == 0) {
+
+		changeState();
+
+	    }
+
+	    long end = Math.min(blockBits, position + bitsLeftInState);
+	    if (bad) {
+
+		markErrors(position, end, badErrorProbability, badMasks);
+
+	    } else {
+
+		markErrors(position, end, goodErrorProbability, goodMasks);
+
+	    }
+	    bitsLeftInState -= (end - position);
+	    position = end;
+
+	}
+
+	// Apply the mask over the range that it touched, clearing it
+	// for the next block as we go.
+	byte[] delivered = data;
+	if (lastMarked >= firstMarked) {
+
+	    delivered = data.clone();
+	    for (int i = firstMarked; i <= lastMarked; i++) {
+
+		delivered[i] ^= errorMask[i];
+		bitsFlipped += Integer.bitCount(errorMask[i] & 0xff);
+		errorMask[i] = 0;
+
+	    }
+
+	}
+	bitsCarried += blockBits;
+
+	receiver.receive(delivered);
+
+    } // send
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // PRIVATE METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Determine who the receiver is.  Send only if the sender is a
+    // known client.
+    private PhysicalLayer peerOf (PhysicalLayer sender) {
+
+	if (client1 == sender) {
+
+	    return client2;
+
+	} else if (client2 == sender) {
+
+	    return client1;
+
+	} else {
+
+	    throw new RuntimeException();
+
+	}
+
+    } // peerOf
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Switch to the other state and draw how many bits it will last.
+    // Each stay lasts at least one bit.
+    private void changeState () {
+
+	bad = !bad;
+	bitsLeftInState =
+	    1 + bitsUntilEvent(bad ? badToGoodProbability : goodToBadProbability);
+
+    } // changeState
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Mark in the error mask the bits that flip between the given
+    // bit positions (the end is exclusive) while the channel flips
+    // bits with the given probability.  If there is a table of masks
+    // for this probability, draw whole bytes from it; otherwise, jump
+    // from one error to the next.
+    private void markErrors (long begin,
+			     long end,
+			     double errorProbability,
+			     ErrorMaskTable masks) {
+
+	if (errorProbability <= 0.0) {
+
+	    return;
+
+	}
+
+	if (masks == null) {
+
+	    long position = begin + bitsUntilEvent(errorProbability);
+	    while (position < end) {
+
+		int index = (int)(position >>> 3);
+		errorMask[index] |= (byte)(1 << (position & 7));
+		mark(index);
+		position += 1 + bitsUntilEvent(errorProbability);
+
+	    }
+	    return;
+
+	}
+
+	// Draw a mask for every byte that the range covers, keeping
+	// only the bits of that byte which fall inside the range.
+	// Since the bits are independent, the kept bits are
+	// distributed just as if they had been drawn on their own.
+	int firstIndex = (int)(begin >>> 3);
+	int lastIndex = (int)((end - 1) >>> 3);
+	for (int index = firstIndex; index <= lastIndex; index++) {
+
+	    int inRange = 0xff;
+	    if (index == firstIndex) {
+
+		inRange &= (0xff << (begin & 7));
+
+	    }
+	    if (index == lastIndex) {
+
+		inRange &= (0xff >>> (7 - ((end - 1) & 7)));
+
+	    }
+
+	    int bits = masks.draw(random) & inRange;
+	    if (bits != 0) {
+
+		errorMask[index] |= (byte)bits;
+		mark(index);
+
+	    }
+
+	}
+
+    } // markErrors
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Widen the range of the error mask known to be in use.
+    private void mark (int index) {
+
+	if (index < firstMarked) {
+
+	    firstMarked = index;
+
+	}
+	if (index > lastMarked) {
+
+	    lastMarked = index;
+
+	}
+
+    } // mark
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // A table from which an 8-bit error mask can be drawn with a
+    // single random number, each bit of the mask being set
+    // independently with a given probability.  It uses Walker's alias
+    // method over the 256 possible masks.
+    private static class ErrorMaskTable {
+
+
+
+	// ===========================================================
+	// Build the table for the given per-bit error probability.
+	ErrorMaskTable (double errorProbability) {
+
+	    // The probability of each mask, scaled so that the
+	    // average is one.
+	    double[] scaled = new double[masks];
+	    for (int mask = 0; mask < masks; mask++) {
+
+		int ones = Integer.bitCount(mask);
+		scaled[mask] = masks *
+		    Math.pow(errorProbability, ones) *
+		    Math.pow(1.0 - errorProbability, 8 - ones);
+
+	    }
+
+	    // Pair each mask that is less likely than average with
+	    // one that is more likely, which lends it the rest of its
+	    // column.
+	    threshold = new double[masks];
+	    alias = new int[masks];
+	    int[] small = new int[masks];
+	    int[] large = new int[masks];
+	    int smallCount = 0;
+	    int largeCount = 0;
+	    for (int mask = 0; mask < masks; mask++) {
+
+		if (scaled[mask] < 1.0) {
+
+		    small[smallCount++] = mask;
+
+		} else {
+
+		    large[largeCount++] = mask;
+
+		}
+
+	    }
+	    while ((smallCount > 0) && (largeCount > 0)) {
+
+		int less = small[--smallCount];
+		int more = large[--largeCount];
+		threshold[less] = scaled[less];
+		alias[less] = more;
+		scaled[more] -= (1.0 - scaled[less]);
+		if (scaled[more] < 1.0) {
+
+		    small[smallCount++] = more;
+
+		} else {
+
+		    large[largeCount++] = more;
+
+		}
+
+	    }
+
+	    // Whatever is left over fills its column exactly, up to
+	    // rounding.
+	    while (largeCount > 0) {
+
+		threshold[large[--largeCount]] = 1.0;
+
+	    }
+	    while (smallCount > 0) {
+
+		threshold[small[--smallCount]] = 1.0;
+
+	    }
+
+	} // ErrorMaskTable
+	// ===========================================================
+
+
+
+	// ===========================================================
+	// Draw one mask from the given source of randomness.  The
+	// whole part of the scaled random number picks a column, and
+	// the fraction picks between the column's own mask and its
+	// alias.
+	int draw (SplittableRandom random) {
+
+	    double scaledRandom = random.nextDouble() * masks;
+	    int column = (int)scaledRandom;
+	    return ((scaledRandom - column) < threshold[column] ?
+		    column :
+		    alias[column]);
+
+	} // draw
+	// ===========================================================
+
+
+
+	// ===========================================================
+	// The number of distinct masks, the probability with which
+	// each column keeps its own mask, and the mask it yields
+	// otherwise.
+	static final int masks = 256;
+	final double[] threshold;
+	final int[] alias;
+	// ===========================================================
+
+
+
+    } // class ErrorMaskTable
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // DATA MEMBERS
+    // ===============================================================
+
+
+    // ===============================================================
+    // The two physical layer clients on either end of the wire.
+    PhysicalLayer client1;
+    PhysicalLayer client2;
+
+    // The probabilities of leaving each state after a bit, and of
+    // flipping a bit while in each state.
+    final double goodToBadProbability;
+    final double badToGoodProbability;
+    final double goodErrorProbability;
+    final double badErrorProbability;
+
+    // Error probabilities at or above this one are dense enough that
+    // drawing a mask per byte is cheaper than jumping between errors.
+    // For such states, a table of masks is kept; otherwise the table
+    // is null.
+    static final double denseErrorProbability = 0.125;
+    final ErrorMaskTable goodMasks;
+    final ErrorMaskTable badMasks;
+
+    // The current state, and the number of bits left in the current
+    // stay in that state.
+    boolean bad;
+    long bitsLeftInState;
+
+    // Space in which the errors for a block are gathered, and the
+    // range of that space (in bytes) that has been marked.
+    byte[] errorMask;
+    int firstMarked;
+    int lastMarked;
+    // ===============================================================
+
+
+
+// ===================================================================
+} // class GilbertElliottMedium
+// ===================================================================
@@ -126,12 +126,12 @@ public class HammingDataLinkLayer extends DataLinkLayer {
 
 
     private void printBit(BitVector bits){
-        int one;
+	EventSink events = EventSink.current();
+	StringBuilder line = new StringBuilder();
         for (int i = 0; i < bits.length(); i++) {
-            one = (bits.getBit(i) ? 1 : 0);
-            System.out.print(one);
+	    line.append(bits.getBit(i) ? '1' : '0');
         }
-        System.out.println();
+	events.event(EventSink.bits, line.toString());
     }
 
 
@@ -232,7 +232,8 @@ public class HammingDataLinkLayer extends DataLinkLayer {
 	int frameIndex = 0;
 	if (incomingBuffer[frameIndex++] != _startTag) {
 
-	    System.err.println("ParityDLL: Missing start tag!");
+	    EventSink.current().event(EventSink.missingStartTag,
+				      "ParityDLL: Missing start tag!");
 	    return null;
 
 	}
@@ -263,6 +264,7 @@ public class HammingDataLinkLayer extends DataLinkLayer {
 	// received parity bit.  If there's a mismatch, return null.
 	byte hamming = calculateHammingCode(originalData, 0, originalIndex);
 	if (hamming != incomingBuffer[frameIndex]) {
+	corrections++;
         BitVector bits = new BitVector(originalData, 0, originalIndex);
         //System.out.print("ebits ");
         //printBit(bits);
@@ -303,7 +305,9 @@ public class HammingDataLinkLayer extends DataLinkLayer {
         //System.out.print("rbits ");
         //printBit(bits);
         originalData = bits.toByteArray();
-	    System.err.print("HammingCodeDLL message recover: ");
+	    EventSink.current().event(EventSink.frameCorrected,
+				      "HammingCodeDLL message recover: ",
+				      originalData, 0, originalIndex, null);
 	    
         
         
@@ -313,6 +317,10 @@ public class HammingDataLinkLayer extends DataLinkLayer {
 	    }
 	    finalData = null;
         */
+	} else {
+
+	    EventSink.current().event(EventSink.frameAccepted);
+
 	}
     
     // Allocate a space that is only as large as the original
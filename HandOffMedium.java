@@ -0,0 +1,251 @@
+// ===================================================================
+// HandOffMedium
+// ===================================================================
+
+
+
+// ===================================================================
+// IMPORTS
+
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+// ===================================================================
+
+
+
+// ===================================================================
+// A medium that wraps another and hands what it delivers to each
+// client through a bounded queue, rather than calling up into the
+// client directly.  Each host can then run in a thread of its own:
+// the sending host's thread carries its data down its stack and
+// across the wrapped medium, and the receiving host's thread takes
+// the data from its queue and carries it up its own stack.  If a
+// receiver falls behind, its queue fills and the sender waits.
+//
+// The wrapped medium itself is not guarded, so only one host may send
+// on it at a time.
+class HandOffMedium extends WrappingMedium {
+// ===================================================================
+
+
+
+    // ===============================================================
+    // PUBLIC METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // The constructor.
+    public HandOffMedium (Medium medium) {
+
+	super(medium);
+	taps = new ArrayList<Tap>();
+
+    } // HandOffMedium
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Register a client by giving it a tap on the wrapped medium, and
+    // a queue for what arrives there.
+    public void register (PhysicalLayer client) {
+
+	taps.add(new Tap(medium, client));
+
+    } // register
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Allow a client to send a bit through its tap.
+    public void send (PhysicalLayer sender, boolean bit) {
+
+	medium.send(tapOf(sender), bit);
+
+    } // send
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Allow a client to send a block of bytes through its tap.
+    public void send (PhysicalLayer sender, byte[] data) {
+
+	medium.send(tapOf(sender), data);
+
+    } // send
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Tell every other client that the given one will send no more.
+    public void endOfStream (PhysicalLayer sender) {
+
+	Tap from = tapOf(sender);
+	for (int i = 0; i < taps.size(); i++) {
+
+	    if (taps.get(i) != from) {
+
+		taps.get(i).put(endOfStream);
+
+	    }
+
+	}
+
+    } // endOfStream
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Wait for the next bit or block that has arrived for the given
+    // client, and deliver it.  Return false, delivering nothing, once
+    // every other client has ended its stream.
+    public boolean deliverNext (PhysicalLayer client) {
+
+	Tap tap = tapOf(client);
+	while (true) {
+
+	    Object arrival = null;
+	    try {
+
+		arrival = tap.queue.take();
+
+	    } catch (InterruptedException e) {
+
+		throw new RuntimeException("Interrupted while receiving");
+
+	    }
+
+	    if (arrival == endOfStream) {
+
+		tap.streamsEnded++;
+		if (tap.streamsEnded == taps.size() - 1) {
+
+		    return false;
+
+		}
+
+	    } else if (arrival instanceof Boolean) {
+
+		client.receive(((Boolean)arrival).booleanValue());
+		return true;
+
+	    } else {
+
+		client.receive((byte[])arrival);
+		return true;
+
+	    }
+
+	}
+
+    } // deliverNext
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // PRIVATE METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Find the tap for a client.  Send only if the sender is a known
+    // client.
+    private Tap tapOf (PhysicalLayer client) {
+
+	for (int i = 0; i < taps.size(); i++) {
+
+	    if (taps.get(i).client == client) {
+
+		return taps.get(i);
+
+	    }
+
+	}
+
+	throw new RuntimeException();
+
+    } // tapOf
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // A physical layer attached to the wrapped medium on behalf of a
+    // client.  What the wrapped medium delivers to it is queued for
+    // the client.
+    private static class Tap extends PhysicalLayer {
+
+	Tap (Medium medium, PhysicalLayer client) {
+
+	    super(medium);
+	    this.client = client;
+	    queue = new ArrayBlockingQueue<Object>(queueLength);
+
+	}
+
+	void receive (boolean bit) {
+
+	    put(Boolean.valueOf(bit));
+
+	}
+
+	void receive (byte[] data) {
+
+	    put(data);
+
+	}
+
+	void put (Object arrival) {
+
+	    try {
+
+		queue.put(arrival);
+
+	    } catch (InterruptedException e) {
+
+		throw new RuntimeException("Interrupted while sending");
+
+	    }
+
+	}
+
+	final PhysicalLayer client;
+	final BlockingQueue<Object> queue;
+
+	// Owned by the client's receiving thread.
+	int streamsEnded;
+
+    } // class Tap
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // DATA MEMBERS
+    // ===============================================================
+
+
+    // ===============================================================
+    // The tap for each client.
+    final ArrayList<Tap> taps;
+
+    // The number of arrivals that may wait for each client, and the
+    // marker that ends a sender's stream.
+    static final int queueLength = 64;
+    static final Object endOfStream = new Object();
+    // ===============================================================
+
+
+
+// ===================================================================
+} // class HandOffMedium
+// ===================================================================
@@ -0,0 +1,266 @@
+// ===================================================================
+// ImportanceSamplingMedium
+// ===================================================================
+
+
+
+// ===================================================================
+// IMPORTS
+
+import java.util.SplittableRandom;
+// ===================================================================
+
+
+
+// ===================================================================
+// A point-to-point medium for estimating the rates of rare events,
+// such as a corrupted frame that passes its check.  The channel to be
+// studied flips each bit independently with some small probability,
+// but this medium flips bits with a larger, biased probability, so
+// that the rare events happen often.  For everything that it carries,
+// it keeps the likelihood ratio of the flips it made: the probability
+// of exactly those flips on the true channel, divided by their
+// probability on the biased one.  Weighting each outcome by that
+// ratio gives an unbiased estimate of its rate on the true channel.
+//
+// The ratio is kept as its logarithm, since it can be far too small
+// for a double.  A Sweep takes it after each message.
+//
+// The medium is named with its two probabilities, true and then
+// biased, as in ImportanceSampling@1e-6/0.01.  The biased probability
+// is best set near the error weight that the rare event needs,
+// divided by the length of the frame.
+class ImportanceSamplingMedium extends Medium {
+// ===================================================================
+
+
+
+    // ===============================================================
+    // PUBLIC METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // The constructors.  By default, the true channel flips one bit in
+    // a million, and the medium flips one in a hundred.
+    public ImportanceSamplingMedium () {
+
+	this(1.0e-6, 0.01);
+
+    } // ImportanceSamplingMedium
+
+    public ImportanceSamplingMedium (String probabilities) {
+
+	this(Double.parseDouble(probabilities.substring(0,
+							probabilities.indexOf('/'))),
+	     Double.parseDouble(probabilities.substring(probabilities.indexOf('/') + 1)));
+
+    } // ImportanceSamplingMedium
+
+    public ImportanceSamplingMedium (double trueProbability,
+				     double biasedProbability) {
+
+	if ((trueProbability <= 0.0) ||
+	    (biasedProbability <= 0.0) ||
+	    (trueProbability >= 1.0) ||
+	    (biasedProbability >= 1.0)) {
+
+	    throw new RuntimeException("Probabilities must lie strictly " +
+				       "between 0 and 1");
+
+	}
+
+	this.trueProbability = trueProbability;
+	this.biasedProbability = biasedProbability;
+	logFlipRatio = Math.log(trueProbability / biasedProbability);
+	logKeepRatio = Math.log1p(-trueProbability) -
+	    Math.log1p(-biasedProbability);
+	bitsUntilError = bitsUntilEvent(biasedProbability);
+
+    } // ImportanceSamplingMedium
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Replace the source of randomness, and draw the gap to the first
+    // error afresh from it.
+    public void setRandom (SplittableRandom random) {
+
+	super.setRandom(random);
+	bitsUntilError = bitsUntilEvent(biasedProbability);
+
+    } // setRandom
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Register one of the two allowed clients as connected to an end
+    // of the medium.
+    public void register (PhysicalLayer client) {
+
+	// If there is an end of the wire available, then assign this
+	// client to it.
+	if (client1 == null) {
+
+	    client1 = client;
+
+	} else if (client2 == null) {
+
+	    client2 = client;
+
+	} else {
+
+	    throw new RuntimeException();
+
+	}
+
+    } // register
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Allow a client to send a bit to the other client, flipping it
+    // with the biased probability.
+    public void send (PhysicalLayer sender, boolean bit) {
+
+	PhysicalLayer receiver = peerOf(sender);
+
+	bitsCarried++;
+	if (bitsUntilError == 0) {
+
+	    bit = !bit;
+	    bitsFlipped++;
+	    logWeight += logFlipRatio;
+	    bitsUntilError = bitsUntilEvent(biasedProbability);
+
+	} else {
+
+	    logWeight += logKeepRatio;
+	    bitsUntilError--;
+
+	}
+
+	receiver.receive(bit);
+
+    } // send
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Allow a client to send a block of bytes to the other client.
+    // Jump from one error to the next across the block, as on a
+    // LowNoiseMedium, then add the ratio for the flips made and the
+    // bits left alone.  The block is copied only if some bit flips.
+    public void send (PhysicalLayer sender, byte[] data) {
+
+	PhysicalLayer receiver = peerOf(sender);
+
+	byte[] delivered = data;
+	long blockBits = (long)data.length * 8;
+	long position = bitsUntilError;
+	long flips = 0;
+	while (position < blockBits) {
+
+	    if (delivered == data) {
+
+		delivered = data.clone();
+
+	    }
+	    delivered[(int)(position >>> 3)] ^= (byte)(1 << (position & 7));
+	    flips++;
+	    position += 1 + bitsUntilEvent(biasedProbability);
+
+	}
+
+	// Carry the remainder of the gap over to the next block.
+	bitsUntilError = position - blockBits;
+	bitsCarried += blockBits;
+	bitsFlipped += flips;
+	logWeight += (flips * logFlipRatio) +
+	    ((blockBits - flips) * logKeepRatio);
+
+	receiver.receive(delivered);
+
+    } // send
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Return the log of the likelihood ratio of everything carried
+    // since it was last taken, and start afresh.
+    public double takeLogWeight () {
+
+	double taken = logWeight;
+	logWeight = 0.0;
+	return taken;
+
+    } // takeLogWeight
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // PRIVATE METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Determine who the receiver is.  Send only if the sender is a
+    // known client.
+    private PhysicalLayer peerOf (PhysicalLayer sender) {
+
+	if (client1 == sender) {
+
+	    return client2;
+
+	} else if (client2 == sender) {
+
+	    return client1;
+
+	} else {
+
+	    throw new RuntimeException();
+
+	}
+
+    } // peerOf
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // DATA MEMBERS
+    // ===============================================================
+
+
+    // ===============================================================
+    // The two physical layer clients on either end of the wire.
+    PhysicalLayer client1;
+    PhysicalLayer client2;
+
+    // The probability that a bit flips on the channel under study,
+    // and on this medium, with the logs of the ratios between them
+    // for a bit that flips and for one that does not.
+    final double trueProbability;
+    final double biasedProbability;
+    final double logFlipRatio;
+    final double logKeepRatio;
+
+    // The number of bits that will pass unharmed before the next one
+    // flips, and the log of the likelihood ratio so far.
+    long bitsUntilError;
+    double logWeight;
+    // ===============================================================
+
+
+
+// ===================================================================
+} // class ImportanceSamplingMedium
+// ===================================================================
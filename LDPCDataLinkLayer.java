@@ -0,0 +1,686 @@
+// =============================================================================
+// IMPORTS
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.SplittableRandom;
+import java.util.concurrent.RecursiveAction;
+// =============================================================================
+
+
+
+// =============================================================================
+/**
+ *  A data link layer that protects each frame with a rate-1/2 low-density
+ *  parity-check code, decoded by belief propagation, so that it corrects
+ *  frames far noisier than a Hamming or convolutional code can.
+ *
+ *  Frames are laid out, checked, and counted as by every coded layer (see
+ *  CodedDataLinkLayer).  The code is systematic: the bits of a frame are sent
+ *  as they are, followed by as many parity bits.
+ *
+ *  The parity-check matrix has a column of weight 3 for each bit of data, its
+ *  rows chosen at random (from a fixed seed, so that both ends agree) to keep
+ *  the rows even and to avoid cycles of length 4, and a staircase of columns
+ *  for the parity bits, each parity bit checked with the one before it, so
+ *  that the encoder finds them by a running sum in one pass.  The matrix is
+ *  kept in compressed form, in arrays of ints: the bit of each edge grouped by
+ *  check, and the edges of each bit, each with an array of where each group
+ *  starts.  It is shared by every layer.
+ *
+ *  The decoder passes messages along the edges by the normalized min-sum
+ *  rule, on soft values, one per coded bit (positive for a 0, negative for a
+ *  1, in proportion to the log-likelihood ratio), as a medium such as the AWGN
+ *  medium delivers them; bits received hard are given values of equal
+ *  magnitude.  It stops as soon as its decisions satisfy every check, or
+ *  gives the frame up after a fixed number of iterations.
+ *
+ *  Frames are decoded one at a time as they arrive, unless the layer is named
+ *  with a batch size, as in LDPC@64; it then gathers that many frames and
+ *  decodes them in parallel on the fork-join pool, delivering them in order as
+ *  the batch completes, and delivering any part of a batch when it is flushed.
+ *  Each frame of a batch has a decoder of its own, so that nothing is shared
+ *  among the workers but the matrix, and nothing is allocated per frame but
+ *  the data returned.
+ **/
+public class LDPCDataLinkLayer extends CodedDataLinkLayer {
+// =============================================================================
+
+
+
+    // =========================================================================
+    /**
+     * The constructors.  Make a new LDPC data link layer that decodes each
+     * frame as it arrives, or that decodes frames in parallel in batches of
+     * the given size.
+     *
+     * @param physicalLayer The physical layer through which this data link
+     * layer should communicate.
+     * @param batchSize The number of frames decoded together.
+     **/
+    public LDPCDataLinkLayer (PhysicalLayer physicalLayer) {
+
+	this(physicalLayer, "1");
+
+    } // LDPCDataLinkLayer
+
+    public LDPCDataLinkLayer (PhysicalLayer physicalLayer, String batchSize) {
+
+	super(_frameDataSize);
+
+	int size = Integer.parseInt(batchSize.trim());
+	if ((size < 1) || (size > _maxBatchSize)) {
+
+	    throw new RuntimeException("Batch size must be from 1 to " +
+				       _maxBatchSize + ": " + batchSize);
+
+	}
+	_decoders = new Decoder[size];
+	for (int i = 0; i < size; i++) {
+
+	    _decoders[i] = new Decoder();
+
+	}
+
+	// Initialize the layer, keeping the soft values of the bits.
+	initialize(physicalLayer);
+	keepSoftValues();
+
+    } // LDPCDataLinkLayer
+    // =========================================================================
+
+
+
+    // =========================================================================
+    /**
+     * Decode and deliver any frames gathered into a batch that is not yet
+     * full.
+     **/
+    public void flush () {
+
+	decodeBatch();
+
+    } // flush
+    // =========================================================================
+
+
+
+    // =========================================================================
+    /**
+     * Return the number of bytes in a coded frame.
+     *
+     * @return The length of every frame sent.
+     **/
+    protected int codedFrameSize () {
+
+	return _codedFrameSize;
+
+    } // codedFrameSize ()
+    // =========================================================================
+
+
+
+    // =========================================================================
+    /**
+     * Encode the bits of a frame: copy them, then find each parity bit as the
+     * sum of the one before it and the bits of data in its check.
+     *
+     * @param info The bytes to be encoded.
+     * @param coded The buffer into which the coded bits are packed, most
+     *              significant first; it must be zeroed.
+     **/
+    protected void encode (byte[] info, byte[] coded) {
+
+	System.arraycopy(info, 0, coded, 0, info.length);
+	int parity = 0;
+	for (int check = 0; check < _parityBits; check++) {
+
+	    for (int edge = _checkStart[check];
+		 edge < _checkStart[check + 1];
+		 edge++) {
+
+		int bit = _checkBits[edge];
+		if (bit < _infoBits) {
+
+		    parity ^= (info[bit >>> 3] >>> (7 - (bit & 7))) & 1;
+
+		}
+
+	    }
+	    int bit = _infoBits + check;
+	    coded[bit >>> 3] |= (byte)(parity << (7 - (bit & 7)));
+
+	}
+
+    } // encode (byte[] info, byte[] coded)
+    // =========================================================================
+
+
+
+    // =========================================================================
+    /**
+     * Build the parity-check matrix.  Choose the checks of each bit of data at
+     * random, from among the checks not yet holding their share, passing over
+     * any check already chosen for the bit or already sharing a bit with one
+     * that is (which would make a cycle of length 4), unless no other can be
+     * found.  Then add the staircase, and lay the matrix out by check and by
+     * bit.
+     **/
+    private static void buildMatrix () {
+
+	SplittableRandom random = new SplittableRandom(_seed);
+	int rowLimit = (_infoBits * _columnWeight + _parityBits - 1) / _parityBits;
+	int[] infoChecks = new int[_infoBits * _columnWeight];
+	int[] checkDegree = new int[_parityBits];
+
+	// The pairs of checks that share a bit; the staircase makes each
+	// check share one with the next.
+	BitSet paired = new BitSet(_parityBits * _parityBits);
+	for (int check = 0; check + 1 < _parityBits; check++) {
+
+	    paired.set(check * _parityBits + check + 1);
+	    paired.set((check + 1) * _parityBits + check);
+
+	}
+
+	for (int bit = 0; bit < _infoBits; bit++) {
+
+	    int first = bit * _columnWeight;
+	    for (int k = 0; k < _columnWeight; k++) {
+
+		int check;
+		int tries = 0;
+		while (true) {
+
+		    check = random.nextInt(_parityBits);
+		    tries++;
+		    boolean repeated = false;
+		    boolean cycle = false;
+		    for (int j = first; j < first + k; j++) {
+
+			repeated |= (infoChecks[j] == check);
+			cycle |= paired.get(infoChecks[j] * _parityBits + check);
+
+		    }
+		    if (!repeated &&
+			((tries > _maxTries) ||
+			 (!cycle && (checkDegree[check] < rowLimit)))) {
+
+			break;
+
+		    }
+
+		}
+		for (int j = first; j < first + k; j++) {
+
+		    paired.set(infoChecks[j] * _parityBits + check);
+		    paired.set(check * _parityBits + infoChecks[j]);
+
+		}
+		infoChecks[first + k] = check;
+		checkDegree[check]++;
+
+	    }
+
+	}
+
+	// Count the bits of each check (the parity bit of the check, and of
+	// the check before it, besides the bits of data), and lay them out,
+	// bits of data first.
+	for (int check = 0; check < _parityBits; check++) {
+
+	    _checkStart[check + 1] = (_checkStart[check] +
+				      checkDegree[check] +
+				      (check == 0 ? 1 : 2));
+
+	}
+	int[] filled = Arrays.copyOf(_checkStart, _parityBits);
+	for (int bit = 0; bit < _infoBits; bit++) {
+
+	    for (int k = 0; k < _columnWeight; k++) {
+
+		int check = infoChecks[bit * _columnWeight + k];
+		_checkBits[filled[check]++] = bit;
+
+	    }
+
+	}
+	for (int check = 0; check < _parityBits; check++) {
+
+	    if (check > 0) {
+
+		_checkBits[filled[check]++] = _infoBits + check - 1;
+
+	    }
+	    _checkBits[filled[check]++] = _infoBits + check;
+
+	}
+
+	// Gather the edges of each bit.
+	for (int edge = 0; edge < _edgeCount; edge++) {
+
+	    _bitStart[_checkBits[edge] + 1]++;
+
+	}
+	for (int bit = 0; bit < _codedBits; bit++) {
+
+	    _bitStart[bit + 1] += _bitStart[bit];
+
+	}
+	filled = Arrays.copyOf(_bitStart, _codedBits);
+	for (int edge = 0; edge < _edgeCount; edge++) {
+
+	    _bitEdges[filled[_checkBits[edge]]++] = edge;
+
+	}
+
+    } // buildMatrix
+    // =========================================================================
+
+
+
+    // =========================================================================
+    /**
+     *  Give the soft values of the frame's bits to the next decoder free.
+     *  Decoding one frame at a time, decode it, check it, and return the
+     *  original data; otherwise, keep it, and decode the batch once it is
+     *  full.
+     *
+     * @return The data carried in this frame; <tt>null</tt> if the data was not
+     *         successfully received; or <tt>deferred</tt>, if the frame is kept
+     *         for its batch.
+     **/
+    protected byte[] processFrame () {
+
+	Decoder decoder = _decoders[_batched];
+	System.arraycopy(incomingSoft, 0, decoder._soft, 0, _codedBits);
+
+	if (_decoders.length == 1) {
+
+	    decoder.decode();
+	    return check(decoder);
+
+	}
+
+	_batched++;
+	if (_batched == _decoders.length) {
+
+	    decodeBatch();
+
+	}
+	return deferred;
+
+    } // processFrame
+    // =========================================================================
+
+
+
+    // =========================================================================
+    /**
+     * Decode the frames gathered into the batch in parallel, then check each
+     * in turn, delivering those intact and counting the others as discarded.
+     **/
+    private void decodeBatch () {
+
+	if (_batched == 0) {
+
+	    return;
+
+	}
+
+	int count = _batched;
+	_batched = 0;
+	new DecodeRange(_decoders, 0, count).invoke();
+	for (int i = 0; i < count; i++) {
+
+	    byte[] data = check(_decoders[i]);
+	    if (data == null) {
+
+		framesDiscarded++;
+
+	    } else {
+
+		client.receive(data);
+
+	    }
+
+	}
+
+    } // decodeBatch
+    // =========================================================================
+
+
+
+    // =========================================================================
+    /**
+     * Check what a decoder made of a frame, and count the bits it corrected.
+     *
+     * @param decoder A decoder that has decoded a frame.
+     * @return The data carried in the frame; <tt>null</tt> if the decoder gave
+     *         up on it, or it fails its check.
+     **/
+    private byte[] check (Decoder decoder) {
+
+	iterations += decoder._iterations;
+	if (!decoder._converged) {
+
+	    EventSink.current().event(EventSink.frameRejected);
+	    return null;
+
+	}
+
+	// Gather the bits of data.
+	byte[] hard = decoder._hard;
+	Arrays.fill(_decoded, (byte)0);
+	for (int i = 0; i < _infoBits; i++) {
+
+	    _decoded[i >>> 3] |= (byte)(hard[i] << (7 - (i & 7)));
+
+	}
+	if (!intact(_decoded)) {
+
+	    EventSink.current().event(EventSink.frameRejected);
+	    return null;
+
+	}
+
+	// Count the bits whose decisions differ from the signs received.
+	byte[] soft = decoder._soft;
+	int flipped = 0;
+	for (int i = 0; i < _codedBits; i++) {
+
+	    flipped += hard[i] ^ (soft[i] < 0 ? 1 : 0);
+
+	}
+	if (flipped > 0) {
+
+	    corrections++;
+	    bitsCorrected += flipped;
+	    EventSink.current().event(EventSink.frameCorrected);
+
+	} else {
+
+	    EventSink.current().event(EventSink.frameAccepted);
+
+	}
+
+	return dataOf(_decoded);
+
+    } // check (Decoder decoder)
+    // =========================================================================
+
+
+
+    // =========================================================================
+    /**
+     * A decoder for one frame at a time, with the soft values of the frame, the
+     * messages on each edge, and its decisions.
+     **/
+    private static class Decoder {
+
+	/**
+	 * Decode the soft values held by the normalized min-sum rule.  At each
+	 * iteration, each check sends each of its bits the product of the signs
+	 * of the messages from its other bits and the least of their
+	 * magnitudes, scaled down by a quarter; each bit then decides on the
+	 * sign of its soft value plus what all its checks sent, and sends each
+	 * check that sum less what the check sent it.  Note the number of
+	 * iterations run, and whether the decisions satisfy every check.
+	 **/
+	void decode () {
+
+	    for (int edge = 0; edge < _edgeCount; edge++) {
+
+		_toCheck[edge] = _soft[_checkBits[edge]];
+
+	    }
+	    for (int bit = 0; bit < _codedBits; bit++) {
+
+		_hard[bit] = (byte)(_soft[bit] < 0 ? 1 : 0);
+
+	    }
+	    _iterations = 0;
+	    _converged = satisfied();
+
+	    while (!_converged && (_iterations < _maxIterations)) {
+
+		_iterations++;
+
+		// From the checks to the bits.  Only the two least magnitudes
+		// are needed: each edge is sent the least of the others.
+		for (int check = 0; check < _parityBits; check++) {
+
+		    int begin = _checkStart[check];
+		    int end = _checkStart[check + 1];
+		    int sign = 0;
+		    int least = _maxMessage;
+		    int next = _maxMessage;
+		    int leastEdge = -1;
+		    for (int edge = begin; edge < end; edge++) {
+
+			int message = _toCheck[edge];
+			sign ^= message;
+			int magnitude = Math.abs(message);
+			if (magnitude < least) {
+
+			    next = least;
+			    least = magnitude;
+			    leastEdge = edge;
+
+			} else if (magnitude < next) {
+
+			    next = magnitude;
+
+			}
+
+		    }
+		    least = (least * 3) >> 2;
+		    next = (next * 3) >> 2;
+		    for (int edge = begin; edge < end; edge++) {
+
+			int magnitude = (edge == leastEdge ? next : least);
+			_toBit[edge] = ((sign ^ _toCheck[edge]) < 0 ?
+					-magnitude :
+					magnitude);
+
+		    }
+
+		}
+
+		// From the bits to the checks.
+		for (int bit = 0; bit < _codedBits; bit++) {
+
+		    int begin = _bitStart[bit];
+		    int end = _bitStart[bit + 1];
+		    int sum = _soft[bit];
+		    for (int i = begin; i < end; i++) {
+
+			sum += _toBit[_bitEdges[i]];
+
+		    }
+		    _hard[bit] = (byte)(sum < 0 ? 1 : 0);
+		    for (int i = begin; i < end; i++) {
+
+			int edge = _bitEdges[i];
+			_toCheck[edge] = Math.max(-_maxMessage,
+						  Math.min(_maxMessage,
+							   sum - _toBit[edge]));
+
+		    }
+
+		}
+
+		_converged = satisfied();
+
+	    }
+
+	} // decode
+
+	/**
+	 * Determine whether the decisions satisfy every check.
+	 *
+	 * @return Whether each check sums its bits to zero.
+	 **/
+	boolean satisfied () {
+
+	    for (int check = 0; check < _parityBits; check++) {
+
+		int parity = 0;
+		for (int edge = _checkStart[check];
+		     edge < _checkStart[check + 1];
+		     edge++) {
+
+		    parity ^= _hard[_checkBits[edge]];
+
+		}
+		if (parity != 0) {
+
+		    return false;
+
+		}
+
+	    }
+	    return true;
+
+	} // satisfied
+
+	/**
+	 * The soft values of the frame, the messages on each edge to its check
+	 * and to its bit, and the decision on each bit.
+	 **/
+	final byte[] _soft = new byte[_codedBits];
+	final int[] _toCheck = new int[_edgeCount];
+	final int[] _toBit = new int[_edgeCount];
+	final byte[] _hard = new byte[_codedBits];
+
+	/**
+	 * The number of iterations run on the last frame, and whether its
+	 * decisions satisfied every check.
+	 **/
+	int _iterations;
+	boolean _converged;
+
+    } // class Decoder
+    // =========================================================================
+
+
+
+    // =========================================================================
+    /**
+     * A task that runs a range of decoders, splitting the range in half until
+     * each part is a single frame.
+     **/
+    @SuppressWarnings("serial")
+    private static class DecodeRange extends RecursiveAction {
+
+	DecodeRange (Decoder[] decoders, int begin, int end) {
+
+	    _decoders = decoders;
+	    _begin = begin;
+	    _end = end;
+
+	}
+
+	protected void compute () {
+
+	    if (_end - _begin == 1) {
+
+		_decoders[_begin].decode();
+		return;
+
+	    }
+
+	    int middle = (_begin + _end) >>> 1;
+	    invokeAll(new DecodeRange(_decoders, _begin, middle),
+		      new DecodeRange(_decoders, middle, _end));
+
+	}
+
+	final Decoder[] _decoders;
+	final int _begin;
+	final int _end;
+
+    } // class DecodeRange
+    // =========================================================================
+
+
+
+    // =========================================================================
+    // DATA MEMBERS
+
+    /**
+     * The maximum number of data (not metadata) bytes in a frame.
+     **/
+    static final int _frameDataSize = 125;
+
+    /**
+     * The number of bits of a frame before coding (data and metadata), of
+     * parity bits, of bits sent, and of bytes sent.
+     **/
+    static final int _infoBits = 8 * (_frameDataSize + 3);
+    static final int _parityBits = _infoBits;
+    static final int _codedBits = _infoBits + _parityBits;
+    static final int _codedFrameSize = _codedBits / 8;
+
+    /**
+     * The number of checks on each bit of data, and the number of edges in
+     * all (the last parity bit is in one check, and every other in two).
+     **/
+    static final int _columnWeight = 3;
+    static final int _edgeCount = (_infoBits * _columnWeight +
+				   2 * _parityBits - 1);
+
+    /**
+     * The seed from which the matrix is built, and the number of checks tried
+     * for an edge before one that makes a short cycle is taken.
+     **/
+    static final long _seed = 0x4c445043L;
+    static final int _maxTries = 1000;
+
+    /**
+     * The most iterations run on a frame, and the largest magnitude of a
+     * message.
+     **/
+    static final int _maxIterations = 50;
+    static final int _maxMessage = 1 << 12;
+
+    /**
+     * The largest number of frames decoded together.
+     **/
+    static final int _maxBatchSize = 4096;
+
+    /**
+     * The parity-check matrix: where the edges of each check begin, with one
+     * more entry for the end of the last, and the bit of each edge; and where
+     * the list of edges of each bit begins, and the lists.
+     **/
+    static final int[] _checkStart = new int[_parityBits + 1];
+    static final int[] _checkBits = new int[_edgeCount];
+    static final int[] _bitStart = new int[_codedBits + 1];
+    static final int[] _bitEdges = new int[_edgeCount];
+
+    static {
+
+	buildMatrix();
+
+    }
+
+    /**
+     * A decoder for each frame of a batch, and the number of frames gathered
+     * into the batch so far.
+     **/
+    final Decoder[] _decoders;
+    int _batched;
+
+    /**
+     * The number of bits corrected, and of iterations run, in all.
+     **/
+    long bitsCorrected;
+    long iterations;
+    // =========================================================================
+
+
+
+// =============================================================================
+} // class LDPCDataLinkLayer
+// =============================================================================
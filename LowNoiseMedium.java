@@ -6,6 +6,14 @@
 
 
 
+// ===================================================================
+// IMPORTS
+
+import java.util.SplittableRandom;
+// ===================================================================
+
+
+
 // ===================================================================
 // A point-to-point medium that, with low probability, can flip each
 // given bit.
@@ -20,6 +28,45 @@ class LowNoiseMedium extends Medium {
 
 
 
+    // ===============================================================
+    // The constructors.  By default, one bit in a hundred is flipped.
+    // The probability may also be given as a string, as the simulator
+    // does for LowNoise@0.001.
+    public LowNoiseMedium () {
+
+	this(0.01);
+
+    } // LowNoiseMedium
+
+    public LowNoiseMedium (String errorProbability) {
+
+	this(Double.parseDouble(errorProbability));
+
+    } // LowNoiseMedium
+
+    public LowNoiseMedium (double errorProbability) {
+
+	this.errorProbability = errorProbability;
+	bitsUntilError = bitsUntilEvent(errorProbability);
+
+    } // LowNoiseMedium
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Replace the source of randomness, and draw the gap to the first
+    // error afresh from it.
+    public void setRandom (SplittableRandom random) {
+
+	super.setRandom(random);
+	bitsUntilError = bitsUntilEvent(errorProbability);
+
+    } // setRandom
+    // ===============================================================
+
+
+
     // ===============================================================
     // Register one of the two allowed clients as connected to an end
     // of the medium.
@@ -67,10 +114,19 @@ class LowNoiseMedium extends Medium {
 
 	}
 
-	// With low probability, flip this bit.
-	if (Math.random() < errorProbability) {
+	// With low probability, flip this bit.  Rather than drawing a
+	// random number for every bit, count down the gap to the next
+	// error and draw only when it has been reached.
+	bitsCarried++;
+	if (bitsUntilError == 0) {
 
 	    bit = !bit;
+	    bitsFlipped++;
+	    bitsUntilError = bitsUntilEvent(errorProbability);
+
+	} else {
+
+	    bitsUntilError--;
 
 	}
 
@@ -83,6 +139,55 @@ class LowNoiseMedium extends Medium {
 
 
 
+    // ===============================================================
+    // Allow a client to send a block of bytes to the other client.
+    // Jump from one error to the next across the block, so that the
+    // cost depends on the number of flipped bits, not on the number
+    // of bits sent.  The block is copied only if some bit in it flips.
+    public void send (PhysicalLayer sender, byte[] data) {
+
+	PhysicalLayer receiver = null;
+	if (client1 == sender) {
+
+	    receiver = client2;
+
+	} else if (client2 == sender) {
+
+	    receiver = client1;
+
+	} else {
+
+	    throw new RuntimeException();
+
+	}
+
+	byte[] delivered = data;
+	long blockBits = (long)data.length * 8;
+	long position = bitsUntilError;
+	while (position < blockBits) {
+
+	    if (delivered == data) {
+
+		delivered = data.clone();
+
+	    }
+	    delivered[(int)(position >>> 3)] ^= (byte)(1 << (position & 7));
+	    bitsFlipped++;
+	    position += 1 + bitsUntilEvent(errorProbability);
+
+	}
+
+	// Carry the remainder of the gap over to the next block.
+	bitsUntilError = position - blockBits;
+	bitsCarried += blockBits;
+
+	receiver.receive(delivered);
+
+    } // send
+    // ===============================================================
+
+
+
     // ===============================================================
     // DATA MEMBERS
     // ===============================================================
@@ -93,8 +198,10 @@ class LowNoiseMedium extends Medium {
     PhysicalLayer client1;
     PhysicalLayer client2;
 
-    // The probablity that a bit will flip.
-    final double errorProbability = 0.01;
+    // The probablity that a bit will flip, and the number of bits
+    // that will pass unharmed before the next one flips.
+    final double errorProbability;
+    long bitsUntilError;
     // ===============================================================
 
 
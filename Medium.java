@@ -6,6 +6,14 @@
 
 
 
+// ===================================================================
+// IMPORTS
+
+import java.util.SplittableRandom;
+// ===================================================================
+
+
+
 // ===================================================================
 // A medium carries bits from one physical layer to others.
 abstract class Medium {
@@ -33,6 +41,195 @@ abstract class Medium {
 
 
 
+    // ===============================================================
+    // Send a block of bytes from one physical layer to others.  The
+    // bits of each byte are sent from least to most significant, just
+    // as the physical layer would send them one at a time.  A medium
+    // that can carry a whole block at once should override this; the
+    // sender's array must not be modified.
+    public void send (PhysicalLayer sender, byte[] data) {
+
+	for (int i = 0; i < data.length; i++) {
+
+	    int currentByte = data[i];
+	    for (int j = 0; j < 8; j++) {
+
+		send(sender, ((currentByte >>> j) & 0x1) == 0x1);
+
+	    }
+
+	}
+
+    } // send
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Complete any transmissions that the medium has deferred.  Most
+    // media deliver each bit as it is sent, so by default there is
+    // nothing to do.
+    public void finish () {
+
+    } // finish
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Return the scheduler that keeps simulated time for this
+    // medium, or null if the medium keeps no time (in which case
+    // everything happens at once).
+    public EventScheduler scheduler () {
+
+	return null;
+
+    } // scheduler
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Return whether the medium carries traffic both ways at once, so
+    // that two hosts may send from two threads together.  Most media
+    // are driven from one thread; return false.
+    public boolean fullDuplex () {
+
+	return false;
+
+    } // fullDuplex
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // If the medium leads to a host in another program, return the
+    // index of the one host that runs in this program.  Otherwise,
+    // every host is here; return -1.
+    public int localHost () {
+
+	return -1;
+
+    } // localHost
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Replace the source of randomness for the medium's noise, so
+    // that a run can be repeated from a seed, or so that media used in
+    // parallel draw from independent streams.  Set it before the
+    // medium carries anything.
+    public void setRandom (SplittableRandom random) {
+
+	this.random = random;
+
+    } // setRandom
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Return the number of bits that the medium has carried, and the
+    // number of those that it flipped.
+    public long bitsCarried () {
+
+	return bitsCarried;
+
+    } // bitsCarried
+
+    public long bitsFlipped () {
+
+	return bitsFlipped;
+
+    } // bitsFlipped
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Return the log of the weight to be given to what the medium has
+    // done since this was last called, and start afresh.  A medium
+    // that flips bits with the probability of the channel it stands
+    // for needs no weight; return 0.  One that samples a biased
+    // channel instead returns the log of the likelihood ratio.
+    public double takeLogWeight () {
+
+	return 0.0;
+
+    } // takeLogWeight
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // PROTECTED METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Return the number of bits that pass untouched before the next
+    // one hit by an event that strikes each bit independently with
+    // the given probability.  That gap is geometrically distributed,
+    // so one random draw stands in for a draw on every bit.
+    protected long bitsUntilEvent (double probability) {
+
+	return bitsUntilEvent(probability, random.nextDouble());
+
+    } // bitsUntilEvent
+
+    // As above, but from the given uniform value in [0, 1), for media
+    // that keep random number generators of their own.
+    protected static long bitsUntilEvent (double probability,
+					  double random) {
+
+	if (probability <= 0.0) {
+
+	    return neverGap;
+
+	}
+	if (probability >= 1.0) {
+
+	    return 0;
+
+	}
+
+	// Invert the geometric CDF.  The uniform value is taken from
+	// (0, 1] so that the logarithm is finite.
+	double uniform = 1.0 - random;
+	double gap = Math.log(uniform) / Math.log1p(-probability);
+	return (gap < neverGap ? (long)gap : neverGap);
+
+    } // bitsUntilEvent
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // DATA MEMBERS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // The source of randomness for the medium's noise.  Each medium
+    // has its own, so that media need not contend for a shared one.
+    SplittableRandom random = new SplittableRandom();
+
+    // The number of bits carried so far, and how many of those were
+    // flipped.
+    long bitsCarried;
+    long bitsFlipped;
+
+    // The longest gap ever returned between events.  It stands for
+    // ``never'', yet leaves room to add bit positions to it without
+    // overflowing.
+    static final long neverGap = Long.MAX_VALUE >> 1;
+    // ===============================================================
+
+
+
 // ===================================================================
 } // class Medium
 // ===================================================================
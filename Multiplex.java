@@ -0,0 +1,301 @@
+// ===================================================================
+// Multiplex
+// ===================================================================
+
+
+
+// ===================================================================
+// IMPORTS
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+// ===================================================================
+
+
+
+// ===================================================================
+// Send several workloads at once from one host to another over a
+// single link, each on a logical channel of its own, and measure how
+// the link is shared among them.
+//
+// The workloads are named as to the Simulator, separated by
+// semicolons, and the weights of their channels (1 by default) by
+// commas.  A Multiplexer at each end carries the channels; at the
+// sending end, each channel's network layer sends its workload on a
+// thread of its own, and at the receiving end, one thread takes what
+// arrives through a HandOffMedium and carries it up.  Each channel's
+// throughput is measured from the start until its last segment
+// arrived, so a channel of greater weight finishes sooner.
+//
+// As with a Fleet, the medium named must deliver as it sends and keep
+// no clock, and what the layers print is discarded.
+class Multiplex {
+// ===================================================================
+
+
+
+    // ===============================================================
+    // PUBLIC METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // The entry point.
+    public static void main (String[] args) {
+
+	if ((args.length < 3) || (args.length > 5)) {
+
+	    System.err.println("Usage: java Multiplex " +
+			       "<medium type> " +
+			       "<data link layer type> " +
+			       "<workloads> " +
+			       "[<weights> [<seed>]]");
+	    System.exit(1);
+
+	}
+
+	String mediumType = args[0];
+	String dataLinkLayerType = args[1];
+	final String[] workloadTypes = args[2].split(";");
+	int[] weights = new int[workloadTypes.length];
+	String[] weightFields = (args.length > 3 ?
+				 args[3].split(",") :
+				 new String[0]);
+	for (int i = 0; i < weights.length; i++) {
+
+	    weights[i] = (i < weightFields.length ?
+			  Integer.parseInt(weightFields[i]) :
+			  1);
+
+	}
+	long seed = (args.length > 4 ?
+		     Long.parseLong(args[4]) :
+		     System.nanoTime());
+
+	// Build the link, and a multiplexer at each end of it.
+	Medium inner = Simulator.createMedium(mediumType);
+	if ((inner.localHost() != -1) ||
+	    inner.fullDuplex() ||
+	    (inner.scheduler() != null)) {
+
+	    throw new RuntimeException("Multiplex needs a medium that " +
+				       "delivers as it sends: " + mediumType);
+
+	}
+	inner.setRandom(new SplittableRandom(seed));
+	final HandOffMedium medium = new HandOffMedium(inner);
+	final PhysicalLayer[] physicalLayers =
+	    Simulator.createPhysicalLayers(medium, 2);
+	final DataLinkLayer[] dataLinkLayers =
+	    Simulator.createDataLinkLayers(dataLinkLayerType, physicalLayers);
+	Multiplexer out = new Multiplexer(dataLinkLayers[0],
+					  workloadTypes.length);
+	Multiplexer in = new Multiplexer(dataLinkLayers[1],
+					 workloadTypes.length);
+
+	// Give each channel a network layer at each end, both with the
+	// channel's workload, so that they agree on its options.
+	final NetworkLayer[] senders = new NetworkLayer[workloadTypes.length];
+	final NetworkLayer[] receivers =
+	    new NetworkLayer[workloadTypes.length];
+	for (int i = 0; i < workloadTypes.length; i++) {
+
+	    out.setWeight(i, weights[i]);
+	    senders[i] = new NetworkLayer(out.channel(i));
+	    senders[i].setWorkload(Simulator.createWorkload(workloadTypes[i]));
+	    receivers[i] = new NetworkLayer(in.channel(i));
+	    receivers[i].setWorkload(Simulator.createWorkload(workloadTypes[i]));
+
+	}
+
+	PrintStream results = System.out;
+	PrintStream errors = System.err;
+	results.println("Multiplex: " + workloadTypes.length +
+			" channels, seed " + seed);
+	results.println(String.format("%7s %6s %10s %12s %9s %14s",
+				       "channel", "weight", "segments",
+				       "bytes", "seconds", "b/s"));
+
+	final CountDownLatch startGate = new CountDownLatch(1);
+	final long[] failures = new long[1];
+	final long[] finished = new long[workloadTypes.length];
+	long start;
+	try {
+
+	    System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+	    System.setErr(System.out);
+
+	    Thread[] threads = new Thread[workloadTypes.length + 1];
+	    for (int i = 0; i < workloadTypes.length; i++) {
+
+		final int channel = i;
+		threads[i] = Fleet.startHost("Channel " + i, new Runnable() {
+
+			public void run () {
+
+			    Fleet.awaitStart(startGate);
+			    senders[channel].send();
+
+			}
+
+		    });
+
+	    }
+	    threads[workloadTypes.length] =
+		Fleet.startHost("Receiver", new Runnable() {
+
+			public void run () {
+
+			    Fleet.awaitStart(startGate);
+			    failures[0] = deliverAll(medium,
+						     physicalLayers[1],
+						     dataLinkLayers[1],
+						     receivers,
+						     finished);
+
+			}
+
+		    });
+
+	    start = System.nanoTime();
+	    startGate.countDown();
+	    for (int i = 0; i < workloadTypes.length; i++) {
+
+		join(threads[i]);
+
+	    }
+	    out.close();
+	    medium.endOfStream(physicalLayers[0]);
+	    join(threads[workloadTypes.length]);
+	    medium.finish();
+
+	} finally {
+
+	    System.setOut(results);
+	    System.setErr(errors);
+
+	}
+
+	for (int i = 0; i < workloadTypes.length; i++) {
+
+	    double seconds = Math.max(finished[i] - start, 1) / 1.0e9;
+	    results.println(String.format("%7d %6d %10d %12d %9.3f %14.4e",
+					  i,
+					  weights[i],
+					  receivers[i].messagesReceived,
+					  receivers[i].bytesReceived,
+					  seconds,
+					  receivers[i].bytesReceived * 8 /
+					  seconds));
+
+	}
+	results.println("Skipped " + in.bytesSkipped + " bytes; " +
+			failures[0] + " failures");
+
+	// If the messages were verified, report what each channel's
+	// receiver made of them.
+	for (int i = 0; i < workloadTypes.length; i++) {
+
+	    if (receivers[i].verifier != null) {
+
+		receivers[i].verifier.finish();
+		results.println("Channel " + i + " verified: " +
+				receivers[i].verifier.report(
+				    new int[] { senders[i].verifier.streamId },
+				    new long[] {
+					senders[i].workload.messagesGenerated()
+				    }));
+
+	    }
+
+	}
+
+    } // main
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // PRIVATE METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Deliver what arrives at the receiving end until the stream ends,
+    // and then whatever the data link layer held back, noting the time
+    // at which each channel last received a segment.  If the data link
+    // layer chokes on a damaged frame, drop what it had buffered and
+    // carry on.  Return the number of times it choked.
+    private static long deliverAll (HandOffMedium medium,
+				    PhysicalLayer physicalLayer,
+				    DataLinkLayer dataLinkLayer,
+				    NetworkLayer[] receivers,
+				    long[] finished) {
+
+	long[] received = new long[receivers.length];
+	long failures = 0;
+	boolean ended = false;
+	while (!ended) {
+
+	    try {
+
+		if (!medium.deliverNext(physicalLayer)) {
+
+		    ended = true;
+		    dataLinkLayer.flush();
+
+		}
+
+	    } catch (RuntimeException e) {
+
+		dataLinkLayer.bufferIndex = 0;
+		failures++;
+
+	    }
+
+	    for (int i = 0; i < receivers.length; i++) {
+
+		if (receivers[i].bytesReceived != received[i]) {
+
+		    received[i] = receivers[i].bytesReceived;
+		    finished[i] = System.nanoTime();
+
+		}
+
+	    }
+
+	}
+	return failures;
+
+    } // deliverAll
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Wait for a thread to finish.
+    private static void join (Thread thread) {
+
+	try {
+
+	    thread.join();
+
+	} catch (InterruptedException e) {
+
+	    throw new RuntimeException("Interrupted while waiting for " +
+				       thread.getName());
+
+	}
+
+    } // join
+    // ===============================================================
+
+
+
+// ===================================================================
+} // class Multiplex
+// ===================================================================
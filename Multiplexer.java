@@ -0,0 +1,568 @@
+// ===================================================================
+// Multiplexer
+// ===================================================================
+
+
+
+// ===================================================================
+// IMPORTS
+
+import java.util.ArrayDeque;
+// ===================================================================
+
+
+
+// ===================================================================
+// Carry several logical channels over a single data link layer, so
+// that several network layers, each with traffic of its own kind,
+// can share one link.  Each channel looks to its network layer like a
+// data link layer of its own.
+//
+// What a channel is given to send is cut into segments of no more
+// than a fixed size, each preceded by a header:
+//
+//   magic    2 bytes  (``MX'')
+//   channel  1 byte   the channel it belongs to
+//   length   2 bytes  the number of bytes that follow
+//
+// and queued on its channel.  A thread of the multiplexer's own takes
+// the segments from the queues and sends them, choosing among the
+// channels by deficit round-robin: the channels with segments queued
+// take turns, and at each turn a channel earns its quantum of bytes
+// and sends segments while it has earned enough for the next.  A
+// channel's quantum is its weight times the largest segment, so
+// every channel sends at least a segment at each turn, and while
+// they are all busy, the link is shared in proportion to the
+// weights, however large the segments of each.  A channel whose
+// queue holds more than a fixed number of bytes makes its network
+// layer wait, so that no channel can run far ahead of the link.
+//
+// The receiving multiplexer reads each header into a small buffer,
+// gathers the segment that follows, and passes it to the network
+// layer of its channel.  A header that is not plausible is slid past
+// a byte at a time until one is found.
+class Multiplexer {
+// ===================================================================
+
+
+
+    // ===============================================================
+    // PUBLIC METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // The constructor.  Carry the given number of channels, each of
+    // weight 1, over a data link layer, becoming its client.
+    public Multiplexer (DataLinkLayer link, int channelCount) {
+
+	if ((channelCount < 1) || (channelCount > maxChannels)) {
+
+	    throw new RuntimeException("Channel count must be from 1 to " +
+				       maxChannels);
+
+	}
+	this.link = link;
+	port = new Port(link);
+	channels = new Channel[channelCount];
+	for (int i = 0; i < channelCount; i++) {
+
+	    channels[i] = new Channel(i);
+
+	}
+	active = new ArrayDeque<Channel>();
+
+	sender = new Thread(new Runnable() {
+
+		public void run () {
+
+		    transmit();
+
+		}
+
+	    }, "Multiplexer");
+	sender.setDaemon(true);
+	sender.start();
+
+    } // Multiplexer
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Return the data link layer through which a network layer uses
+    // the given channel.
+    public DataLinkLayer channel (int id) {
+
+	return channels[id];
+
+    } // channel
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Set a channel's weight: the share of the link it receives while
+    // every channel has segments to send, relative to the others.
+    public synchronized void setWeight (int id, int weight) {
+
+	if (weight < 1) {
+
+	    throw new RuntimeException("Weight must be at least 1");
+
+	}
+	channels[id].quantum = weight * (headerSize + segmentSize);
+
+    } // setWeight
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Wait until every segment queued so far has been sent, and the
+    // link has been flushed after it.  The sending thread flushes the
+    // link whenever the queues run dry, and counts the flushes asked
+    // for that it has answered.
+    public synchronized void flush () {
+
+	long wanted = ++flushesRequested;
+	notifyAll();
+	while ((flushesDone < wanted) && sender.isAlive()) {
+
+	    waitHere();
+
+	}
+
+    } // flush
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Send every segment queued, and stop the sending thread.
+    public void close () {
+
+	flush();
+	synchronized (this) {
+
+	    closed = true;
+	    notifyAll();
+
+	}
+	try {
+
+	    sender.join();
+
+	} catch (InterruptedException e) {
+
+	    throw new RuntimeException("Interrupted while closing " +
+				       "multiplexer");
+
+	}
+
+    } // close
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Return a line summarizing what a channel has sent and received.
+    public synchronized String report (int id) {
+
+	Channel channel = channels[id];
+	return ("channel " + id + ": sent " +
+		channel.segmentsSent + " segments (" +
+		channel.bytesSent + " bytes), received " +
+		channel.segmentsReceived + " segments (" +
+		channel.bytesReceived + " bytes)");
+
+    } // report
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // PRIVATE METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Cut what a channel is given to send into segments, and queue
+    // them, waiting while the channel's queue is full.
+    private synchronized void enqueue (Channel channel, byte[] data) {
+
+	int offset = 0;
+	do {
+
+	    while ((channel.queuedBytes >= queueLimit) && sender.isAlive()) {
+
+		waitHere();
+
+	    }
+	    if (closed || !sender.isAlive()) {
+
+		throw new RuntimeException("Multiplexer closed");
+
+	    }
+
+	    int length = Math.min(segmentSize, data.length - offset);
+	    byte[] segment = new byte[headerSize + length];
+	    segment[0] = (byte)(magic >>> 8);
+	    segment[1] = (byte)magic;
+	    segment[2] = (byte)channel.id;
+	    segment[3] = (byte)(length >>> 8);
+	    segment[4] = (byte)length;
+	    System.arraycopy(data, offset, segment, headerSize, length);
+	    offset += length;
+
+	    channel.queue.addLast(segment);
+	    channel.queuedBytes += segment.length;
+	    if (!channel.active) {
+
+		channel.active = true;
+		active.addLast(channel);
+		notifyAll();
+
+	    }
+
+	} while (offset < data.length);
+
+    } // enqueue
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Run the sending thread.  Take the next channel with segments
+    // queued, add its quantum to its deficit, and send its segments
+    // while its deficit covers the next.  A channel whose queue it
+    // empties loses what deficit it had left, and leaves the rotation
+    // until it queues more; any other goes to the back.  Segments are
+    // sent without the lock held, so that the network layers can go
+    // on queueing meanwhile.
+    private void transmit () {
+
+	while (true) {
+
+	    // Whenever the queues run dry, send whatever the link has held
+	    // back, and then answer the flushes asked for until now.
+	    boolean idle;
+	    long requested;
+	    synchronized (this) {
+
+		idle = active.isEmpty();
+		requested = flushesRequested;
+
+	    }
+	    if (idle) {
+
+		link.flush();
+		synchronized (this) {
+
+		    flushesDone = requested;
+		    notifyAll();
+
+		}
+
+	    }
+
+	    Channel channel;
+	    synchronized (this) {
+
+		while (active.isEmpty() && !closed &&
+		       (flushesDone == flushesRequested)) {
+
+		    waitHere();
+
+		}
+		if (active.isEmpty() && closed) {
+
+		    return;
+
+		} else if (active.isEmpty()) {
+
+		    continue;
+
+		}
+		channel = active.pollFirst();
+		channel.deficit += channel.quantum;
+
+	    }
+
+	    while (true) {
+
+		byte[] segment;
+		synchronized (this) {
+
+		    segment = channel.queue.peekFirst();
+		    if (segment == null) {
+
+			channel.deficit = 0;
+			channel.active = false;
+			notifyAll();
+			break;
+
+		    }
+		    if (segment.length > channel.deficit) {
+
+			active.addLast(channel);
+			break;
+
+		    }
+		    channel.queue.pollFirst();
+		    channel.queuedBytes -= segment.length;
+		    channel.deficit -= segment.length;
+		    channel.segmentsSent++;
+		    channel.bytesSent += segment.length - headerSize;
+		    notifyAll();
+
+		}
+		link.send(segment);
+
+	    }
+
+	}
+
+    } // transmit
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Wait to be notified.
+    private void waitHere () {
+
+	try {
+
+	    wait();
+
+	} catch (InterruptedException e) {
+
+	    throw new RuntimeException("Interrupted while multiplexing");
+
+	}
+
+    } // waitHere
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // One logical channel: to its network layer, a data link layer
+    // that queues what it is sent on the multiplexer, and that waits,
+    // when flushed, until the multiplexer has sent all it queued and
+    // flushed the link.  It never receives frames itself; the
+    // multiplexer passes it what arrives, and it reports the link's
+    // counts of frames received and discarded as its own.
+    private class Channel extends DataLinkLayer {
+
+	Channel (int id) {
+
+	    this.id = id;
+	    physicalLayer = link.physicalLayer;
+	    queue = new ArrayDeque<byte[]>();
+	    quantum = headerSize + segmentSize;
+
+	}
+
+	public void send (byte[] data) {
+
+	    enqueue(this, data);
+
+	}
+
+	public void flush () {
+
+	    Multiplexer.this.flush();
+
+	}
+
+	protected boolean receivedCompleteFrame () {
+
+	    return false;
+
+	}
+
+	protected byte[] processFrame () {
+
+	    return null;
+
+	}
+
+	final int id;
+
+	// The segments queued and their bytes, whether the channel is
+	// in the rotation, and its quantum and deficit, in bytes.
+	// Guarded by the multiplexer.
+	final ArrayDeque<byte[]> queue;
+	int queuedBytes;
+	boolean active;
+	int quantum;
+	int deficit;
+
+	// What the channel has sent and received.
+	long segmentsSent;
+	long bytesSent;
+	long segmentsReceived;
+	long bytesReceived;
+
+    } // class Channel
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // The client of the data link layer, which takes the pieces it
+    // delivers apart into segments.
+    private class Port extends NetworkLayer {
+
+	Port (DataLinkLayer link) {
+
+	    super(link);
+
+	}
+
+	void receive (byte[] data) {
+
+	    int i = 0;
+	    while (i < data.length) {
+
+		if (segment == null) {
+
+		    header[headerFilled++] = data[i++];
+		    if (headerFilled == headerSize) {
+
+			beginSegment();
+
+		    }
+
+		} else {
+
+		    int count = Math.min(segment.length - segmentFilled,
+					 data.length - i);
+		    System.arraycopy(data, i, segment, segmentFilled, count);
+		    segmentFilled += count;
+		    i += count;
+
+		}
+
+		if ((segment != null) && (segmentFilled == segment.length)) {
+
+		    endSegment();
+
+		}
+
+	    }
+
+	}
+
+	// With a whole header read, check it, and make room for the
+	// segment that follows.  If the header is not plausible, drop
+	// its first byte and go on reading.
+	void beginSegment () {
+
+	    int id = header[2] & 0xff;
+	    int length = ((header[3] & 0xff) << 8) | (header[4] & 0xff);
+	    if ((((header[0] & 0xff) << 8 | (header[1] & 0xff)) != magic) ||
+		(id >= channels.length) ||
+		(length > segmentSize)) {
+
+		System.arraycopy(header, 1, header, 0, headerSize - 1);
+		headerFilled = headerSize - 1;
+		synchronized (Multiplexer.this) {
+
+		    bytesSkipped++;
+
+		}
+		return;
+
+	    }
+
+	    headerFilled = 0;
+	    target = channels[id];
+	    segment = new byte[length];
+	    segmentFilled = 0;
+
+	}
+
+	// With a whole segment gathered, pass it to its channel's
+	// network layer.
+	void endSegment () {
+
+	    Channel channel = target;
+	    byte[] arrived = segment;
+	    target = null;
+	    segment = null;
+	    synchronized (Multiplexer.this) {
+
+		channel.segmentsReceived++;
+		channel.bytesReceived += arrived.length;
+
+	    }
+	    channel.framesReceived = link.framesReceived;
+	    channel.framesDiscarded = link.framesDiscarded;
+	    if (channel.client != null) {
+
+		channel.client.receive(arrived);
+
+	    }
+
+	}
+
+	// The header being read and the number of its bytes read so
+	// far; and the segment being gathered (or null, while a header
+	// is read), its channel, and the number of its bytes gathered.
+	final byte[] header = new byte[headerSize];
+	int headerFilled;
+	byte[] segment;
+	Channel target;
+	int segmentFilled;
+
+    } // class Port
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // DATA MEMBERS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // The layout of a header, the limit on the number of channels,
+    // the largest segment, and the most bytes a channel may queue.
+    static final int magic = 0x4d58;
+    static final int headerSize = 5;
+    static final int maxChannels = 256;
+    static final int segmentSize = 1024;
+    static final int queueLimit = 64 * 1024;
+
+    // The data link layer shared, the client that receives from it,
+    // and the channels.
+    final DataLinkLayer link;
+    final Port port;
+    final Channel[] channels;
+
+    // The channels with segments queued, in the order of their turns,
+    // whether the multiplexer has been closed, and the number of
+    // flushes asked for and answered.  Guarded by the multiplexer.
+    final ArrayDeque<Channel> active;
+    boolean closed;
+    long flushesRequested;
+    long flushesDone;
+
+    // The sending thread.
+    final Thread sender;
+
+    // The number of bytes received that began no plausible header.
+    long bytesSkipped;
+    // ===============================================================
+
+
+
+// ===================================================================
+} // class Multiplexer
+// ===================================================================
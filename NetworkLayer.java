@@ -6,10 +6,42 @@
 
 
 
+// ===================================================================
+// IMPORTS
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+// ===================================================================
+
+
+
 // ===================================================================
 // Currently, we use a network layer simply as a client of a data link
-// layer.  Thus, it exists simply to send and receive sample data and
-// display the results to the user.
+// layer.  Thus, it exists simply to send the messages of a Workload
+// (by default, a few sample strings), and to count (and, for the
+// samples, report as text to the current EventSink) what it receives.
+// If the workload asks for it, every message is tagged and checked
+// end to end by a DeliveryVerifier, compressed and expanded by a
+// Compressor, and split into fragments and reassembled by a
+// Fragmenter, so that it arrives whole however the data link layer
+// divides it.
+//
+// A network layer can also stream: it can send all that can be read
+// from a channel, and write all that it receives to another, holding
+// no more than a few fixed buffers whatever the size of the transfer.
+// The sender runs no further ahead of the receiver than the medium
+// allows: a medium that delivers as it sends holds nothing back; one
+// that hands off to another thread does so through bounded queues,
+// and makes the sender wait when they fill; and on one that keeps
+// time, the sender lets the clock run whenever it has sent a window's
+// worth of data since it last did.  A stream may be compressed too, in
+// larger pieces, if both ends are told to.
 class NetworkLayer {
 // ===================================================================
 
@@ -31,49 +63,415 @@ class NetworkLayer {
 	   // Keep a pointer to the data link layer.
 	this.dataLinkLayer = dataLinkLayer;
 
+	// Unless told otherwise, send the sample messages.
+	workload = new SampleWorkload();
+
     } // NetworkLayer
     // ===============================================================
 
 
 
     // ===============================================================
-    // Allow a client to send a string of bytes on the medium.
+    // Set the source of the messages that this layer sends, and that
+    // decides whether the messages it receives are printed, verified,
+    // and reassembled.
+    public void setWorkload (Workload workload) {
+
+	this.workload = workload;
+	verifier = (workload.verify() ? new DeliveryVerifier(this) : null);
+	fragmenter = (workload.fragmentSize() > 0 ?
+		      new Fragmenter(this, workload.fragmentSize()) :
+		      null);
+	compressor = (workload.compression() == null ?
+		      null :
+		      new Compressor(this,
+				     workload.compression(),
+				     workload.largestMessage() +
+				     (verifier == null ?
+				      0 :
+				      DeliveryVerifier.headerSize)));
+
+    } // setWorkload
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Compress what is sent, and expand what is received, by the
+    // method named (see Compressor), or not at all if it is null.
+    // This is for streams, whose pieces are of a fixed size; a
+    // workload names its own method.
+    public void setCompression (String method) {
+
+	compressor = (method == null ?
+		      null :
+		      new Compressor(this, method, compressedChunkSize));
+
+    } // setCompression
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Allow a client to send a string of bytes on the medium.  Send
+    // each message of the workload in turn until it is done.  On a
+    // medium that keeps time, a paced workload is paced in simulated
+    // time instead: each message is sent from an event at the moment
+    // it is due, and this method returns once the first is scheduled,
+    // leaving the rest to fire as the clock runs.
     public void send () {
 
-	   String[] messages = { "abc",
-		              	     "abd",
-			                 "The quick brown fox...",
-			                 "Does {}{} byte packing \\ work?" };
+	final EventScheduler scheduler =
+	    dataLinkLayer.physicalLayer.scheduler();
+	if ((scheduler != null) && workload.paced()) {
+
+	    workload.setScheduler(scheduler);
+	    scheduler.schedule(0, new Event() {
+
+		    public void fire () {
+
+			byte[] data = workload.next();
+			if (data == null) {
+
+			    dataLinkLayer.flush();
+			    return;
 
-	   for (int i = 0; i < messages.length; i++) {
+			}
+			sendMessage(data);
+			scheduler.scheduleAt(workload.due(), this);
 
-	       byte[] data = messages[i].getBytes();
-	       System.out.print("Network.send() message:    ");
-	       System.out.println(messages[i]);
-	       dataLinkLayer.send(data);
+		    }
 
-    	}
+		});
+	    return;
+
+	}
+
+	byte[] data;
+	while ((data = workload.next()) != null) {
+
+	    sendMessage(data);
+
+	}
+	dataLinkLayer.flush();
 
     } // send
     // ===============================================================
 
 
 
+    // ===============================================================
+    // Send everything that can be read from a channel or stream, in
+    // pieces of a fixed size, until its end.  Return the number of
+    // bytes sent.
+    public long send (ReadableByteChannel source) {
+
+	EventScheduler scheduler = dataLinkLayer.physicalLayer.scheduler();
+	ByteBuffer chunk = ByteBuffer.allocate(compressor == null ?
+					       chunkSize :
+					       compressedChunkSize);
+	long sent = 0;
+	long inFlight = 0;
+	boolean ended = false;
+	while (!ended) {
+
+	    // Fill the piece, unless the source ends first.
+	    chunk.clear();
+	    try {
+
+		while (chunk.hasRemaining() && !ended) {
+
+		    ended = (source.read(chunk) == -1);
+
+		}
+
+	    } catch (IOException e) {
+
+		throw new RuntimeException("Cannot read stream: " +
+					   e.getMessage());
+
+	    }
+	    if (chunk.position() == 0) {
+
+		break;
+
+	    }
+
+	    // The layers below copy what they send, so a full piece can be
+	    // sent straight from the buffer.
+	    byte[] data = (chunk.hasRemaining() ?
+			   Arrays.copyOf(chunk.array(), chunk.position()) :
+			   chunk.array());
+	    transmit(data);
+	    sent += data.length;
+
+	    // Let simulated time catch up, delivering what is pending,
+	    // before sending more than a window ahead.
+	    inFlight += data.length;
+	    if ((scheduler != null) && (inFlight >= window)) {
+
+		scheduler.run();
+		inFlight = 0;
+
+	    }
+
+	}
+	dataLinkLayer.flush();
+
+	return sent;
+
+    } // send
+
+    public long send (InputStream source) {
+
+	return send(Channels.newChannel(source));
+
+    } // send
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Write everything received from now on to a channel or stream,
+    // rather than counting and discarding it.  What arrives is gathered
+    // into a buffer of fixed size and written whenever it fills, or
+    // when flushed.
+    public void setSink (WritableByteChannel sink) {
+
+	this.sink = sink;
+	sinkBuffer = ByteBuffer.allocate(sinkBufferSize);
+
+    } // setSink
+
+    public void setSink (OutputStream sink) {
+
+	setSink(Channels.newChannel(sink));
+
+    } // setSink
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Set how far the sender may run ahead of simulated time, in
+    // bytes, on a medium that keeps time.
+    public void setWindow (long window) {
+
+	this.window = window;
+
+    } // setWindow
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Write out whatever has been gathered for the sink.
+    public void flush () {
+
+	if (sink == null) {
+
+	    return;
+
+	}
+
+	sinkBuffer.flip();
+	write(sinkBuffer);
+	sinkBuffer.clear();
+
+    } // flush
+    // ===============================================================
+
+
+
     // ===============================================================
     // Allow the data link layer to deliver an array of bytes to this
     // layer.
     void receive (byte[] data) {
 
-	   String message = new String(data);
+	messagesReceived++;
+	bytesReceived += data.length;
 
-	   System.out.print("Network.receive() message: ");
-	   System.out.println(message);
+	if (fragmenter != null) {
+
+	    fragmenter.receive(data);
+
+	} else {
+
+	    receiveMessage(data, 0, data.length);
+
+	}
 
     } // receive
     // ===============================================================
 
 
 
+    // ===============================================================
+    // Take a message, found in the given part of an array: the piece
+    // delivered by the data link layer, or the message reassembled
+    // from fragments.  Expand it, if the messages are compressed.
+    void receiveMessage (byte[] data, int offset, int length) {
+
+	if (compressor != null) {
+
+	    compressor.receive(data, offset, length);
+
+	} else {
+
+	    receiveExpanded(data, offset, length);
+
+	}
+
+    } // receiveMessage
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Take a message as it was sent, found in the given part of an
+    // array.  Write it to the sink, if streaming, and otherwise verify
+    // it, if the messages are verified.
+    void receiveExpanded (byte[] data, int offset, int length) {
+
+	if (sink != null) {
+
+	    if (length > sinkBuffer.remaining()) {
+
+		flush();
+
+	    }
+	    if (length > sinkBuffer.remaining()) {
+
+		write(ByteBuffer.wrap(data, offset, length));
+
+	    } else {
+
+		sinkBuffer.put(data, offset, length);
+
+	    }
+
+	} else if (verifier != null) {
+
+	    verifier.receive(data, offset, length);
+
+	} else {
+
+	    receiveVerified(data, offset, length);
+
+	}
+
+    } // receiveExpanded
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Report a message received, found in the given part of an array.
+    // The verifier, if any, calls this for each message that arrived
+    // intact.
+    void receiveVerified (byte[] data, int offset, int length) {
+
+	if (workload.echo()) {
+
+	    EventSink.current().event(EventSink.messageReceived,
+				      "Network.receive() message: ",
+				      data, offset, length, null);
+
+	} else {
+
+	    EventSink.current().event(EventSink.messageReceived);
+
+	}
+
+    } // receiveVerified
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // PRIVATE METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Send one message of the workload, reporting it and tagging it
+    // first if asked to.
+    private void sendMessage (byte[] data) {
+
+	if (workload.echo()) {
+
+	    EventSink.current().event(EventSink.messageSent,
+				      "Network.send() message:    ",
+				      data, 0, data.length, null);
+
+	} else {
+
+	    EventSink.current().event(EventSink.messageSent);
+
+	}
+	if (verifier != null) {
+
+	    data = verifier.tag(data);
+
+	}
+	transmit(data);
+
+    } // sendMessage
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Pass a message down: compress it, if the messages are
+    // compressed, and then fragment it, if they are fragmented.
+    private void transmit (byte[] data) {
+
+	if (compressor != null) {
+
+	    data = compressor.compress(data);
+
+	}
+	if (fragmenter != null) {
+
+	    fragmenter.send(data);
+
+	} else {
+
+	    dataLinkLayer.send(data);
+
+	}
+
+    } // transmit
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Write all of a buffer to the sink, waiting as long as the sink
+    // makes us.
+    private void write (ByteBuffer buffer) {
+
+	try {
+
+	    while (buffer.hasRemaining()) {
+
+		sink.write(buffer);
+
+	    }
+
+	} catch (IOException e) {
+
+	    throw new RuntimeException("Cannot write stream: " +
+				       e.getMessage());
+
+	}
+
+    } // write
+    // ===============================================================
+
+
+
     // ===============================================================
     // DATA MEMBERS
     // ===============================================================
@@ -83,6 +481,38 @@ class NetworkLayer {
     // ===============================================================
     // The medium to which this layer is connected.
     DataLinkLayer dataLinkLayer;
+
+    // The source of the messages to send, and the verifier of the
+    // messages sent and received, if they are verified.
+    Workload workload;
+    DeliveryVerifier verifier;
+
+    // The fragmenter of the messages sent and received, if they are
+    // fragmented.
+    Fragmenter fragmenter;
+
+    // The compressor of the messages sent and received, if they are
+    // compressed.
+    Compressor compressor;
+
+    // The number of messages (that is, pieces delivered by the data
+    // link layer) and bytes received.
+    long messagesReceived;
+    long bytesReceived;
+
+    // When streaming, where received data is written, and the buffer
+    // in which it is gathered first.
+    WritableByteChannel sink;
+    ByteBuffer sinkBuffer;
+
+    // The size of the pieces in which a stream is sent (larger if it
+    // is compressed, so that the compressor has more to work with), of
+    // the buffer gathered for the sink, and of the window that the
+    // sender may run ahead of simulated time.
+    long window = 64 * 1024;
+    static final int chunkSize = 1024;
+    static final int compressedChunkSize = 64 * 1024;
+    static final int sinkBufferSize = 64 * 1024;
     // ===============================================================
 
 
@@ -0,0 +1,40 @@
+// ===================================================================
+// NullEventSink
+// ===================================================================
+
+
+
+// ===================================================================
+// A sink that discards every event.
+class NullEventSink extends EventSink {
+// ===================================================================
+
+
+
+    // ===============================================================
+    // PUBLIC METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // The constructor.
+    public NullEventSink () {
+
+    } // NullEventSink
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Discard an event.
+    public void event (String kind) {
+
+    } // event
+    // ===============================================================
+
+
+
+// ===================================================================
+} // class NullEventSink
+// ===================================================================
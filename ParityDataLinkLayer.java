@@ -192,7 +192,8 @@ public class ParityDataLinkLayer extends DataLinkLayer {
 	int frameIndex = 0;
 	if (incomingBuffer[frameIndex++] != _startTag) {
 
-	    System.err.println("ParityDLL: Missing start tag!");
+	    EventSink.current().event(EventSink.missingStartTag,
+				      "ParityDLL: Missing start tag!");
 	    return null;
 
 	}
@@ -229,13 +230,16 @@ public class ParityDataLinkLayer extends DataLinkLayer {
 	byte parity = calculateParity(originalData, 0, originalIndex);
 	if (parity != incomingBuffer[frameIndex]) {
 
-	    System.err.print("ParityDLL message: ");
-	    for (int i = 0; i < finalData.length; i++) {
-		System.err.print((char)finalData[i]);
-	    }
-	    System.err.println(" <= Parity mismatch!");
+	    EventSink.current().event(EventSink.frameRejected,
+				      "ParityDLL message: ",
+				      finalData, 0, finalData.length,
+				      " <= Parity mismatch!");
 	    finalData = null;
 
+	} else {
+
+	    EventSink.current().event(EventSink.frameAccepted);
+
 	}
 
 	return finalData;
@@ -69,6 +69,7 @@ class PerfectMedium extends Medium {
 
 	// Deliver the bit to the receiver by performing an upcall to
 	// it.
+	bitsCarried++;
 	receiver.receive(bit);
 
     } // send
@@ -76,6 +77,35 @@ class PerfectMedium extends Medium {
 
 
 
+    // ===============================================================
+    // Allow a client to send a block of bytes to the other client.
+    // Nothing is altered in transit, so the block is passed along
+    // as it is.
+    public void send (PhysicalLayer sender, byte[] data) {
+
+	PhysicalLayer receiver = null;
+	if (client1 == sender) {
+
+	    receiver = client2;
+
+	} else if (client2 == sender) {
+
+	    receiver = client1;
+
+	} else {
+
+	    throw new RuntimeException();
+
+	}
+
+	bitsCarried += (long)data.length * 8;
+	receiver.receive(data);
+
+    } // send
+    // ===============================================================
+
+
+
     // ===============================================================
     // DATA MEMBERS
     // ===============================================================
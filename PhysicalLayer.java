@@ -7,8 +7,8 @@
 
 
 // ===================================================================
-// A physical layer transmits an arbitrary string of bytes.  All
-// objects of this class share a single medium.
+// A physical layer transmits an arbitrary string of bytes over the
+// medium to which it is connected.
 class PhysicalLayer {
 // ===================================================================
 
@@ -26,20 +26,9 @@ class PhysicalLayer {
 	// Attempt to register with the medium as a client.
 	medium.register(this);
 
-	// Keep a pointer to the medium (if one isn't already held
-	// thanks to another PhysicalLayer object).
-	if (PhysicalLayer.medium == null) {
-
-	    PhysicalLayer.medium = medium;
-
-	}
-
-	// Sanity check
-	if (PhysicalLayer.medium != medium) {
-
-	    throw new RuntimeException();
-
-	}
+	// Keep a pointer to the medium.  Each physical layer has its
+	// own, so that one program may hold several media at once.
+	this.medium = medium;
 
 	// Initialize the incoming buffer.
 	bitsReceived = 0;
@@ -70,24 +59,24 @@ class PhysicalLayer {
 
 
     // ===============================================================
-    // Allow a client to send a string of bytes on the medium.
-    void send (byte[] outgoingBuffer) {
+    // Return the scheduler that keeps time for the medium, or null
+    // if it keeps none.
+    EventScheduler scheduler () {
 
-	// Send each byte.
-	for (int i = 0; i < outgoingBuffer.length; i++) {
+	return medium.scheduler();
 
-	    // Send each bit from the current byte.
-	    int currentByte = outgoingBuffer[i];
+    } // scheduler
+    // ===============================================================
 
-	    for (int j = 0; j < 8; j++) {
 
-		byte value = (byte)((currentByte >>> j) & 0x1);
-		boolean bit = (value == 0x1);
-		medium.send(this, bit);
 
-	    }
+    // ===============================================================
+    // Allow a client to send a string of bytes on the medium.  The
+    // whole string is handed over at once; the medium still carries
+    // each byte as eight bits, least significant first.
+    void send (byte[] outgoingBuffer) {
 
-	}
+	medium.send(this, outgoingBuffer);
 
     } // send
     // ===============================================================
@@ -105,11 +94,21 @@ class PhysicalLayer {
 	incomingBuffer = (shiftedBuffer | shiftedValue);
 	bitsReceived++;
 
-	// If the buffer is full, deliver it to the client.
+	// If the buffer is full, deliver it to the client, with the soft
+	// values of its bits if every one came with one.
 	if (bitsReceived == bufferSize) {
 
-	    client.receive((byte)incomingBuffer);
+	    if (softReceived == bufferSize) {
+
+		client.receive((byte)incomingBuffer, incomingSoft, 0);
+
+	    } else {
+
+		client.receive((byte)incomingBuffer);
+
+	    }
 	    bitsReceived = 0;
+	    softReceived = 0;
 
 	}
 
@@ -118,6 +117,99 @@ class PhysicalLayer {
 
 
 
+    // ===============================================================
+    // Allow the medium to deliver a bit into this layer's buffer along
+    // with its soft value.  Unless the client keeps soft values, the
+    // bit is taken as it is.
+    void receive (boolean bit, byte soft) {
+
+	if ((client != null) && (client.incomingSoft != null)) {
+
+	    incomingSoft[bitsReceived] = soft;
+	    softReceived++;
+
+	}
+	receive(bit);
+
+    } // receive (boolean bit, byte soft)
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Allow the medium to deliver a block of bytes into this layer.
+    // When no partial byte is buffered, each byte can go straight to
+    // the client; otherwise the bits must be shifted in one by one.
+    void receive (byte[] data) {
+
+	if (bitsReceived != 0) {
+
+	    for (int i = 0; i < data.length; i++) {
+
+		int currentByte = data[i];
+		for (int j = 0; j < 8; j++) {
+
+		    receive(((currentByte >>> j) & 0x1) == 0x1);
+
+		}
+
+	    }
+	    return;
+
+	}
+
+	for (int i = 0; i < data.length; i++) {
+
+	    client.receive(data[i]);
+
+	}
+
+    } // receive
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Allow the medium to deliver a block of bytes into this layer
+    // along with a soft value for each bit, eight to a byte in the
+    // order they were carried.  Unless the client keeps soft values,
+    // they are dropped, and the block is delivered as above.
+    void receive (byte[] data, byte[] soft) {
+
+	if ((client == null) || (client.incomingSoft == null)) {
+
+	    receive(data);
+	    return;
+
+	}
+
+	if (bitsReceived != 0) {
+
+	    for (int i = 0; i < data.length; i++) {
+
+		int currentByte = data[i];
+		for (int j = 0; j < 8; j++) {
+
+		    receive(((currentByte >>> j) & 0x1) == 0x1, soft[8 * i + j]);
+
+		}
+
+	    }
+	    return;
+
+	}
+
+	for (int i = 0; i < data.length; i++) {
+
+	    client.receive(data[i], soft, 8 * i);
+
+	}
+
+    } // receive (byte[] data, byte[] soft)
+    // ===============================================================
+
+
+
     // ===============================================================
     // DATA MEMBERS
     // ===============================================================
@@ -126,7 +218,7 @@ class PhysicalLayer {
 
     // ===============================================================
     // The medium to which this layer is connected.
-    static Medium medium;
+    Medium medium;
 
     // The data link layer above this physical layer.
     DataLinkLayer client;
@@ -140,6 +232,11 @@ class PhysicalLayer {
     // The number of bits received so far into the incoming buffer.
     int bitsReceived;
 
+    // The soft values of the bits in the incoming buffer, in the
+    // order received, and the number of them received so far.
+    final byte[] incomingSoft = new byte[8];
+    int softReceived;
+
     // The size of the buffer (in bits).
     final int bufferSize = 8;
     // ===============================================================
@@ -0,0 +1,143 @@
+// ===================================================================
+// RandomWorkload
+// ===================================================================
+
+
+
+// ===================================================================
+// IMPORTS
+
+import java.util.SplittableRandom;
+// ===================================================================
+
+
+
+// ===================================================================
+// A workload of messages of random bytes, whose sizes are drawn from
+// a SizeDistribution.  Beyond the options common to all workloads, it
+// understands:
+//
+//   size=<distribution>  the distribution of sizes (fixed/64 unless
+//                        told otherwise)
+//   seed=<number>        the seed for the sizes and contents
+//
+// Unless a number of messages or bytes is given, it stops after a
+// mebibyte.
+class RandomWorkload extends Workload {
+// ===================================================================
+
+
+
+    // ===============================================================
+    // PUBLIC METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // The constructors.
+    public RandomWorkload () {
+
+	this("");
+
+    } // RandomWorkload
+
+    public RandomWorkload (String options) {
+
+	sizes = new SizeDistribution("fixed/64");
+	random = new SplittableRandom();
+	if (options.length() > 0) {
+
+	    parseOptions(options);
+
+	}
+	if ((volume == Long.MAX_VALUE) && (messageLimit == Long.MAX_VALUE)) {
+
+	    volume = defaultVolume;
+
+	}
+
+    } // RandomWorkload
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Return the most bytes that any one message may hold: the
+    // largest size drawn.
+    public int largestMessage () {
+
+	return sizes.most;
+
+    } // largestMessage
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // PRIVATE METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Draw a size, cut it to what remains, and fill a message of that
+    // size with random bytes.
+    protected byte[] generate (long remaining) {
+
+	byte[] message = new byte[(int)Math.min(sizes.draw(random),
+						remaining)];
+	random.nextBytes(message);
+	return message;
+
+    } // generate
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Handle the size and seed options.
+    protected boolean option (String name, String value) {
+
+	if (value == null) {
+
+	    return false;
+
+	} else if (name.equals("size")) {
+
+	    sizes = new SizeDistribution(value);
+	    return true;
+
+	} else if (name.equals("seed")) {
+
+	    random = new SplittableRandom(Long.parseLong(value));
+	    return true;
+
+	}
+	return false;
+
+    } // option
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // DATA MEMBERS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // The distribution of sizes, and the source of sizes and bytes.
+    SizeDistribution sizes;
+    SplittableRandom random;
+
+    // The number of bytes sent unless told otherwise.
+    static final long defaultVolume = 1L << 20;
+    // ===============================================================
+
+
+
+// ===================================================================
+} // class RandomWorkload
+// ===================================================================
@@ -0,0 +1,297 @@
+// ===================================================================
+// RecordingMedium
+// ===================================================================
+
+
+
+// ===================================================================
+// IMPORTS
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+// ===================================================================
+
+
+
+// ===================================================================
+// A medium that wraps another point-to-point medium and records, in
+// a trace file, the position of every bit that the other medium
+// flips.  Positions count every bit carried, in both directions, in
+// the order sent, just as a ReplayMedium counts them when it later
+// applies exactly the same errors, so that different data link layers
+// can be compared on the same channel.
+//
+// Each client is connected to the wrapped medium through a tap: a
+// physical layer of our own that compares what arrives with what was
+// sent to it before passing it on to the real client.  The wrapped
+// medium must be point-to-point, and must deliver what is sent whole,
+// exactly once, and as it is sent, as every point-to-point medium
+// here does; one that keeps a clock could deliver in another order,
+// so it is refused.
+class RecordingMedium extends WrappingMedium {
+// ===================================================================
+
+
+
+    // ===============================================================
+    // PUBLIC METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // The constructors.  By default, the trace is written to
+    // errors.trace in the current directory.
+    public RecordingMedium (Medium medium) {
+
+	this(medium, defaultTracePath);
+
+    } // RecordingMedium
+
+    public RecordingMedium (Medium medium, String tracePath) {
+
+	super(medium);
+	if (medium.scheduler() != null) {
+
+	    throw new RuntimeException("Recording needs a medium that " +
+				       "delivers as it sends: " +
+				       medium.getClass().getName());
+
+	}
+	trace = new ErrorTraceWriter(tracePath);
+	taps = new ArrayList<Tap>();
+
+    } // RecordingMedium
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Register one of the two allowed clients by giving it a tap on
+    // the wrapped medium.
+    public void register (PhysicalLayer client) {
+
+	if (taps.size() == 2) {
+
+	    throw new RuntimeException();
+
+	}
+	taps.add(new Tap(medium, client));
+
+    } // register
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Allow a client to send a bit through its tap, noting it, and its
+    // position, at the other end.
+    public void send (PhysicalLayer sender, boolean bit) {
+
+	Tap tap = tapOf(sender);
+	peerOf(tap).inFlight.add(new Sent(null, bit, position));
+	position++;
+	medium.send(tap, bit);
+
+    } // send
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Allow a client to send a block of bytes through its tap, noting
+    // it, and the position of its first bit, at the other end.
+    public void send (PhysicalLayer sender, byte[] data) {
+
+	Tap tap = tapOf(sender);
+	peerOf(tap).inFlight.add(new Sent(data, false, position));
+	position += (long)data.length * 8;
+	medium.send(tap, data);
+
+    } // send
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Let the wrapped medium finish, then complete the trace.
+    public void finish () {
+
+	medium.finish();
+	trace.close(position);
+	System.out.println("Recording: " + trace.flips() + " flips in " +
+			   position + " bits");
+
+    } // finish
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // PRIVATE METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Find the tap for a client.  Send only if the sender is a known
+    // client.
+    private Tap tapOf (PhysicalLayer client) {
+
+	for (int i = 0; i < taps.size(); i++) {
+
+	    if (taps.get(i).client == client) {
+
+		return taps.get(i);
+
+	    }
+
+	}
+
+	throw new RuntimeException();
+
+    } // tapOf
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Find the tap at the other end of the wire from the given one.
+    private Tap peerOf (Tap tap) {
+
+	if (taps.size() != 2) {
+
+	    throw new RuntimeException("Recording needs two clients");
+
+	}
+	return taps.get(taps.get(0) == tap ? 1 : 0);
+
+    } // peerOf
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Take what was sent to a tap first and has not yet arrived,
+    // which must be of the same kind and size as what has.
+    private static Sent arrived (Tap tap, byte[] data) {
+
+	Sent sent = tap.inFlight.poll();
+	if ((sent == null) ||
+	    ((sent.data == null) != (data == null)) ||
+	    ((data != null) && (data.length != sent.data.length))) {
+
+	    throw new RuntimeException("Recording: the wrapped medium " +
+				       "delivered what was not sent");
+
+	}
+	return sent;
+
+    } // arrived
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // A physical layer attached to the wrapped medium on behalf of a
+    // client.  What the wrapped medium delivers to it is compared with
+    // what was sent, and then handed to the client.
+    private class Tap extends PhysicalLayer {
+
+	Tap (Medium medium, PhysicalLayer client) {
+
+	    super(medium);
+	    this.client = client;
+
+	}
+
+	void receive (boolean bit) {
+
+	    Sent sent = arrived(this, null);
+	    if (bit != sent.bit) {
+
+		trace.flip(sent.position);
+
+	    }
+	    client.receive(bit);
+
+	}
+
+	void receive (byte[] data) {
+
+	    Sent sent = arrived(this, data);
+	    if (data != sent.data) {
+
+		for (int i = 0; i < data.length; i++) {
+
+		    int difference = (data[i] ^ sent.data[i]) & 0xff;
+		    while (difference != 0) {
+
+			int bit = Integer.numberOfTrailingZeros(difference);
+			trace.flip(sent.position + (i * 8) + bit);
+			difference &= (difference - 1);
+
+		    }
+
+		}
+
+	    }
+	    client.receive(data);
+
+	}
+
+	final PhysicalLayer client;
+
+	// What has been sent to this tap but not yet delivered, in the
+	// order sent.
+	final ArrayDeque<Sent> inFlight = new ArrayDeque<Sent>();
+
+    } // class Tap
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // A block (or, with no block, a bit) sent to a tap, and the
+    // position of its first bit.
+    private static class Sent {
+
+	Sent (byte[] data, boolean bit, long position) {
+
+	    this.data = data;
+	    this.bit = bit;
+	    this.position = position;
+
+	}
+
+	final byte[] data;
+	final boolean bit;
+	final long position;
+
+    } // class Sent
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // DATA MEMBERS
+    // ===============================================================
+
+
+    // ===============================================================
+    // The trace file used when none is named.
+    static final String defaultTracePath = "errors.trace";
+
+    // The trace being written, and the tap for each client.
+    final ErrorTraceWriter trace;
+    final ArrayList<Tap> taps;
+
+    // The number of bits sent so far.
+    long position;
+    // ===============================================================
+
+
+
+// ===================================================================
+} // class RecordingMedium
+// ===================================================================
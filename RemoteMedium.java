@@ -0,0 +1,145 @@
+// ===================================================================
+// RemoteMedium
+// ===================================================================
+
+
+
+// ===================================================================
+// A medium that connects the one host in this program to a host in
+// another program.  Only one physical layer may register, and the
+// medium tells the simulator which of the two hosts it is: host 0
+// sends and host 1 receives.
+//
+// Subclasses carry blocks of bytes to the other program and deliver
+// what arrives from it.  Lone bits are packed into bytes here, in the
+// order in which the physical layer would send them, so that the
+// peer can deliver them as whole bytes.
+abstract class RemoteMedium extends Medium {
+// ===================================================================
+
+
+
+    // ===============================================================
+    // PUBLIC METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // The constructor.  Note which host this program runs.
+    protected RemoteMedium (int localHost) {
+
+	this.localHost = localHost;
+
+    } // RemoteMedium
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Register the one local client.
+    public void register (PhysicalLayer client) {
+
+	if (this.client != null) {
+
+	    throw new RuntimeException();
+
+	}
+	this.client = client;
+
+    } // register
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Allow the client to send a bit, which is held until a whole
+    // byte has been gathered.
+    public void send (PhysicalLayer sender, boolean bit) {
+
+	if (sender != client) {
+
+	    throw new RuntimeException();
+
+	}
+
+	if (bit) {
+
+	    pendingByte |= (1 << pendingBits);
+
+	}
+	pendingBits++;
+
+	if (pendingBits == 8) {
+
+	    byte[] packed = { (byte)pendingByte };
+	    pendingByte = 0;
+	    pendingBits = 0;
+	    send(sender, packed);
+
+	}
+
+    } // send
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Return the index of the host that this program runs.
+    public int localHost () {
+
+	return localHost;
+
+    } // localHost
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // PROTECTED METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Print how much was carried each way, and how fast.
+    protected void report (String name) {
+
+	double seconds = (System.nanoTime() - startTime) / 1.0e9;
+	System.out.println(name + ": " + bytesSent + " bytes sent, " +
+			   bytesReceived + " received in " + seconds +
+			   " seconds (" +
+			   ((bytesSent + bytesReceived) * 8 / seconds) +
+			   " b/s)");
+
+    } // report
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // DATA MEMBERS
+    // ===============================================================
+
+
+    // ===============================================================
+    // The local client, and the index of its host.
+    PhysicalLayer client;
+    final int localHost;
+
+    // Bits sent on their own, gathered until they fill a byte.
+    int pendingByte;
+    int pendingBits;
+
+    // The bytes carried so far in each direction, and when the
+    // medium came up.
+    long bytesSent;
+    long bytesReceived;
+    long startTime = System.nanoTime();
+    // ===============================================================
+
+
+
+// ===================================================================
+} // class RemoteMedium
+// ===================================================================
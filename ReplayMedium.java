@@ -0,0 +1,208 @@
+// ===================================================================
+// ReplayMedium
+// ===================================================================
+
+
+
+// ===================================================================
+// A point-to-point medium that flips exactly the bits listed in a
+// trace recorded by a RecordingMedium, counting positions over every
+// bit carried, in both directions, in the order sent.  Past the end
+// of the trace, no more bits flip.
+//
+// The trace is streamed from a memory mapping as the simulation
+// proceeds, so traces far larger than the heap can be replayed, and
+// several runs can share one trace at no cost in memory.
+class ReplayMedium extends Medium {
+// ===================================================================
+
+
+
+    // ===============================================================
+    // PUBLIC METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // The constructors.  By default, the trace is read from
+    // errors.trace in the current directory.
+    public ReplayMedium () {
+
+	this(RecordingMedium.defaultTracePath);
+
+    } // ReplayMedium
+
+    public ReplayMedium (String tracePath) {
+
+	trace = new ErrorTraceReader(tracePath);
+
+    } // ReplayMedium
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Register one of the two allowed clients as connected to an end
+    // of the medium.
+    public void register (PhysicalLayer client) {
+
+	// If there is an end of the wire available, then assign this
+	// client to it.
+	if (client1 == null) {
+
+	    client1 = client;
+
+	} else if (client2 == null) {
+
+	    client2 = client;
+
+	} else {
+
+	    throw new RuntimeException();
+
+	}
+
+    } // register
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Allow a client to send a bit to the other client, flipping it
+    // if the trace says so.
+    public void send (PhysicalLayer sender, boolean bit) {
+
+	PhysicalLayer receiver = peerOf(sender);
+
+	if (trace.peek() == position) {
+
+	    trace.next();
+	    bit = !bit;
+	    flipsApplied++;
+
+	}
+	position++;
+
+	receiver.receive(bit);
+
+    } // send
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Allow a client to send a block of bytes to the other client,
+    // flipping the bits that the trace lists within the block.  The
+    // block is copied only if some bit in it flips.
+    public void send (PhysicalLayer sender, byte[] data) {
+
+	PhysicalLayer receiver = peerOf(sender);
+
+	byte[] delivered = data;
+	long end = position + ((long)data.length * 8);
+	while (trace.peek() < end) {
+
+	    long offset = trace.next() - position;
+	    if (delivered == data) {
+
+		delivered = data.clone();
+
+	    }
+	    delivered[(int)(offset >>> 3)] ^= (byte)(1 << (offset & 7));
+	    flipsApplied++;
+
+	}
+	position = end;
+
+	receiver.receive(delivered);
+
+    } // send
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Report what the medium has carried and flipped.
+    public long bitsCarried () {
+
+	return position;
+
+    } // bitsCarried
+
+    public long bitsFlipped () {
+
+	return flipsApplied;
+
+    } // bitsFlipped
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Close the trace and report on what was replayed.
+    public void finish () {
+
+	trace.close();
+	System.out.println("Replay: " + flipsApplied + " of " +
+			   trace.flips() + " flips applied in " +
+			   position + " bits (trace covers " +
+			   trace.bitsCovered() + ")");
+
+    } // finish
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // PRIVATE METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Determine who the receiver is.  Send only if the sender is a
+    // known client.
+    private PhysicalLayer peerOf (PhysicalLayer sender) {
+
+	if (client1 == sender) {
+
+	    return client2;
+
+	} else if (client2 == sender) {
+
+	    return client1;
+
+	} else {
+
+	    throw new RuntimeException();
+
+	}
+
+    } // peerOf
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // DATA MEMBERS
+    // ===============================================================
+
+
+    // ===============================================================
+    // The two physical layer clients on either end of the wire.
+    PhysicalLayer client1;
+    PhysicalLayer client2;
+
+    // The trace being replayed, the number of bits carried so far,
+    // and the number of flips applied.
+    final ErrorTraceReader trace;
+    long position;
+    long flipsApplied;
+    // ===============================================================
+
+
+
+// ===================================================================
+} // class ReplayMedium
+// ===================================================================
@@ -0,0 +1,348 @@
+// ===================================================================
+// Route
+// ===================================================================
+
+
+
+// ===================================================================
+// IMPORTS
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+// ===================================================================
+
+
+
+// ===================================================================
+// Send packets along a chain of links, from a host through routers to
+// another host, and measure the end-to-end throughput and latency as
+// the number of hops grows.
+//
+// A chain of n hops has n + 1 nodes, addressed 0 to n, each a
+// RoutingNetworkLayer; node i is joined to node i + 1 by a link with
+// a medium and pair of data link layers of its own.  Each node routes
+// the addresses below its own to its left and those above to its
+// right.  Node 0 sends random packets to node n on a thread of its
+// own, and every other node takes what arrives from its left link on
+// a thread of its own, through a HandOffMedium, and forwards it (or,
+// at node n, delivers it).  The routers thus forward in a pipeline,
+// each at work on a different packet, and a router that falls behind
+// makes the one before it wait.
+//
+// As with a Fleet, the medium named must deliver as it sends and keep
+// no clock, and what the layers print is discarded.
+class Route {
+// ===================================================================
+
+
+
+    // ===============================================================
+    // PUBLIC METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // The entry point.  The hop counts are separated by commas, and a
+    // chain of each length is run in turn.
+    public static void main (String[] args) {
+
+	if ((args.length < 3) || (args.length > 6)) {
+
+	    System.err.println("Usage: java Route " +
+			       "<medium type> " +
+			       "<data link layer type> " +
+			       "<hop counts> " +
+			       "[<packets> [<packet size> [<seed>]]]");
+	    System.exit(1);
+
+	}
+
+	String mediumType = args[0];
+	String dataLinkLayerType = args[1];
+	String[] hopCounts = args[2].split(",");
+	int packets = (args.length > 3 ? Integer.parseInt(args[3]) : 1000);
+	int size = (args.length > 4 ? Integer.parseInt(args[4]) : 256);
+	long seed = (args.length > 5 ?
+		     Long.parseLong(args[5]) :
+		     System.nanoTime());
+
+	PrintStream results = System.out;
+	PrintStream errors = System.err;
+	results.println("Route: " + packets + " packets of " + size +
+			" bytes, seed " + seed);
+	results.println(String.format("%5s %10s %10s %10s %9s %9s %14s " +
+				       "%12s %12s",
+				       "hops", "delivered", "dropped",
+				       "damaged", "failures", "seconds", "b/s",
+				       "mean (s)", "max (s)"));
+
+	SplittableRandom random = new SplittableRandom(seed);
+	try {
+
+	    System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+	    System.setErr(System.out);
+	    for (int i = 0; i < hopCounts.length; i++) {
+
+		results.println(run(mediumType,
+				    dataLinkLayerType,
+				    Integer.parseInt(hopCounts[i]),
+				    packets,
+				    size,
+				    random.split()));
+
+	    }
+
+	} finally {
+
+	    System.setOut(results);
+	    System.setErr(errors);
+
+	}
+
+    } // main
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // PRIVATE METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Build a chain of the given number of hops, send the packets
+    // along it, and return a line of results.
+    private static String run (String mediumType,
+			       String dataLinkLayerType,
+			       int hops,
+			       final int packets,
+			       final int size,
+			       final SplittableRandom random) {
+
+	if (hops < 1) {
+
+	    throw new RuntimeException("A chain needs at least one hop");
+
+	}
+
+	// Build the nodes, and a link between each pair of neighbors.
+	final RoutingNetworkLayer[] nodes = new RoutingNetworkLayer[hops + 1];
+	for (int i = 0; i <= hops; i++) {
+
+	    nodes[i] = new RoutingNetworkLayer(i);
+
+	}
+	final Link[] links = new Link[hops];
+	for (int i = 0; i < hops; i++) {
+
+	    links[i] = new Link(mediumType,
+				dataLinkLayerType,
+				random.split(),
+				nodes[i],
+				nodes[i + 1]);
+
+	}
+
+	// Route each address through the neighbor on its side.
+	for (int i = 0; i <= hops; i++) {
+
+	    for (int j = 0; j <= hops; j++) {
+
+		if (j < i) {
+
+		    nodes[i].addRoute(j, links[i - 1].rightInterface);
+
+		} else if (j > i) {
+
+		    nodes[i].addRoute(j, links[i].leftInterface);
+
+		}
+
+	    }
+
+	}
+
+	// Start the sending host and a thread for every other node.
+	final CountDownLatch startGate = new CountDownLatch(1);
+	final long[] failures = new long[hops + 1];
+	Thread[] threads = new Thread[hops + 1];
+	threads[0] = Fleet.startHost("Node 0", new Runnable() {
+
+		public void run () {
+
+		    Fleet.awaitStart(startGate);
+		    byte[] payload = new byte[size];
+		    for (int p = 0; p < packets; p++) {
+
+			random.nextBytes(payload);
+			nodes[0].send(nodes.length - 1, payload);
+
+		    }
+		    nodes[0].flush();
+		    links[0].endOfStream();
+
+		}
+
+	    });
+	for (int i = 1; i <= hops; i++) {
+
+	    final int node = i;
+	    threads[i] = Fleet.startHost("Node " + i, new Runnable() {
+
+		    public void run () {
+
+			Fleet.awaitStart(startGate);
+			failures[node] = links[node - 1].deliverAll();
+			nodes[node].flush();
+			if (node < links.length) {
+
+			    links[node].endOfStream();
+
+			}
+
+		    }
+
+		});
+
+	}
+
+	long start = System.nanoTime();
+	startGate.countDown();
+	for (int i = 0; i < threads.length; i++) {
+
+	    try {
+
+		threads[i].join();
+
+	    } catch (InterruptedException e) {
+
+		throw new RuntimeException("Interrupted while waiting for " +
+					   threads[i].getName());
+
+	    }
+
+	}
+	double seconds = (System.nanoTime() - start) / 1.0e9;
+
+	long dropped = 0;
+	long damaged = 0;
+	long failed = 0;
+	for (int i = 0; i <= hops; i++) {
+
+	    dropped += nodes[i].packetsDropped;
+	    damaged += nodes[i].packetsDamaged;
+	    failed += failures[i];
+
+	}
+	for (int i = 0; i < hops; i++) {
+
+	    links[i].medium.finish();
+
+	}
+
+	RoutingNetworkLayer destination = nodes[hops];
+	return String.format("%5d %10d %10d %10d %9d %9.3f %14.4e " +
+			     "%12.4e %12.4e",
+			     hops,
+			     destination.packetsDelivered,
+			     dropped,
+			     damaged,
+			     failed,
+			     seconds,
+			     destination.bytesDelivered * 8 / seconds,
+			     destination.meanLatency(),
+			     destination.maxLatency());
+
+    } // run
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // A link between two neighboring nodes: a medium of its own, with
+    // a data link layer at each end attached to an interface of each
+    // node.  Packets travel along it from left to right.
+    private static class Link {
+
+	Link (String mediumType,
+	      String dataLinkLayerType,
+	      SplittableRandom random,
+	      RoutingNetworkLayer left,
+	      RoutingNetworkLayer right) {
+
+	    Medium inner = Simulator.createMedium(mediumType);
+	    if ((inner.localHost() != -1) ||
+		inner.fullDuplex() ||
+		(inner.scheduler() != null)) {
+
+		throw new RuntimeException("Route needs a medium that " +
+					   "delivers as it sends: " +
+					   mediumType);
+
+	    }
+	    inner.setRandom(random);
+	    medium = new HandOffMedium(inner);
+
+	    physicalLayers = Simulator.createPhysicalLayers(medium, 2);
+	    dataLinkLayers =
+		Simulator.createDataLinkLayers(dataLinkLayerType,
+					       physicalLayers);
+	    leftInterface = left.attach(dataLinkLayers[0]);
+	    rightInterface = right.attach(dataLinkLayers[1]);
+
+	}
+
+	// Tell the right end that the left will send no more.
+	void endOfStream () {
+
+	    medium.endOfStream(physicalLayers[0]);
+
+	}
+
+	// Deliver what arrives at the right end until the stream ends,
+	// and then whatever the data link layer held back.  If the data
+	// link layer chokes on a damaged frame, drop what it had
+	// buffered and carry on.  Return the number of times it choked.
+	long deliverAll () {
+
+	    long failures = 0;
+	    while (true) {
+
+		try {
+
+		    if (!medium.deliverNext(physicalLayers[1])) {
+
+			dataLinkLayers[1].flush();
+			return failures;
+
+		    }
+
+		} catch (RuntimeException e) {
+
+		    dataLinkLayers[1].bufferIndex = 0;
+		    failures++;
+
+		}
+
+	    }
+
+	}
+
+	final HandOffMedium medium;
+	final PhysicalLayer[] physicalLayers;
+	final DataLinkLayer[] dataLinkLayers;
+	final int leftInterface;
+	final int rightInterface;
+
+    } // class Link
+    // ===============================================================
+
+
+
+// ===================================================================
+} // class Route
+// ===================================================================
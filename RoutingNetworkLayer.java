@@ -0,0 +1,431 @@
+// ===================================================================
+// RoutingNetworkLayer
+// ===================================================================
+
+
+
+// ===================================================================
+// IMPORTS
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.zip.CRC32;
+// ===================================================================
+
+
+
+// ===================================================================
+// A network layer for a node with an address and any number of
+// interfaces, each attached to a data link layer on a link of its
+// own.  A node sends packets to other nodes by address, and forwards
+// the packets it receives for others, choosing the interface by its
+// forwarding table.  A chain of such nodes carries packets across
+// several links, as from a host through routers to another host.
+//
+// Each packet carries a header:
+//
+//   magic        2 bytes  (``RT'')
+//   destination  2 bytes  the address of the node it is for
+//   source       2 bytes  the address of the node that sent it
+//   hops left    1 byte   decremented at each router; at zero, the
+//                         packet is dropped
+//   length       4 bytes  the number of bytes of payload that follow
+//   sent at      8 bytes  System.nanoTime() when it was sent, from
+//                         which the latency is measured on arrival
+//   header check 4 bytes  the CRC-32 of the fields above, set afresh
+//                         at each router
+//   body check   4 bytes  the CRC-32 of the payload
+//
+// The data link layers deliver packets in pieces, which each
+// interface gathers until a whole packet has arrived.  Bytes that do
+// not begin a plausible header are skipped until one is found.  A
+// packet that fails a check was damaged on the way, by an error that
+// a data link layer missed; it is counted and dropped, and the search
+// for a header goes on from the byte after its first.  The header is
+// checked as soon as it arrives, before its length is trusted, so
+// that a damaged length does not leave the interface waiting for a
+// payload that will never come.
+//
+// Every interface may receive on a thread of its own.  Sends on an
+// interface are serialized, since a data link layer is not safe to
+// drive from two threads, and the counts are kept under the node's
+// lock.
+class RoutingNetworkLayer {
+// ===================================================================
+
+
+
+    // ===============================================================
+    // PUBLIC METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // The constructor.
+    public RoutingNetworkLayer (int address) {
+
+	if ((address < 0) || (address > maxAddress)) {
+
+	    throw new RuntimeException("Address out of range: " + address);
+
+	}
+	this.address = address;
+	interfaces = new ArrayList<Interface>();
+	routes = new HashMap<Integer, Integer>();
+	defaultRoute = -1;
+
+    } // RoutingNetworkLayer
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Attach an interface to a data link layer, and return its index.
+    public int attach (DataLinkLayer dataLinkLayer) {
+
+	interfaces.add(new Interface(dataLinkLayer));
+	return interfaces.size() - 1;
+
+    } // attach
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Route the packets for a destination through an interface, or
+    // route every packet with no route of its own through one.
+    public void addRoute (int destination, int interfaceIndex) {
+
+	routes.put(destination, interfaceIndex);
+
+    } // addRoute
+
+    public void setDefaultRoute (int interfaceIndex) {
+
+	defaultRoute = interfaceIndex;
+
+    } // setDefaultRoute
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Send a payload to the node with the given address.
+    public void send (int destination, byte[] payload) {
+
+	byte[] packet = new byte[headerSize + payload.length];
+	packet[0] = (byte)(magic >>> 8);
+	packet[1] = (byte)magic;
+	BigEndian.putShort(packet, 2, destination);
+	BigEndian.putShort(packet, 4, address);
+	packet[6] = (byte)initialHops;
+	BigEndian.putInt(packet, 7, payload.length);
+	BigEndian.putLong(packet, 11, System.nanoTime());
+	BigEndian.putInt(packet, headerCheckOffset, headerCheck(packet, 0));
+	BigEndian.putInt(packet, bodyCheckOffset,
+			 crc32(payload, 0, payload.length));
+	System.arraycopy(payload, 0, packet, headerSize, payload.length);
+
+	route(packet, destination);
+
+    } // send
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Send at once whatever the data link layers have held back.
+    public void flush () {
+
+	for (int i = 0; i < interfaces.size(); i++) {
+
+	    Interface out = interfaces.get(i);
+	    synchronized (out) {
+
+		out.dataLinkLayer.flush();
+
+	    }
+
+	}
+
+    } // flush
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Return a line summarizing what this node has done.
+    public synchronized String report () {
+
+	return ("node " + address + ": " +
+		packetsDelivered + " delivered (" + bytesDelivered +
+		" bytes), " +
+		packetsForwarded + " forwarded, " +
+		packetsDropped + " dropped, " +
+		packetsDamaged + " damaged, " +
+		bytesSkipped + " bytes skipped");
+
+    } // report
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Return the mean and greatest latency of the packets delivered
+    // here, in seconds.
+    public synchronized double meanLatency () {
+
+	return (packetsDelivered == 0 ?
+		0.0 :
+		latencyTotal / 1.0e9 / packetsDelivered);
+
+    } // meanLatency
+
+    public synchronized double maxLatency () {
+
+	return latencyMax / 1.0e9;
+
+    } // maxLatency
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // PRIVATE METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Deliver a packet that has arrived in full on an interface, if it
+    // is for this node, or else forward it.
+    private void arrive (byte[] buffer, int offset, int packetLength) {
+
+	int destination = BigEndian.getShort(buffer, offset + 2);
+	if (destination == address) {
+
+	    long sentAt = BigEndian.getLong(buffer, offset + 11);
+	    long latency = System.nanoTime() - sentAt;
+	    synchronized (this) {
+
+		packetsDelivered++;
+		bytesDelivered += packetLength - headerSize;
+		latencyTotal += latency;
+		latencyMax = Math.max(latencyMax, latency);
+
+	    }
+	    return;
+
+	}
+
+	int hopsLeft = buffer[offset + 6] & 0xff;
+	if (hopsLeft <= 1) {
+
+	    countDropped();
+	    return;
+
+	}
+
+	byte[] packet = Arrays.copyOfRange(buffer, offset, offset + packetLength);
+	packet[6] = (byte)(hopsLeft - 1);
+	BigEndian.putInt(packet, headerCheckOffset, headerCheck(packet, 0));
+	synchronized (this) {
+
+	    packetsForwarded++;
+
+	}
+	route(packet, destination);
+
+    } // arrive
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Send a packet out of the interface that its destination is
+    // routed through, or drop it if there is none.
+    private void route (byte[] packet, int destination) {
+
+	Integer chosen = routes.get(destination);
+	int interfaceIndex = (chosen == null ? defaultRoute : chosen);
+	if ((interfaceIndex < 0) || (interfaceIndex >= interfaces.size())) {
+
+	    countDropped();
+	    return;
+
+	}
+
+	Interface out = interfaces.get(interfaceIndex);
+	synchronized (out) {
+
+	    out.dataLinkLayer.send(packet);
+
+	}
+
+    } // route
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Return the check of the header at the given place, and the
+    // CRC-32 of a run of bytes.
+    private static int headerCheck (byte[] b, int offset) {
+
+	return crc32(b, offset, headerCheckOffset);
+
+    } // headerCheck
+
+    private static int crc32 (byte[] b, int offset, int length) {
+
+	CRC32 crc = new CRC32();
+	crc.update(b, offset, length);
+	return (int)crc.getValue();
+
+    } // crc32
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Count a packet dropped.
+    private synchronized void countDropped () {
+
+	packetsDropped++;
+
+    } // countDropped
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // One interface of the node: the client of a data link layer,
+    // gathering the pieces it delivers into packets.
+    private class Interface extends NetworkLayer {
+
+	Interface (DataLinkLayer dataLinkLayer) {
+
+	    super(dataLinkLayer);
+	    buffer = new byte[initialBufferSize];
+
+	}
+
+	void receive (byte[] data) {
+
+	    // Add the piece, moving what remains to the front or else
+	    // growing the buffer to make room.
+	    if (end + data.length > buffer.length) {
+
+		System.arraycopy(buffer, start, buffer, 0, end - start);
+		end -= start;
+		start = 0;
+		if (end + data.length > buffer.length) {
+
+		    buffer = Arrays.copyOf(buffer,
+					   Math.max(buffer.length * 2,
+						    end + data.length));
+
+		}
+
+	    }
+	    System.arraycopy(data, 0, buffer, end, data.length);
+	    end += data.length;
+
+	    // Take every whole packet gathered.
+	    while (end - start >= headerSize) {
+
+		int length = BigEndian.getInt(buffer, start + 7);
+		if ((BigEndian.getShort(buffer, start) != magic) ||
+		    (length < 0) ||
+		    (length > maxPayloadSize)) {
+
+		    start++;
+		    synchronized (RoutingNetworkLayer.this) {
+
+			bytesSkipped++;
+
+		    }
+		    continue;
+
+		}
+		int check =
+		    BigEndian.getInt(buffer, start + headerCheckOffset);
+		boolean intact = (check == headerCheck(buffer, start));
+		if (intact && (end - start < headerSize + length)) {
+
+		    break;
+
+		}
+		if (!intact ||
+		    (BigEndian.getInt(buffer, start + bodyCheckOffset) !=
+		     crc32(buffer, start + headerSize, length))) {
+
+		    start++;
+		    synchronized (RoutingNetworkLayer.this) {
+
+			packetsDamaged++;
+
+		    }
+		    continue;
+
+		}
+		arrive(buffer, start, headerSize + length);
+		start += headerSize + length;
+
+	    }
+
+	}
+
+	byte[] buffer;
+	int start;
+	int end;
+
+    } // class Interface
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // DATA MEMBERS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // The layout of a header, and the limits on its fields.
+    static final int magic = 0x5254;
+    static final int headerCheckOffset = 19;
+    static final int bodyCheckOffset = 23;
+    static final int headerSize = 27;
+    static final int maxAddress = 0xffff;
+    static final int initialHops = 64;
+    static final int maxPayloadSize = 1 << 24;
+    static final int initialBufferSize = 4096;
+
+    // This node's address, its interfaces, and its forwarding table
+    // (with the interface for destinations not in it, or -1).
+    final int address;
+    final ArrayList<Interface> interfaces;
+    final HashMap<Integer, Integer> routes;
+    int defaultRoute;
+
+    // What has become of the packets that arrived here, and the total
+    // and greatest latency, in nanoseconds, of those delivered.  Only
+    // packets that pass their check are delivered or forwarded.
+    long packetsDelivered;
+    long bytesDelivered;
+    long packetsForwarded;
+    long packetsDropped;
+    long packetsDamaged;
+    long bytesSkipped;
+    long latencyTotal;
+    long latencyMax;
+    // ===============================================================
+
+
+
+// ===================================================================
+} // class RoutingNetworkLayer
+// ===================================================================
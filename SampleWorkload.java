@@ -0,0 +1,123 @@
+// ===================================================================
+// SampleWorkload
+// ===================================================================
+
+
+
+// ===================================================================
+// IMPORTS
+
+import java.util.Arrays;
+// ===================================================================
+
+
+
+// ===================================================================
+// The four sample strings that a network layer has always sent,
+// echoed as text on their way down and back up the stack.
+class SampleWorkload extends Workload {
+// ===================================================================
+
+
+
+    // ===============================================================
+    // PUBLIC METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // The constructors.  The options common to all workloads may be
+    // given, as to repeat the samples with messages=100.
+    public SampleWorkload () {
+
+    } // SampleWorkload
+
+    public SampleWorkload (String options) {
+
+	parseOptions(options);
+
+    } // SampleWorkload
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Print the messages as they pass.
+    public boolean echo () {
+
+	return true;
+
+    } // echo
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Return the most bytes that any one message may hold: the length
+    // of the longest sample.
+    public int largestMessage () {
+
+	int largest = 0;
+	for (int i = 0; i < messages.length; i++) {
+
+	    largest = Math.max(largest, messages[i].getBytes().length);
+
+	}
+	return largest;
+
+    } // largestMessage
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // PRIVATE METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Return each sample in turn.  Once all have been sent, stop,
+    // unless a number of messages or bytes was given, in which case
+    // start over.
+    protected byte[] generate (long remaining) {
+
+	if ((messagesGenerated == messages.length) &&
+	    (messageLimit == Long.MAX_VALUE) &&
+	    (volume == Long.MAX_VALUE)) {
+
+	    return null;
+
+	}
+
+	byte[] data =
+	    messages[(int)(messagesGenerated % messages.length)].getBytes();
+	return (data.length <= remaining ?
+		data :
+		Arrays.copyOf(data, (int)remaining));
+
+    } // generate
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // DATA MEMBERS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // The samples.
+    static final String[] messages = { "abc",
+				       "abd",
+				       "The quick brown fox...",
+				       "Does {}{} byte packing \\ work?" };
+    // ===============================================================
+
+
+
+// ===================================================================
+} // class SampleWorkload
+// ===================================================================
@@ -0,0 +1,433 @@
+// ===================================================================
+// SharedMemoryMedium
+// ===================================================================
+
+
+
+// ===================================================================
+// IMPORTS
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.locks.LockSupport;
+// ===================================================================
+
+
+
+// ===================================================================
+// A remote medium that carries bytes to a host in another process
+// through a memory-mapped file, so that no system call is made on
+// the data path.  The file holds two rings, one for each direction,
+// each written by one process and read by the other.
+//
+// The medium is named by an argument of the form <role>=<file>.  The
+// role is ``create'' for the receiving host (host 1), which must be
+// started first and makes a fresh file, or ``open'' for the sending
+// host (host 0).  For example:
+//
+//     java Simulator SharedMemory@create=/dev/shm/sim.ring Dumb
+//     java Simulator SharedMemory@open=/dev/shm/sim.ring Dumb
+//
+// Each ring has a single producer and a single consumer, so no locks
+// are needed.  The producer copies bytes into the ring and then
+// publishes its new tail with a release store; the consumer reads the
+// tail with an acquire load, copies the bytes out, and publishes its
+// new head the same way.  The tail and head live on separate cache
+// lines so that the two processes do not contend for one line.  The
+// counters only ever grow; the position in the ring is the counter
+// modulo the (power of two) capacity.
+class SharedMemoryMedium extends RemoteMedium {
+// ===================================================================
+
+
+
+    // ===============================================================
+    // PUBLIC METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // The constructor.  Create or open the shared file, as the
+    // argument requires.
+    public SharedMemoryMedium (String argument) {
+
+	super(hostFor(argument));
+
+	path = argument.substring(argument.indexOf('=') + 1);
+	int fileSize = ringOffset(2);
+	try {
+
+	    if (localHost == 1) {
+
+		// Make a fresh file, lay out the rings (all zero), and
+		// only then publish the magic number that tells the
+		// other process the file is ready.
+		new File(path).delete();
+		RandomAccessFile file = new RandomAccessFile(path, "rw");
+		file.setLength(fileSize);
+		ring = file.getChannel().map(FileChannel.MapMode.READ_WRITE,
+					     0,
+					     fileSize);
+		file.close();
+		ring.order(ByteOrder.nativeOrder());
+		longs.setRelease(ring, capacityOffset, (long)capacity);
+		longs.setRelease(ring, magicOffset, magic);
+
+	    } else {
+
+		ring = openWhenReady(path, fileSize);
+
+	    }
+
+	} catch (IOException e) {
+
+	    throw new RuntimeException("Cannot map " + path + ": " +
+				       e.getMessage());
+
+	}
+
+	// Host 0 sends on ring 0 and receives on ring 1; host 1 the
+	// reverse.
+	outgoing = ringOffset(localHost);
+	incoming = ringOffset(1 - localHost);
+	startTime = System.nanoTime();
+
+    } // SharedMemoryMedium
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Allow the client to send a block of bytes.  Copy as much as
+    // fits into the outgoing ring and publish it, waiting for the
+    // other process to make room as needed.
+    public void send (PhysicalLayer sender, byte[] data) {
+
+	if (sender != client) {
+
+	    throw new RuntimeException();
+
+	}
+
+	long tail = (long)longs.getOpaque(ring, outgoing + tailOffset);
+	int index = 0;
+	int idle = 0;
+	while (index < data.length) {
+
+	    long head = (long)longs.getAcquire(ring, outgoing + headOffset);
+	    int free = (int)(capacity - (tail - head));
+	    if (free == 0) {
+
+		// The ring is full.  Deliver anything that has
+		// arrived, so that two senders cannot stall each
+		// other, and wait.
+		if (!receiveAvailable()) {
+
+		    idle = pause(idle);
+
+		}
+		continue;
+
+	    }
+	    idle = 0;
+
+	    int length = Math.min(free, data.length - index);
+	    copyIn(tail, data, index, length);
+	    index += length;
+	    tail += length;
+	    longs.setRelease(ring, outgoing + tailOffset, tail);
+
+	}
+	bytesSent += data.length;
+
+    } // send
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Mark the outgoing ring closed, then deliver whatever the other
+    // process sends until it closes its ring too.
+    public void finish () {
+
+	longs.setRelease(ring, outgoing + closedOffset, 1L);
+
+	int idle = 0;
+	while (true) {
+
+	    // Check for closing before draining, so that nothing
+	    // published before the close can be missed.
+	    boolean closed =
+		((long)longs.getAcquire(ring, incoming + closedOffset) != 0);
+	    if (receiveAvailable()) {
+
+		idle = 0;
+
+	    } else if (closed) {
+
+		break;
+
+	    } else {
+
+		idle = pause(idle);
+
+	    }
+
+	}
+
+	// The receiving host, finishing last, removes the file.
+	if (localHost == 1) {
+
+	    new File(path).delete();
+
+	}
+
+	report("SharedMemory");
+
+    } // finish
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // PRIVATE METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Determine the host from the role in the argument.
+    private static int hostFor (String argument) {
+
+	if (argument.startsWith("create=")) {
+
+	    return 1;
+
+	} else if (argument.startsWith("open=")) {
+
+	    return 0;
+
+	}
+
+	throw new RuntimeException("SharedMemory argument must be " +
+				   "create=<file> or open=<file>: " +
+				   argument);
+
+    } // hostFor
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Return the offset in the file of the given ring (or, for 2, the
+    // size of the file).
+    private static int ringOffset (int ringIndex) {
+
+	return headerSize + (ringIndex * (ringHeaderSize + capacity));
+
+    } // ringOffset
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Map the file once the other process has created it and
+    // published its magic number, waiting for a while if need be.
+    private static MappedByteBuffer openWhenReady (String path,
+						   long fileSize)
+	throws IOException {
+
+	long deadline = System.currentTimeMillis() + openTimeout;
+	while (true) {
+
+	    File file = new File(path);
+	    if (file.length() == fileSize) {
+
+		RandomAccessFile opened = new RandomAccessFile(file, "rw");
+		MappedByteBuffer mapped =
+		    opened.getChannel().map(FileChannel.MapMode.READ_WRITE,
+					    0,
+					    fileSize);
+		opened.close();
+		mapped.order(ByteOrder.nativeOrder());
+		if (((long)longs.getAcquire(mapped, magicOffset) == magic) &&
+		    ((long)longs.getAcquire(mapped, capacityOffset) == capacity)) {
+
+		    return mapped;
+
+		}
+
+	    }
+
+	    if (System.currentTimeMillis() > deadline) {
+
+		throw new IOException("no ring was created in time");
+
+	    }
+	    try {
+
+		Thread.sleep(50);
+
+	    } catch (InterruptedException e) {
+
+		throw new RuntimeException("Interrupted while opening " + path);
+
+	    }
+
+	}
+
+    } // openWhenReady
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Deliver to the client everything published on the incoming
+    // ring, and release the space.  Return whether anything came.
+    private boolean receiveAvailable () {
+
+	long head = (long)longs.getOpaque(ring, incoming + headOffset);
+	long tail = (long)longs.getAcquire(ring, incoming + tailOffset);
+	if (tail == head) {
+
+	    return false;
+
+	}
+
+	while (head < tail) {
+
+	    int length = (int)Math.min(tail - head, maxDelivery);
+	    byte[] data = new byte[length];
+	    copyOut(head, data, length);
+	    head += length;
+	    longs.setRelease(ring, incoming + headOffset, head);
+	    bytesReceived += length;
+	    client.receive(data);
+
+	}
+
+	return true;
+
+    } // receiveAvailable
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Copy bytes into the outgoing ring at the position of the given
+    // counter, wrapping around the end of the ring as needed.
+    private void copyIn (long counter, byte[] data, int index, int length) {
+
+	int position = (int)(counter & (capacity - 1));
+	int first = Math.min(length, capacity - position);
+	int base = outgoing + ringHeaderSize;
+	ring.put(base + position, data, index, first);
+	if (first < length) {
+
+	    ring.put(base, data, index + first, length - first);
+
+	}
+
+    } // copyIn
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Copy bytes out of the incoming ring from the position of the
+    // given counter, wrapping around the end of the ring as needed.
+    private void copyOut (long counter, byte[] data, int length) {
+
+	int position = (int)(counter & (capacity - 1));
+	int first = Math.min(length, capacity - position);
+	int base = incoming + ringHeaderSize;
+	ring.get(base + position, data, 0, first);
+	if (first < length) {
+
+	    ring.get(base, data, first, length - first);
+
+	}
+
+    } // copyOut
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Wait a little for the other process.  Spin briefly at first,
+    // then back off to parking so that an idle wait does not hold a
+    // core.  Return the updated count of idle rounds.
+    private static int pause (int idle) {
+
+	if (idle < spinLimit) {
+
+	    Thread.onSpinWait();
+
+	} else {
+
+	    LockSupport.parkNanos(parkTime);
+
+	}
+
+	return idle + 1;
+
+    } // pause
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // DATA MEMBERS
+    // ===============================================================
+
+
+    // ===============================================================
+    // Access to the long counters in the mapped file, with the memory
+    // ordering that each access requires.
+    static final VarHandle longs =
+	MethodHandles.byteBufferViewVarHandle(long[].class,
+					      ByteOrder.nativeOrder());
+
+    // The layout of the file.  A header of one cache line holds the
+    // magic number (``SIMRING1'') and the ring capacity.  Each ring
+    // then has a cache line for the producer (tail and closed flag), a
+    // cache line for the consumer (head), and its data.
+    static final long magic = 0x53494d52494e4731L;
+    static final int magicOffset = 0;
+    static final int capacityOffset = 8;
+    static final int headerSize = 64;
+    static final int tailOffset = 0;
+    static final int closedOffset = 8;
+    static final int headOffset = 64;
+    static final int ringHeaderSize = 128;
+    static final int capacity = 1 << 20;
+
+    // The largest block handed to the client at once.
+    static final int maxDelivery = 64 * 1024;
+
+    // How long to wait for the file to appear, in milliseconds, and
+    // how to wait for the other process once it has.
+    static final long openTimeout = 10000;
+    static final int spinLimit = 10000;
+    static final long parkTime = 50000;
+
+    // The shared file, its mapping, and the offsets of the rings in
+    // it for each direction.
+    final String path;
+    MappedByteBuffer ring;
+    final int outgoing;
+    final int incoming;
+    // ===============================================================
+
+
+
+// ===================================================================
+} // class SharedMemoryMedium
+// ===================================================================
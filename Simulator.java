@@ -27,24 +27,55 @@ class Simulator {
     public static void main (String[] args) {
 
 	// Check the number of arguments passed.
-	if (args.length != 2) {
+	if ((args.length < 2) || (args.length > 5)) {
 
 	    System.err.println("Usage: java Simulator " +
 			       "<medium type> " +
-			       "<data link layer type> ");
+			       "<data link layer type> " +
+			       "[<number of hosts> [<workload> " +
+			       "[<event sink>]]]");
 	    System.exit(1);
 
 	}
 
-	// Assign names to the arguments.
+	// Assign names to the arguments.  Unless told otherwise, there
+	// are two hosts, they send the sample messages, and what the
+	// layers report is written out as it happens.
 	String mediumType = args[0];
 	String dataLinkLayerType = args[1];
+	int numberHosts = 2;
+	if (args.length >= 3) {
+
+	    numberHosts = Integer.parseInt(args[2]);
+
+	}
+	String workloadType = "Sample";
+	if (args.length >= 4) {
+
+	    workloadType = args[3];
+
+	}
+	String eventSinkType = "Async";
+	if (args.length == 5) {
+
+	    eventSinkType = args[4];
+
+	}
+	EventSink events = createEventSink(eventSinkType);
+	EventSink.setCurrent(events);
 
 	// Create the medium (there is only one).
 	Medium medium = createMedium(mediumType);
 
-	// Create the physical layers.
-	PhysicalLayer[] physicalLayers = createPhysicalLayers(medium);
+	// Create the physical layers.  If the medium leads to another
+	// program, only one of the hosts is here.
+	if (medium.localHost() != -1) {
+
+	    numberHosts = 1;
+
+	}
+	PhysicalLayer[] physicalLayers =
+	    createPhysicalLayers(medium, numberHosts);
 
 	// Create the requested data link layers, connecting each one
 	// to its physical layer.
@@ -52,12 +83,106 @@ class Simulator {
 	    createDataLinkLayers(dataLinkLayerType, physicalLayers);
 
 	// Create the requested network layers, connecting each one to
-	// its data link layer.
+	// its data link layer and giving each a workload of its own.
 	NetworkLayer[] networkLayers =
-	    createNetworkLayers(dataLinkLayers);
+	    createNetworkLayers(dataLinkLayers, workloadType);
+
+	// Perform the simulation!  Whatever happens, write out what
+	// the layers reported.
+	try {
+
+	    simulate(medium, networkLayers);
+
+	} finally {
+
+	    events.close();
+
+	}
+
+	// Unless the messages were printed as they passed, summarize
+	// what each host sent and received.
+	for (int i = 0; i < networkLayers.length; i++) {
+
+	    Workload workload = networkLayers[i].workload;
+	    if (!workload.echo()) {
+
+		double seconds = workload.secondsElapsed();
+		System.out.println("Host " + i + ": sent " +
+				   workload.messagesGenerated() +
+				   " messages, " +
+				   workload.bytesGenerated() + " bytes" +
+				   (seconds > 0.0 ?
+				    String.format(" in %.3f s (%.4e b/s)",
+						  seconds,
+						  workload.bytesGenerated() *
+						  8 / seconds) :
+				    "") +
+				   "; received " +
+				   networkLayers[i].messagesReceived +
+				   " pieces, " +
+				   networkLayers[i].bytesReceived + " bytes");
+
+	    }
+
+	}
+
+	// If the messages were fragmented, report how they were
+	// reassembled, abandoning any that are still incomplete.
+	for (int i = 0; i < networkLayers.length; i++) {
+
+	    Fragmenter fragmenter = networkLayers[i].fragmenter;
+	    if (fragmenter != null) {
+
+		System.out.println("Host " + i + " reassembly: " +
+				   fragmenter.report());
+
+	    }
+
+	}
+
+	// If the messages were compressed, report what each host saved.
+	for (int i = 0; i < networkLayers.length; i++) {
+
+	    Compressor compressor = networkLayers[i].compressor;
+	    if (compressor != null) {
+
+		System.out.println("Host " + i + " compression: " +
+				   compressor.report());
+
+	    }
+
+	}
+
+	// If the messages were verified, report what each host made of
+	// those sent by the others.
+	for (int i = 0; i < networkLayers.length; i++) {
+
+	    DeliveryVerifier verifier = networkLayers[i].verifier;
+	    if (verifier == null) {
 
-	// Perform the simulation!
-	simulate(networkLayers);
+		continue;
+
+	    }
+	    verifier.finish();
+
+	    int[] senders = new int[networkLayers.length - 1];
+	    long[] sent = new long[senders.length];
+	    int next = 0;
+	    for (int j = 0; j < networkLayers.length; j++) {
+
+		if (j != i) {
+
+		    senders[next] = networkLayers[j].verifier.streamId;
+		    sent[next] = networkLayers[j].workload.messagesGenerated();
+		    next++;
+
+		}
+
+	    }
+	    System.out.println("Host " + i + " verified: " +
+			       verifier.report(senders, sent));
+
+	}
 
     } // main
     // ===============================================================
@@ -65,9 +190,53 @@ class Simulator {
 
 
     // ===============================================================
-    // Create the requested medium type and return it.
+    // Create the requested medium type and return it.  A type of the
+    // form <wrapper>:<inner>, such as Timed:LowNoise, names a medium
+    // that wraps another.  A type may also carry an argument for its
+    // constructor after an `@', as in Replay@run1.trace or
+    // Recording@run1.trace:LowNoise.
     protected static Medium createMedium (String mediumType) {
 
+	// Split off the inner medium and the argument, if any.
+	Medium inner = null;
+	int colon = mediumType.indexOf(':');
+	if (colon != -1) {
+
+	    inner = createMedium(mediumType.substring(colon + 1));
+	    mediumType = mediumType.substring(0, colon);
+
+	}
+	String argument = null;
+	int at = mediumType.indexOf('@');
+	if (at != -1) {
+
+	    argument = mediumType.substring(at + 1);
+	    mediumType = mediumType.substring(0, at);
+
+	}
+
+	// Media built from other media or from arguments need the
+	// matching constructor.
+	if ((inner != null) && (argument != null)) {
+
+	    Class<?>[] parameters = { Medium.class, String.class };
+	    Object[] arguments = { inner, argument };
+	    return constructMedium(mediumType, parameters, arguments);
+
+	} else if (inner != null) {
+
+	    Class<?>[] parameters = { Medium.class };
+	    Object[] arguments = { inner };
+	    return constructMedium(mediumType, parameters, arguments);
+
+	} else if (argument != null) {
+
+	    Class<?>[] parameters = { String.class };
+	    Object[] arguments = { argument };
+	    return constructMedium(mediumType, parameters, arguments);
+
+	}
+
 	// Look up the class by name.
 	String className = mediumType + "Medium";
 	Class mediumClass = null;
@@ -106,12 +275,62 @@ class Simulator {
 
 
     // ===============================================================
-    // Create the requested physical layer type for each of the two
+    // Create the requested type of medium through the constructor
+    // that takes the given parameters, and return it.
+    protected static Medium constructMedium (String mediumType,
+					     Class<?>[] parameters,
+					     Object[] arguments) {
+
+	// Look up the class by name.
+	String className = mediumType + "Medium";
+	Class<?> mediumClass = null;
+	try {
+	    mediumClass = Class.forName(className);
+	} catch (ClassNotFoundException e) {
+	    throw new RuntimeException("Unknown medium subclass " +
+				       className);
+	}
+
+	// Lookup the constructor that takes the given parameters.
+	Constructor<?> mediumConstructor = null;
+	try {
+	    mediumConstructor = mediumClass.getConstructor(parameters);
+	} catch (Exception e) {
+	    throw new RuntimeException("No suitable constructor in " +
+				       className);
+	}
+
+	// Make the requested kind of medium.
+	Medium medium = null;
+	try {
+	    medium = (Medium)mediumConstructor.newInstance(arguments);
+	} catch (ClassCastException e) {
+	    throw new RuntimeException(className +
+				       " is not a subclass of Medium");
+	} catch (IllegalAccessException e) {
+	    throw new RuntimeException("Cannot access " + className);
+	} catch (InstantiationException e) {
+	    throw new RuntimeException("Cannot instantiate " + className);
+	} catch (InvocationTargetException e) {
+	    throw new RuntimeException("Cannot invoke constructor for " +
+				       className + ": " +
+				       e.getCause().getMessage());
+	}
+
+	return medium;
+
+    } // constructMedium
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Create the requested physical layer type for each of the
     // hosts.
     protected static PhysicalLayer[]
-	createPhysicalLayers (Medium medium) {
+	createPhysicalLayers (Medium medium, int numberHosts) {
 
-	PhysicalLayer[] physicalLayers = new PhysicalLayer[2];
+	PhysicalLayer[] physicalLayers = new PhysicalLayer[numberHosts];
 
 	for (int i = 0; i < physicalLayers.length; i++) {
 
@@ -128,11 +347,22 @@ class Simulator {
 
     // ===============================================================
     // Create the requested data link layer type for each of the two
-    // hosts.
+    // hosts.  As with a medium, the type may carry an argument for its
+    // constructor after an `@', as in Convolutional@171,133.
     protected static DataLinkLayer[]
 	createDataLinkLayers (String dataLinkType,
 			      PhysicalLayer[] physicalLayers) {
 
+	// Split off the argument, if any.
+	String argument = null;
+	int at = dataLinkType.indexOf('@');
+	if (at != -1) {
+
+	    argument = dataLinkType.substring(at + 1);
+	    dataLinkType = dataLinkType.substring(0, at);
+
+	}
+
 	// Look up the class by name.
 	String className = dataLinkType + "DataLinkLayer";
 	Class<?> dataLinkClass = null;
@@ -151,13 +381,19 @@ class Simulator {
 
 	    // Lookup the constructor needed to make a new data link
 	    // layer.
-	    Class<?>[] parameters = { PhysicalLayer.class };
+	    Class<?>[] parameters = (argument == null ?
+				     new Class<?>[] { PhysicalLayer.class } :
+				     new Class<?>[] { PhysicalLayer.class,
+						      String.class });
+	    Object[] arguments = (argument == null ?
+				  new Object[] { physicalLayers[i] } :
+				  new Object[] { physicalLayers[i], argument });
 	    Constructor dataLinkConstructor = null;
 	    try {
 		dataLinkConstructor =
 		    dataLinkClass.getConstructor(parameters);
 	    } catch (Exception e) {
-		throw new RuntimeException("No (PhysicalLayer) constructor in " +
+		throw new RuntimeException("No suitable constructor in " +
 					   className);
 	    }
 
@@ -165,7 +401,7 @@ class Simulator {
 	    DataLinkLayer dataLinkLayer = null;
 	    try {
 		dataLinkLayers[i] =
-		    (DataLinkLayer)dataLinkConstructor.newInstance(physicalLayers[i]);
+		    (DataLinkLayer)dataLinkConstructor.newInstance(arguments);
 	    } catch (ClassCastException e) {
 		throw new RuntimeException(className +
 					   " is not a subclass of DataLinkLayer");
@@ -175,7 +411,8 @@ class Simulator {
 		throw new RuntimeException("Cannot instantiate " + className);
 	    } catch (InvocationTargetException e) {
 		throw new RuntimeException("Cannot invoke constructor for " +
-					   className);
+					   className + ": " +
+					   e.getCause().getMessage());
 	    }
 
 	}
@@ -188,10 +425,11 @@ class Simulator {
 
 
     // ===============================================================
-    // Create the requested data link layer type for each of the two
-    // hosts.
+    // Create a network layer for each of the hosts, each with its own
+    // workload of the requested type.
     protected static NetworkLayer[]
-	createNetworkLayers (DataLinkLayer[] dataLinkLayers) {
+	createNetworkLayers (DataLinkLayer[] dataLinkLayers,
+			     String workloadType) {
 
 	NetworkLayer[] networkLayers =
 	    new NetworkLayer[dataLinkLayers.length];
@@ -199,6 +437,7 @@ class Simulator {
 	for (int i = 0; i < networkLayers.length; i++) {
 
 	    networkLayers[i] = new NetworkLayer(dataLinkLayers[i]);
+	    networkLayers[i].setWorkload(createWorkload(workloadType));
 
 	}
 
@@ -209,15 +448,161 @@ class Simulator {
 
 
 
+    // ===============================================================
+    // Create the requested type of event sink and return it.
+    protected static EventSink createEventSink (String eventSinkType) {
+
+	String className = eventSinkType + "EventSink";
+	try {
+	    return (EventSink)Class.forName(className)
+		.getConstructor()
+		.newInstance();
+	} catch (ClassNotFoundException e) {
+	    throw new RuntimeException("Unknown event sink subclass " +
+				       className);
+	} catch (ClassCastException e) {
+	    throw new RuntimeException(className +
+				       " is not a subclass of EventSink");
+	} catch (ReflectiveOperationException e) {
+	    throw new RuntimeException("Cannot create " + className + ": " +
+				       e);
+	}
+
+    } // createEventSink
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Create the requested workload type and return it.  As with a
+    // medium, a type may carry an argument for its constructor after
+    // an `@', as in Random@size=uniform/1/1500,volume=1g.
+    protected static Workload createWorkload (String workloadType) {
+
+	String argument = null;
+	int at = workloadType.indexOf('@');
+	if (at != -1) {
+
+	    argument = workloadType.substring(at + 1);
+	    workloadType = workloadType.substring(0, at);
+
+	}
+
+	// Look up the class by name.
+	String className = workloadType + "Workload";
+	Class<?> workloadClass = null;
+	try {
+	    workloadClass = Class.forName(className);
+	} catch (ClassNotFoundException e) {
+	    throw new RuntimeException("Unknown workload subclass " +
+				       className);
+	}
+
+	// Make the requested kind of workload, through the constructor
+	// that takes an argument if one was given.
+	Workload workload = null;
+	try {
+	    if (argument != null) {
+		workload = (Workload)workloadClass
+		    .getConstructor(String.class)
+		    .newInstance(argument);
+	    } else {
+		workload = (Workload)workloadClass
+		    .getConstructor()
+		    .newInstance();
+	    }
+	} catch (ClassCastException e) {
+	    throw new RuntimeException(className +
+				       " is not a subclass of Workload");
+	} catch (NoSuchMethodException e) {
+	    throw new RuntimeException("No suitable constructor in " +
+				       className);
+	} catch (IllegalAccessException e) {
+	    throw new RuntimeException("Cannot access " + className);
+	} catch (InstantiationException e) {
+	    throw new RuntimeException("Cannot instantiate " + className);
+	} catch (InvocationTargetException e) {
+	    throw new RuntimeException("Cannot invoke constructor for " +
+				       className + ": " +
+				       e.getCause().getMessage());
+	}
+
+	return workload;
+
+    } // createWorkload
+    // ===============================================================
+
+
+
     // ===============================================================
     // Perform the simulation by selecting the 0th host as the
     // ``sender'' and the 1st as the ``receiver'', causing the former
-    // to send messages to the latter.
-    protected static void simulate (NetworkLayer[] networkLayers) {
+    // to send messages to the latter.  With more than two hosts (as
+    // on a shared bus), every host sends and all of the others hear
+    // it.  If the other host is in another program, this one sends
+    // only if it is the 0th.  If the medium is full duplex, both
+    // hosts send at once, the 1st from a thread of its own.  Finally,
+    // let the medium complete whatever it has deferred, once the
+    // layers' reports so far have been written out.
+    protected static void simulate (Medium medium,
+				    final NetworkLayer[] networkLayers) {
+
+	if (medium.fullDuplex() && (networkLayers.length == 2)) {
+
+	    Thread second = new Thread(new Runnable() {
+
+		    public void run () {
+
+			networkLayers[1].send();
+
+		    }
+
+		}, "Host 1");
+	    second.start();
+	    networkLayers[0].send();
+	    try {
+
+		second.join();
+
+	    } catch (InterruptedException e) {
 
-        // Initiate the sender.
+		throw new RuntimeException("Interrupted while host 1 sends");
+
+	    }
+
+	} else if (medium.localHost() != -1) {
+
+	    if (medium.localHost() == 0) {
+
+		networkLayers[0].send();
+
+	    }
+
+	} else if (networkLayers.length == 2) {
+
+	    // Initiate the sender.
 	    networkLayers[0].send();
 
+	} else {
+
+	    for (int i = 0; i < networkLayers.length; i++) {
+
+		networkLayers[i].send();
+
+	    }
+
+	}
+
+	EventSink.current().flush();
+	medium.finish();
+
+	// Deliver whatever the data link layers have held back.
+	for (int i = 0; i < networkLayers.length; i++) {
+
+	    networkLayers[i].dataLinkLayer.flush();
+
+	}
+
     }
     // ===============================================================
 
@@ -0,0 +1,153 @@
+// ===================================================================
+// SizeDistribution
+// ===================================================================
+
+
+
+// ===================================================================
+// IMPORTS
+
+import java.util.SplittableRandom;
+// ===================================================================
+
+
+
+// ===================================================================
+// A distribution of message sizes, in bytes, from which a workload
+// draws.  A distribution is named by its kind and its parameters,
+// separated by slashes:
+//
+//   fixed/<size>                     every message the same size
+//   uniform/<least>/<most>           any size between, equally likely
+//   bimodal/<small>/<large>/<p>      small with probability p, else large
+//   pareto/<least>/<shape>[/<most>]  heavy-tailed: the chance of a size
+//                                    above s falls as (least/s)^shape
+//
+// Sizes may be given in units, as 4k.  The Pareto sizes are capped,
+// at a megabyte unless told otherwise, since with a shape of 2 or less
+// their variance is unbounded.
+class SizeDistribution {
+// ===================================================================
+
+
+
+    // ===============================================================
+    // PUBLIC METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // The constructor.  Parse the distribution's name.
+    public SizeDistribution (String name) {
+
+	String[] fields = name.split("/");
+	kind = fields[0];
+	int expected;
+	if (kind.equals("fixed")) {
+
+	    expected = 2;
+	    least = (int)Workload.parseBytes(fields[1]);
+	    most = least;
+
+	} else if (kind.equals("uniform")) {
+
+	    expected = 3;
+	    least = (int)Workload.parseBytes(fields[1]);
+	    most = (int)Workload.parseBytes(fields[2]);
+
+	} else if (kind.equals("bimodal")) {
+
+	    expected = 4;
+	    least = (int)Workload.parseBytes(fields[1]);
+	    most = (int)Workload.parseBytes(fields[2]);
+	    parameter = Double.parseDouble(fields[3]);
+
+	} else if (kind.equals("pareto")) {
+
+	    expected = (fields.length == 4 ? 4 : 3);
+	    least = (int)Workload.parseBytes(fields[1]);
+	    parameter = Double.parseDouble(fields[2]);
+	    most = (fields.length == 4 ?
+		    (int)Workload.parseBytes(fields[3]) :
+		    defaultParetoCap);
+
+	} else {
+
+	    throw new RuntimeException("Unknown size distribution " + kind);
+
+	}
+
+	if (fields.length != expected) {
+
+	    throw new RuntimeException("Wrong number of parameters for " +
+				       "size distribution " + name);
+
+	}
+	if ((least < 1) || (most < least)) {
+
+	    throw new RuntimeException("Bad sizes in size distribution " +
+				       name);
+
+	}
+
+    } // SizeDistribution
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Draw a size from the distribution.
+    public int draw (SplittableRandom random) {
+
+	if (kind.equals("fixed")) {
+
+	    return least;
+
+	} else if (kind.equals("uniform")) {
+
+	    return random.nextInt(least, most + 1);
+
+	} else if (kind.equals("bimodal")) {
+
+	    return (random.nextDouble() < parameter ? least : most);
+
+	} else {
+
+	    // Invert the Pareto distribution function; 1 - u lies in
+	    // (0, 1], so the power is finite.
+	    double u = 1.0 - random.nextDouble();
+	    double size = least / Math.pow(u, 1.0 / parameter);
+	    return (int)Math.min(size, most);
+
+	}
+
+    } // draw
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // DATA MEMBERS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // The kind of distribution; its least and greatest sizes; and,
+    // for a bimodal distribution, the probability of the small size,
+    // or for a Pareto distribution, its shape.
+    final String kind;
+    int least;
+    int most;
+    double parameter;
+
+    // The largest Pareto size unless told otherwise.
+    static final int defaultParetoCap = 1 << 20;
+    // ===============================================================
+
+
+
+// ===================================================================
+} // class SizeDistribution
+// ===================================================================
@@ -0,0 +1,398 @@
+// ===================================================================
+// SocketMedium
+// ===================================================================
+
+
+
+// ===================================================================
+// IMPORTS
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+// ===================================================================
+
+
+
+// ===================================================================
+// A remote medium that carries bytes to a host in another process
+// over a socket: TCP on the loopback interface, or a Unix-domain
+// socket.  The two processes can then be pinned to different cores
+// (with taskset, say), so that the stack is measured under real
+// inter-process I/O.
+//
+// The medium is named by an argument of the form <role>=<address>.
+// The role is ``listen'' for the receiving host (host 1), which must
+// be started first, or ``connect'' for the sending host (host 0).
+// The address is a port number for TCP, or a file name for a Unix-
+// domain socket.  For example:
+//
+//     java Simulator Socket@listen=/tmp/sim.sock Dumb
+//     java Simulator Socket@connect=/tmp/sim.sock Dumb
+//
+// The socket is non-blocking.  Outgoing bytes are gathered into a
+// batch that is written only when full or when the medium finishes,
+// so each system call carries many frames.  Whenever a write cannot
+// proceed, whatever has arrived is read and delivered, so that two
+// hosts sending at once cannot stall each other.
+class SocketMedium extends RemoteMedium {
+// ===================================================================
+
+
+
+    // ===============================================================
+    // PUBLIC METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // The constructor.  Listen for or connect to the other process,
+    // as the argument requires.
+    public SocketMedium (String argument) {
+
+	super(hostFor(argument));
+
+	String where = argument.substring(argument.indexOf('=') + 1);
+	try {
+
+	    channel = (localHost == 1 ? listen(where) : connect(where));
+	    channel.configureBlocking(false);
+	    if (channel.getRemoteAddress() instanceof InetSocketAddress) {
+
+		channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+	    }
+	    selector = Selector.open();
+	    key = channel.register(selector, 0);
+
+	} catch (IOException e) {
+
+	    throw new RuntimeException("Cannot open socket " + where +
+				       ": " + e.getMessage());
+
+	}
+
+	outgoing = ByteBuffer.allocateDirect(batchSize);
+	incoming = ByteBuffer.allocateDirect(batchSize);
+	startTime = System.nanoTime();
+
+    } // SocketMedium
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Allow the client to send a block of bytes, adding it to the
+    // batch and writing the batch each time it fills.
+    public void send (PhysicalLayer sender, byte[] data) {
+
+	if (sender != client) {
+
+	    throw new RuntimeException();
+
+	}
+
+	int index = 0;
+	while (index < data.length) {
+
+	    int length = Math.min(outgoing.remaining(), data.length - index);
+	    outgoing.put(data, index, length);
+	    index += length;
+	    if (!outgoing.hasRemaining()) {
+
+		flush();
+
+	    }
+
+	}
+	bytesSent += data.length;
+
+    } // send
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Write what remains of the batch and tell the other process that
+    // nothing more will come.  Then deliver whatever the other process
+    // sends until it says the same, and close the socket.
+    public void finish () {
+
+	try {
+
+	    flush();
+	    channel.shutdownOutput();
+
+	    while (!peerClosed) {
+
+		key.interestOps(SelectionKey.OP_READ);
+		select();
+		readAvailable();
+
+	    }
+
+	    selector.close();
+	    channel.close();
+
+	} catch (IOException e) {
+
+	    throw new RuntimeException("Socket failure: " + e.getMessage());
+
+	}
+
+	report("Socket");
+
+    } // finish
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // PRIVATE METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Determine the host from the role in the argument.
+    private static int hostFor (String argument) {
+
+	if (argument.startsWith("listen=")) {
+
+	    return 1;
+
+	} else if (argument.startsWith("connect=")) {
+
+	    return 0;
+
+	}
+
+	throw new RuntimeException("Socket argument must be listen=<address> " +
+				   "or connect=<address>: " + argument);
+
+    } // hostFor
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Turn an address into a socket address: a port on the loopback
+    // interface if it is a number, or else a Unix-domain socket file.
+    private static SocketAddress addressFor (String where) {
+
+	try {
+
+	    return new InetSocketAddress(InetAddress.getLoopbackAddress(),
+					 Integer.parseInt(where));
+
+	} catch (NumberFormatException e) {
+
+	    return UnixDomainSocketAddress.of(where);
+
+	}
+
+    } // addressFor
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Wait for the other process to connect.
+    private static SocketChannel listen (String where) throws IOException {
+
+	SocketAddress address = addressFor(where);
+	ServerSocketChannel server = null;
+	if (address instanceof UnixDomainSocketAddress) {
+
+	    new File(where).delete();
+	    server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+
+	} else {
+
+	    server = ServerSocketChannel.open();
+
+	}
+	server.bind(address);
+
+	SocketChannel accepted = server.accept();
+	server.close();
+	if (address instanceof UnixDomainSocketAddress) {
+
+	    new File(where).delete();
+
+	}
+
+	return accepted;
+
+    } // listen
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Connect to the other process, retrying for a while in case it
+    // has not started listening yet.
+    private static SocketChannel connect (String where) throws IOException {
+
+	SocketAddress address = addressFor(where);
+	long deadline = System.currentTimeMillis() + connectTimeout;
+	while (true) {
+
+	    try {
+
+		return SocketChannel.open(address);
+
+	    } catch (IOException e) {
+
+		if (System.currentTimeMillis() > deadline) {
+
+		    throw e;
+
+		}
+
+	    }
+
+	    try {
+
+		Thread.sleep(50);
+
+	    } catch (InterruptedException e) {
+
+		throw new RuntimeException("Interrupted while connecting");
+
+	    }
+
+	}
+
+    } // connect
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Write the whole batch.  While the socket cannot take more,
+    // wait until it can, delivering anything that arrives meanwhile.
+    private void flush () {
+
+	try {
+
+	    outgoing.flip();
+	    while (outgoing.hasRemaining()) {
+
+		if (channel.write(outgoing) == 0) {
+
+		    key.interestOps(SelectionKey.OP_WRITE |
+				    SelectionKey.OP_READ);
+		    if (select() && key.isReadable()) {
+
+			readAvailable();
+
+		    }
+
+		}
+
+	    }
+	    outgoing.clear();
+
+	} catch (IOException e) {
+
+	    throw new RuntimeException("Socket failure: " + e.getMessage());
+
+	}
+
+    } // flush
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Wait until the socket is ready for what the key is interested
+    // in, and clear the selected set, so that the key's ready set is
+    // replaced rather than added to at the next wait.  Return whether
+    // the key was selected.
+    private boolean select () throws IOException {
+
+	selector.select();
+	boolean selected = selector.selectedKeys().remove(key);
+	selector.selectedKeys().clear();
+	return selected;
+
+    } // select
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Read whatever has arrived and deliver it to the client.
+    private void readAvailable () throws IOException {
+
+	while (!peerClosed) {
+
+	    int count = channel.read(incoming);
+	    if (count == -1) {
+
+		peerClosed = true;
+
+	    } else if (count == 0) {
+
+		break;
+
+	    } else {
+
+		byte[] data = new byte[count];
+		incoming.flip();
+		incoming.get(data);
+		incoming.clear();
+		bytesReceived += count;
+		client.receive(data);
+
+	    }
+
+	}
+
+    } // readAvailable
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // DATA MEMBERS
+    // ===============================================================
+
+
+    // ===============================================================
+    // The connection to the other process, and the selector used to
+    // wait on it.
+    SocketChannel channel;
+    Selector selector;
+    SelectionKey key;
+
+    // Whether the other process has finished sending.
+    boolean peerClosed;
+
+    // The batch of outgoing bytes and the space for incoming ones,
+    // both outside the heap so the socket can use them directly.
+    final ByteBuffer outgoing;
+    final ByteBuffer incoming;
+    static final int batchSize = 64 * 1024;
+
+    // How long to keep trying to connect, in milliseconds.
+    static final long connectTimeout = 10000;
+    // ===============================================================
+
+
+
+// ===================================================================
+} // class SocketMedium
+// ===================================================================
@@ -0,0 +1,497 @@
+// ===================================================================
+// Sweep
+// ===================================================================
+
+
+
+// ===================================================================
+// IMPORTS
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+// ===================================================================
+
+
+
+// ===================================================================
+// Run many independent simulation trials for each combination of
+// medium, data link layer, and message size, and report the bit
+// error rate, the fate of the messages, and the goodput for each.
+//
+// The trials of a configuration run in parallel on a fork-join pool
+// across all cores.  Each trial builds its own medium and pair of
+// hosts, and draws from its own stream of random numbers, split from
+// a single seed; the split follows the fixed shape of the division of
+// trials, so that a sweep can be repeated exactly from its seed no
+// matter how the pool schedules it.  The tallies of the trials are
+// merged as the division unwinds.
+//
+// A trial sends random messages from host 0 to host 1, one at a time,
+// each to a receiver with nothing left buffered from the one before,
+// and judges each by what host 1 delivers while it is sent, letting
+// the medium's clock (if it has one) run out after each.  The medium
+// must carry both hosts in this program and be driven from a single
+// thread.  While the sweep runs, what the layers print is discarded.
+//
+// If a target precision is given, each configuration runs only until
+// its message error rate is known to within that fraction of itself,
+// at 95% confidence, rather than for the full number of trials.  The
+// trials then run in batches, each as large as all before it, and the
+// Wilson score interval on the error count so far is checked after
+// each batch.  Configurations whose errors are common finish after a
+// few batches, leaving the cores to those whose errors are rare.  A
+// configuration with no errors at all runs the full number of
+// trials, since no precision can be claimed for it.
+//
+// On an ImportanceSamplingMedium, each message is weighted by the
+// likelihood ratio of its errors, so the rates reported are those of
+// the true channel (the bit error rate alone is that of the biased
+// channel sampled), and the precision is judged on the undetected
+// error rate, which is what such a medium is for.
+class Sweep {
+// ===================================================================
+
+
+
+    // ===============================================================
+    // PUBLIC METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // The entry point.  Each list is separated by commas.
+    public static void main (String[] args) {
+
+	if ((args.length < 3) || (args.length > 7)) {
+
+	    System.err.println("Usage: java Sweep " +
+			       "<medium types> " +
+			       "<data link layer types> " +
+			       "<message sizes> " +
+			       "[<trials> [<messages per trial> [<seed> " +
+			       "[<relative precision>]]]]");
+	    System.exit(1);
+
+	}
+
+	String[] mediumTypes = args[0].split(",");
+	String[] dataLinkLayerTypes = args[1].split(",");
+	String[] sizes = args[2].split(",");
+	int trials = (args.length > 3 ? Integer.parseInt(args[3]) : 1000);
+	int messages = (args.length > 4 ? Integer.parseInt(args[4]) : 100);
+	long seed = (args.length > 5 ?
+		     Long.parseLong(args[5]) :
+		     System.nanoTime());
+	double precision = (args.length > 6 ?
+			    Double.parseDouble(args[6]) :
+			    0.0);
+
+	PrintStream results = System.out;
+	PrintStream discard = new PrintStream(OutputStream.nullOutputStream());
+	PrintStream errors = System.err;
+	results.println("Sweep: " +
+			(precision > 0.0 ? "up to " : "") +
+			trials + " trials of " + messages +
+			" messages each, seed " + seed + ", " +
+			ForkJoinPool.getCommonPoolParallelism() +
+			" workers" +
+			(precision > 0.0 ?
+			 ", stopping at +/-" + precision + " relative" :
+			 ""));
+	results.println(String.format("%-24s %-10s %6s %8s %12s %10s %8s %9s %10s %10s %8s %9s",
+				       "medium", "link", "size", "trials",
+				       "BER", "MER", "+/-",
+				       "lost", "undetected",
+				       "corrected", "goodput",
+				       "seconds"));
+
+	SplittableRandom random = new SplittableRandom(seed);
+	try {
+
+	    System.setOut(discard);
+	    System.setErr(discard);
+	    for (int m = 0; m < mediumTypes.length; m++) {
+
+		for (int d = 0; d < dataLinkLayerTypes.length; d++) {
+
+		    for (int s = 0; s < sizes.length; s++) {
+
+			int size = Integer.parseInt(sizes[s]);
+			long start = System.nanoTime();
+			SweepStatistics statistics =
+			    runUntilPrecise(mediumTypes[m],
+					    dataLinkLayerTypes[d],
+					    size,
+					    trials,
+					    messages,
+					    precision,
+					    random.split());
+			double seconds = (System.nanoTime() - start) / 1.0e9;
+			results.println(report(mediumTypes[m],
+					       dataLinkLayerTypes[d],
+					       size,
+					       statistics,
+					       seconds));
+
+		    }
+
+		}
+
+	    }
+
+	} finally {
+
+	    System.setOut(results);
+	    System.setErr(errors);
+
+	}
+
+    } // main
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Run the given number of trials of one configuration in parallel
+    // and return their merged tallies.
+    public static SweepStatistics runTrials (String mediumType,
+					     String dataLinkLayerType,
+					     int size,
+					     int trials,
+					     int messages,
+					     SplittableRandom random) {
+
+	Configuration configuration =
+	    new Configuration(mediumType, dataLinkLayerType, size, messages);
+	return ForkJoinPool.commonPool().invoke(new Trials(configuration,
+							   trials,
+							   random));
+
+    } // runTrials
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Run trials of one configuration in growing batches until its
+    // message error rate is known to the given relative precision, or
+    // until the given number of trials have run.  A precision of zero
+    // runs every trial at once.  Each batch draws from its own stream,
+    // split from the given one, so the outcome is fixed by the seed.
+    public static SweepStatistics runUntilPrecise (String mediumType,
+						   String dataLinkLayerType,
+						   int size,
+						   int maxTrials,
+						   int messages,
+						   double precision,
+						   SplittableRandom random) {
+
+	if (precision <= 0.0) {
+
+	    return runTrials(mediumType,
+			     dataLinkLayerType,
+			     size,
+			     maxTrials,
+			     messages,
+			     random);
+
+	}
+
+	SweepStatistics total = new SweepStatistics();
+	int batch = Math.min(firstBatch, maxTrials);
+	while (batch > 0) {
+
+	    total.merge(runTrials(mediumType,
+				  dataLinkLayerType,
+				  size,
+				  batch,
+				  messages,
+				  random.split()));
+	    if (total.relativeHalfWidth(confidenceZ) <= precision) {
+
+		break;
+
+	    }
+	    batch = (int)Math.min(total.trials, maxTrials - total.trials);
+
+	}
+
+	return total;
+
+    } // runUntilPrecise
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // PRIVATE METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Run a single trial: build the medium and two hosts, send the
+    // messages, and tally what became of them.
+    private static SweepStatistics runTrial (Configuration configuration,
+					     SplittableRandom random) {
+
+	Medium medium = Simulator.createMedium(configuration.mediumType);
+	if ((medium.localHost() != -1) || medium.fullDuplex()) {
+
+	    throw new RuntimeException("Sweep needs a medium driven from " +
+				       "one thread in one program: " +
+				       configuration.mediumType);
+
+	}
+	medium.setRandom(random.split());
+
+	PhysicalLayer[] physicalLayers =
+	    Simulator.createPhysicalLayers(medium, 2);
+	DataLinkLayer[] dataLinkLayers =
+	    Simulator.createDataLinkLayers(configuration.dataLinkLayerType,
+					   physicalLayers);
+	new NetworkLayer(dataLinkLayers[0]);
+	Collector collector = new Collector(dataLinkLayers[1]);
+	DataLinkLayer receiver = dataLinkLayers[1];
+	EventScheduler scheduler = medium.scheduler();
+
+	SweepStatistics statistics = new SweepStatistics();
+	statistics.trials = 1;
+	byte[] message = new byte[configuration.size];
+	for (int i = 0; i < configuration.messages; i++) {
+
+	    // Start each message with nothing buffered at the receiver, so
+	    // that its fate depends only on the bits flipped while it is
+	    // sent.  The messages are then independent of one another,
+	    // as the confidence intervals (and the weights, under
+	    // importance sampling) assume.
+	    random.nextBytes(message);
+	    receiver.bufferIndex = 0;
+	    collector.clear();
+	    long discardedBefore = receiver.framesDiscarded;
+	    boolean failed = false;
+	    try {
+
+		dataLinkLayers[0].send(message);
+		dataLinkLayers[0].flush();
+		if (scheduler != null) {
+
+		    scheduler.run();
+
+		}
+		receiver.flush();
+
+	    } catch (RuntimeException e) {
+
+		// The receiver choked on a damaged frame.  Drop what it
+		// had buffered and carry on.
+		failed = true;
+		receiver.bufferIndex = 0;
+		statistics.failures++;
+
+	    }
+
+	    // Weigh the message by the likelihood ratio of its errors,
+	    // if the medium samples a biased channel.
+	    double weight = Math.exp(medium.takeLogWeight());
+	    if (!failed && collector.matches(message)) {
+
+		statistics.countIntact((long)message.length * 8, weight);
+
+	    } else if (failed ||
+		       (receiver.framesDiscarded > discardedBefore) ||
+		       (collector.length == 0)) {
+
+		statistics.countLost(weight);
+
+	    } else {
+
+		statistics.countUndetected(weight);
+
+	    }
+
+	}
+
+	medium.finish();
+	statistics.framesReceived = receiver.framesReceived;
+	statistics.framesDiscarded = receiver.framesDiscarded;
+	statistics.corrections = receiver.corrections;
+	statistics.bitsCarried = medium.bitsCarried();
+	statistics.bitsFlipped = medium.bitsFlipped();
+
+	return statistics;
+
+    } // runTrial
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Format one line of results.
+    private static String report (String mediumType,
+				  String dataLinkLayerType,
+				  int size,
+				  SweepStatistics statistics,
+				  double seconds) {
+
+	return String.format("%-24s %-10s %6d %8d %12.4e %10.4e %8.4f %9.5f %10.3e %10d %8.5f %9.3f",
+			     mediumType,
+			     dataLinkLayerType,
+			     size,
+			     statistics.trials,
+			     statistics.bitErrorRate(),
+			     statistics.messageErrorRate(),
+			     statistics.relativeHalfWidth(confidenceZ),
+			     statistics.lostRate(),
+			     statistics.undetectedErrorRate(),
+			     statistics.corrections,
+			     statistics.goodput(),
+			     seconds);
+
+    } // report
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // What every trial of a configuration shares.
+    private static class Configuration {
+
+	Configuration (String mediumType,
+		       String dataLinkLayerType,
+		       int size,
+		       int messages) {
+
+	    this.mediumType = mediumType;
+	    this.dataLinkLayerType = dataLinkLayerType;
+	    this.size = size;
+	    this.messages = messages;
+
+	}
+
+	final String mediumType;
+	final String dataLinkLayerType;
+	final int size;
+	final int messages;
+
+    } // class Configuration
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // A range of trials, split in half until single trials remain.
+    // The first half always takes a stream split from the second's,
+    // so each trial's stream depends only on its place in the range.
+    @SuppressWarnings("serial")
+    private static class Trials extends RecursiveTask<SweepStatistics> {
+
+	Trials (Configuration configuration,
+		int count,
+		SplittableRandom random) {
+
+	    this.configuration = configuration;
+	    this.count = count;
+	    this.random = random;
+
+	}
+
+	protected SweepStatistics compute () {
+
+	    if (count <= 1) {
+
+		return (count == 1 ?
+			runTrial(configuration, random) :
+			new SweepStatistics());
+
+	    }
+
+	    int half = count / 2;
+	    Trials first = new Trials(configuration, half, random.split());
+	    Trials second = new Trials(configuration, count - half, random);
+	    first.fork();
+	    SweepStatistics statistics = second.compute();
+	    statistics.merge(first.join());
+	    return statistics;
+
+	}
+
+	final Configuration configuration;
+	final int count;
+	final SplittableRandom random;
+
+    } // class Trials
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // A network layer that gathers what it receives, so that it can
+    // be compared with what was sent.
+    private static class Collector extends NetworkLayer {
+
+	Collector (DataLinkLayer dataLinkLayer) {
+
+	    super(dataLinkLayer);
+	    received = new byte[64];
+
+	}
+
+	void receive (byte[] data) {
+
+	    if (length + data.length > received.length) {
+
+		received = Arrays.copyOf(received,
+					 Math.max(received.length * 2,
+						  length + data.length));
+
+	    }
+	    System.arraycopy(data, 0, received, length, data.length);
+	    length += data.length;
+
+	}
+
+	void clear () {
+
+	    length = 0;
+
+	}
+
+	boolean matches (byte[] message) {
+
+	    return Arrays.equals(received, 0, length,
+				 message, 0, message.length);
+
+	}
+
+	byte[] received;
+	int length;
+
+    } // class Collector
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // DATA MEMBERS
+    // ===============================================================
+
+
+    // ===============================================================
+    // The number of trials in the first batch of a configuration run
+    // to a target precision, and the standard normal quantile for the
+    // 95% confidence at which the precision is judged.
+    static final int firstBatch = 32;
+    static final double confidenceZ = 1.959964;
+    // ===============================================================
+
+
+
+// ===================================================================
+} // class Sweep
+// ===================================================================
@@ -0,0 +1,261 @@
+// ===================================================================
+// SweepStatistics
+// ===================================================================
+
+
+
+// ===================================================================
+// The tallies kept for one or more simulation trials of a sweep.
+// Each trial fills in its own, and the tallies of independent trials
+// are merged into one for their configuration.
+//
+// Each message is tallied with a weight.  On a medium that flips bits
+// as the channel it stands for would, every weight is one.  On an
+// ImportanceSamplingMedium, the weight is the likelihood ratio of the
+// flips made while the message was sent, and the weighted tallies
+// estimate the rates on the true channel rather than the biased one.
+class SweepStatistics {
+// ===================================================================
+
+
+
+    // ===============================================================
+    // PUBLIC METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Tally a message that arrived intact, carrying the given number
+    // of payload bits, one that was lost, or one that arrived altered
+    // with no error detected, each with the given weight.
+    public void countIntact (long bits, double weight) {
+
+	count(weight);
+	messagesIntact++;
+	payloadBits += bits * weight;
+
+    } // countIntact
+
+    public void countLost (double weight) {
+
+	count(weight);
+	messagesLost++;
+	lostWeight += weight;
+
+    } // countLost
+
+    public void countUndetected (double weight) {
+
+	count(weight);
+	undetectedErrors++;
+	undetectedWeight += weight;
+	undetectedSquares += weight * weight;
+
+    } // countUndetected
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Add another set of tallies to this one.
+    public void merge (SweepStatistics other) {
+
+	trials += other.trials;
+	messages += other.messages;
+	messagesIntact += other.messagesIntact;
+	messagesLost += other.messagesLost;
+	undetectedErrors += other.undetectedErrors;
+	failures += other.failures;
+	framesReceived += other.framesReceived;
+	framesDiscarded += other.framesDiscarded;
+	corrections += other.corrections;
+	bitsCarried += other.bitsCarried;
+	bitsFlipped += other.bitsFlipped;
+	payloadBits += other.payloadBits;
+	lostWeight += other.lostWeight;
+	undetectedWeight += other.undetectedWeight;
+	undetectedSquares += other.undetectedSquares;
+	importanceSampled |= other.importanceSampled;
+
+    } // merge
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Return the fraction of bits carried that the medium flipped.
+    public double bitErrorRate () {
+
+	return (bitsCarried == 0 ? 0.0 : (double)bitsFlipped / bitsCarried);
+
+    } // bitErrorRate
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Return the message error rate: the fraction of messages that
+    // did not arrive intact.
+    public double messageErrorRate () {
+
+	return (messages == 0 ?
+		0.0 :
+		(lostWeight + undetectedWeight) / messages);
+
+    } // messageErrorRate
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Return the fraction of messages that were lost.
+    public double lostRate () {
+
+	return (messages == 0 ? 0.0 : lostWeight / messages);
+
+    } // lostRate
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Return half the width of the confidence interval on the rate
+    // being estimated, for the given standard normal quantile (1.96
+    // for 95% confidence), as a fraction of the rate itself.  Until
+    // there is some error, no finite precision can be claimed, so
+    // return infinity.
+    //
+    // Without importance sampling, the rate is the message error
+    // rate, and the interval is the Wilson score interval, which
+    // (unlike the normal approximation) stays sound when errors are
+    // few.  With importance sampling, the rate is the undetected error
+    // rate that the sampling is meant to reach, and the interval comes
+    // from the variance of the weights.
+    public double relativeHalfWidth (double z) {
+
+	if (importanceSampled) {
+
+	    if (undetectedWeight == 0.0) {
+
+		return Double.POSITIVE_INFINITY;
+
+	    }
+	    double n = messages;
+	    double mean = undetectedWeight / n;
+	    double variance =
+		Math.max((undetectedSquares / n) - (mean * mean), 0.0);
+	    return (z * Math.sqrt(variance / n)) / mean;
+
+	}
+
+	long errors = messages - messagesIntact;
+	if (errors == 0) {
+
+	    return Double.POSITIVE_INFINITY;
+
+	}
+
+	double n = messages;
+	double p = errors / n;
+	double z2 = z * z;
+	double halfWidth =
+	    (z / (1.0 + (z2 / n))) *
+	    Math.sqrt((p * (1.0 - p) / n) + (z2 / (4.0 * n * n)));
+	return halfWidth / p;
+
+    } // relativeHalfWidth
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Return the fraction of messages that arrived altered, with no
+    // error detected on the way.
+    public double undetectedErrorRate () {
+
+	return (messages == 0 ? 0.0 : undetectedWeight / messages);
+
+    } // undetectedErrorRate
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Return the goodput: the fraction of the bits carried by the
+    // medium that delivered an intact message.
+    public double goodput () {
+
+	return (bitsCarried == 0 ? 0.0 : payloadBits / bitsCarried);
+
+    } // goodput
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // PRIVATE METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Count a message of any fate, noting whether it was weighted.
+    private void count (double weight) {
+
+	messages++;
+	if (weight != 1.0) {
+
+	    importanceSampled = true;
+
+	}
+
+    } // count
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // DATA MEMBERS
+    // ===============================================================
+
+
+    // ===============================================================
+    // The number of trials tallied, and of messages sent in them.
+    // Each message arrived intact, was lost (some part of it was
+    // discarded, or the receiver failed on it), or arrived altered
+    // with no error detected.  The receiver failures are also counted
+    // on their own.
+    long trials;
+    long messages;
+    long messagesIntact;
+    long messagesLost;
+    long undetectedErrors;
+    long failures;
+
+    // What the receiving data link layers saw: complete frames, frames
+    // discarded for a detected error, and frames corrected.
+    long framesReceived;
+    long framesDiscarded;
+    long corrections;
+
+    // What the media carried and flipped, and the (weighted) number
+    // of payload bits in the messages delivered intact.
+    long bitsCarried;
+    long bitsFlipped;
+    double payloadBits;
+
+    // The weighted tallies of lost and undetected messages, the sum
+    // of the squared weights of the latter, and whether any weight
+    // was other than one.
+    double lostWeight;
+    double undetectedWeight;
+    double undetectedSquares;
+    boolean importanceSampled;
+    // ===============================================================
+
+
+
+// ===================================================================
+} // class SweepStatistics
+// ===================================================================
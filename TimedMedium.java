@@ -0,0 +1,251 @@
+// ===================================================================
+// TimedMedium
+// ===================================================================
+
+
+
+// ===================================================================
+// IMPORTS
+
+import java.util.ArrayList;
+// ===================================================================
+
+
+
+// ===================================================================
+// A medium that puts another medium on a clock.  Each sender has a
+// transmitter of fixed bandwidth that sends one frame (or bit) at a
+// time, and what it sends reaches the far end after a fixed
+// propagation delay.  The wrapped medium decides what arrives, and
+// is handed each frame at its moment of arrival by an event on this
+// medium's scheduler.  Layers above can schedule their own timers on
+// the same scheduler.
+//
+// When the medium is asked to finish, it runs the simulation to
+// completion and reports the throughput in simulated bits per second,
+// along with the rate at which events were processed.
+class TimedMedium extends WrappingMedium {
+// ===================================================================
+
+
+
+    // ===============================================================
+    // PUBLIC METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // The constructors.  By default, the link runs at 10 Mb/s with a
+    // propagation delay of 5 microseconds (about a kilometer of
+    // cable).
+    public TimedMedium (Medium medium) {
+
+	this(medium, 10.0e6, 5.0e-6);
+
+    } // TimedMedium
+
+    public TimedMedium (Medium medium,
+			double bitsPerSecond,
+			double propagationDelay) {
+
+	super(medium);
+	this.bitTime = EventScheduler.ticks(1.0 / bitsPerSecond);
+	this.propagationDelay = EventScheduler.ticks(propagationDelay);
+	scheduler = new EventScheduler();
+	transmitters = new ArrayList<Transmitter>();
+
+    } // TimedMedium
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Register a client with the wrapped medium, and give it a
+    // transmitter of its own.
+    public void register (PhysicalLayer client) {
+
+	medium.register(client);
+	transmitters.add(new Transmitter(client));
+
+    } // register
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Allow a client to send a bit.  It leaves once the transmitter
+    // is free and arrives after one bit time plus the propagation
+    // delay.
+    public void send (final PhysicalLayer sender, final boolean bit) {
+
+	long arrival = transmit(sender, 1) + propagationDelay;
+	scheduler.scheduleAt(arrival, new Event() {
+
+		public void fire () {
+
+		    medium.send(sender, bit);
+		    bitsDelivered++;
+		    lastArrival = scheduler.now();
+
+		}
+
+	    });
+
+    } // send
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Allow a client to send a block of bytes, which arrives whole
+    // once its last bit has crossed the medium.  The medium keeps a
+    // reference to the block until then.
+    public void send (final PhysicalLayer sender, final byte[] data) {
+
+	long arrival = transmit(sender, (long)data.length * 8) +
+	    propagationDelay;
+	scheduler.scheduleAt(arrival, new Event() {
+
+		public void fire () {
+
+		    medium.send(sender, data);
+		    bitsDelivered += (long)data.length * 8;
+		    lastArrival = scheduler.now();
+
+		}
+
+	    });
+
+    } // send
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Return the scheduler that keeps this medium's time.
+    public EventScheduler scheduler () {
+
+	return scheduler;
+
+    } // scheduler
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Run the simulation until no events remain, let the wrapped
+    // medium finish, and report.
+    public void finish () {
+
+	long wallStart = System.nanoTime();
+	long eventsBefore = scheduler.eventsFired();
+	scheduler.run();
+	double wallSeconds = (System.nanoTime() - wallStart) / 1.0e9;
+	long events = scheduler.eventsFired() - eventsBefore;
+
+	medium.finish();
+
+	// Throughput is measured up to the last arrival, since timers may
+	// run on after the traffic has ended.
+	double simulatedSeconds = EventScheduler.seconds(lastArrival);
+	System.out.println("Timed: " + bitsDelivered + " bits delivered in " +
+			   simulatedSeconds + " simulated seconds (" +
+			   (simulatedSeconds == 0.0 ?
+			    0.0 :
+			    bitsDelivered / simulatedSeconds) +
+			   " b/s)");
+	System.out.println("Timed: " + events + " events in " +
+			   wallSeconds + " seconds (" +
+			   (wallSeconds == 0.0 ? 0.0 : events / wallSeconds) +
+			   " events/s)");
+
+    } // finish
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // PRIVATE METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Occupy the sender's transmitter for the given number of bits,
+    // starting as soon as it is free, and return the time at which
+    // the last bit leaves.
+    private long transmit (PhysicalLayer sender, long bits) {
+
+	Transmitter transmitter = null;
+	for (int i = 0; i < transmitters.size(); i++) {
+
+	    if (transmitters.get(i).client == sender) {
+
+		transmitter = transmitters.get(i);
+		break;
+
+	    }
+
+	}
+	if (transmitter == null) {
+
+	    throw new RuntimeException();
+
+	}
+
+	long start = Math.max(scheduler.now(), transmitter.busyUntil);
+	transmitter.busyUntil = start + (bits * bitTime);
+	return transmitter.busyUntil;
+
+    } // transmit
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // A client's transmitter, and the time until which it is busy.
+    private static class Transmitter {
+
+	Transmitter (PhysicalLayer client) {
+
+	    this.client = client;
+
+	}
+
+	final PhysicalLayer client;
+	long busyUntil;
+
+    } // class Transmitter
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // DATA MEMBERS
+    // ===============================================================
+
+
+    // ===============================================================
+    // The scheduler that keeps time for the wrapped medium.
+    final EventScheduler scheduler;
+
+    // The transmitter of each client.
+    final ArrayList<Transmitter> transmitters;
+
+    // The time to send one bit and the time for it to cross the
+    // medium, in ticks.
+    final long bitTime;
+    final long propagationDelay;
+
+    // The number of bits that have reached the far end, and the time
+    // at which the last of them arrived.
+    long bitsDelivered;
+    long lastArrival;
+    // ===============================================================
+
+
+
+// ===================================================================
+} // class TimedMedium
+// ===================================================================
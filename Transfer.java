@@ -0,0 +1,201 @@
+// ===================================================================
+// Transfer
+// ===================================================================
+
+
+
+// ===================================================================
+// IMPORTS
+
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+// ===================================================================
+
+
+
+// ===================================================================
+// Stream a file (or the standard input) from one host to another and
+// write what arrives to a file (or the standard output), however
+// large, in constant memory.  The layers are built as by the
+// Simulator; the medium must carry both hosts in this program and be
+// driven from a single thread.  While the transfer runs, what the
+// layers print is discarded, and a summary is printed to the standard
+// error afterward.  If a method of compression is named (see
+// Compressor), the stream is compressed as it is sent and expanded as
+// it arrives.
+class Transfer {
+// ===================================================================
+
+
+
+    // ===============================================================
+    // PUBLIC METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // The entry point.  A path of `-' names the standard input or
+    // output.
+    public static void main (String[] args) {
+
+	if ((args.length < 4) || (args.length > 6)) {
+
+	    System.err.println("Usage: java Transfer " +
+			       "<medium type> " +
+			       "<data link layer type> " +
+			       "<input path> <output path> " +
+			       "[<window in bytes> [<compression>]]");
+	    System.exit(1);
+
+	}
+
+	String mediumType = args[0];
+	String dataLinkLayerType = args[1];
+	Medium medium = Simulator.createMedium(mediumType);
+	if ((medium.localHost() != -1) || medium.fullDuplex()) {
+
+	    throw new RuntimeException("Transfer needs a medium driven from " +
+				       "one thread in one program: " +
+				       mediumType);
+
+	}
+
+	PhysicalLayer[] physicalLayers =
+	    Simulator.createPhysicalLayers(medium, 2);
+	DataLinkLayer[] dataLinkLayers =
+	    Simulator.createDataLinkLayers(dataLinkLayerType, physicalLayers);
+	NetworkLayer sender = new NetworkLayer(dataLinkLayers[0]);
+	NetworkLayer receiver = new NetworkLayer(dataLinkLayers[1]);
+	if (args.length >= 5) {
+
+	    sender.setWindow(Workload.parseBytes(args[4]));
+
+	}
+	if (args.length == 6) {
+
+	    sender.setCompression(args[5]);
+	    receiver.setCompression(args[5]);
+
+	}
+
+	PrintStream results = System.out;
+	PrintStream errors = System.err;
+	ReadableByteChannel source = openSource(args[2]);
+	WritableByteChannel destination = openDestination(args[3]);
+	receiver.setSink(destination);
+
+	long sent = 0;
+	long start = System.nanoTime();
+	try {
+
+	    System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+	    System.setErr(System.out);
+	    sent = sender.send(source);
+	    medium.finish();
+	    receiver.dataLinkLayer.flush();
+	    receiver.flush();
+
+	} finally {
+
+	    System.setOut(results);
+	    System.setErr(errors);
+
+	}
+	double seconds = (System.nanoTime() - start) / 1.0e9;
+
+	try {
+
+	    source.close();
+	    destination.close();
+
+	} catch (IOException e) {
+
+	    throw new RuntimeException("Cannot close stream: " +
+				       e.getMessage());
+
+	}
+
+	errors.println(String.format("Transfer: sent %d bytes, received %d " +
+				     "in %d pieces, %.3f s, %.4e b/s",
+				     sent,
+				     receiver.bytesReceived,
+				     receiver.messagesReceived,
+				     seconds,
+				     sent * 8 / seconds));
+	if (sender.compressor != null) {
+
+	    errors.println("Sent " + sender.compressor.report());
+	    errors.println("Received " + receiver.compressor.report());
+
+	}
+
+    } // main
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // PRIVATE METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Open the channel to read from, or to write to.
+    private static ReadableByteChannel openSource (String path) {
+
+	try {
+
+	    if (path.equals("-")) {
+
+		return new FileInputStream(FileDescriptor.in).getChannel();
+
+	    }
+	    return new RandomAccessFile(path, "r").getChannel();
+
+	} catch (IOException e) {
+
+	    throw new RuntimeException("Cannot open " + path + ": " +
+				       e.getMessage());
+
+	}
+
+    } // openSource
+
+    private static WritableByteChannel openDestination (String path) {
+
+	try {
+
+	    if (path.equals("-")) {
+
+		return new FileOutputStream(FileDescriptor.out).getChannel();
+
+	    }
+	    FileChannel channel = new RandomAccessFile(path, "rw").getChannel();
+	    channel.truncate(0);
+	    return channel;
+
+	} catch (IOException e) {
+
+	    throw new RuntimeException("Cannot open " + path + ": " +
+				       e.getMessage());
+
+	}
+
+    } // openDestination
+    // ===============================================================
+
+
+
+// ===================================================================
+} // class Transfer
+// ===================================================================
@@ -0,0 +1,379 @@
+// ===================================================================
+// Workload
+// ===================================================================
+
+
+
+// ===================================================================
+// IMPORTS
+
+import java.util.concurrent.locks.LockSupport;
+// ===================================================================
+
+
+
+// ===================================================================
+// A source of the messages that a network layer sends.  A subclass
+// generates each message; this class stops the workload once it has
+// produced a given number of messages or bytes, and paces it to a
+// given rate of messages per second: in real time, by waiting before
+// each message, or, on a medium that keeps time, in simulated time,
+// by telling the network layer when each message is due.
+//
+// A workload is named to the Simulator like a medium, as Sample or
+// Random@size=uniform/1/1500,volume=1g.  The argument after the `@' is
+// a list of options separated by commas, each a name and a value.
+// The options understood here are:
+//
+//   volume=<bytes>     stop after this many bytes (as 64k, 16m, 2g)
+//   messages=<count>   stop after this many messages
+//   rate=<messages/s>  send no faster than this (in simulated time,
+//                      on a medium that keeps time)
+//   verify             tag each message so that the receiver can
+//                      check it end to end (see DeliveryVerifier)
+//   fragment=<bytes>   send each message in fragments of at most
+//                      this much payload, and reassemble them
+//                      (see Fragmenter)
+//   compress=<method>  compress each message by this method, as
+//                      deflate, deflate/9 or lz (see Compressor)
+//
+// and a subclass may understand others.
+abstract class Workload {
+// ===================================================================
+
+
+
+    // ===============================================================
+    // PUBLIC METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Return the next message, waiting first if the workload is paced
+    // and it is not yet due, or return null once the workload is done.
+    public byte[] next () {
+
+	if ((messagesGenerated >= messageLimit) ||
+	    (bytesGenerated >= volume)) {
+
+	    return null;
+
+	}
+
+	if (startTime == 0) {
+
+	    startTime = System.nanoTime();
+	    startTick = (scheduler == null ? 0 : scheduler.now());
+
+	}
+	if ((rate > 0.0) && (scheduler == null)) {
+
+	    pace();
+
+	}
+
+	byte[] message = generate(volume - bytesGenerated);
+	if (message == null) {
+
+	    return null;
+
+	}
+
+	messagesGenerated++;
+	bytesGenerated += message.length;
+	return message;
+
+    } // next
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Return the most bytes that any one message may hold, so that a
+    // receiver can tell a real header from a damaged one.
+    abstract public int largestMessage ();
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Return whether the workload is paced, and, once it is paced in
+    // simulated time, the tick at which the next message is due.
+    public boolean paced () {
+
+	return (rate > 0.0);
+
+    } // paced
+
+    public long due () {
+
+	return startTick + EventScheduler.ticks(messagesGenerated / rate);
+
+    } // due
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Pace the workload in the simulated time of a scheduler rather
+    // than in real time.  The workload then never waits for a message
+    // to be due; whoever takes the messages sends each at its due
+    // tick.
+    public void setScheduler (EventScheduler scheduler) {
+
+	this.scheduler = scheduler;
+
+    } // setScheduler
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Return whether the network layer should print each message as
+    // text as it is sent and received.
+    public boolean echo () {
+
+	return false;
+
+    } // echo
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Return whether the messages should be verified end to end.
+    public boolean verify () {
+
+	return verify;
+
+    } // verify
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Return the most payload each fragment of a message may carry, or
+    // zero if messages are not fragmented.
+    public int fragmentSize () {
+
+	return fragmentSize;
+
+    } // fragmentSize
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Return the name of the method by which messages are compressed,
+    // or null if they are not.
+    public String compression () {
+
+	return compression;
+
+    } // compression
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Return the number of messages and bytes produced so far, and the
+    // seconds since the first was asked for.
+    public long messagesGenerated () {
+
+	return messagesGenerated;
+
+    } // messagesGenerated
+
+    public long bytesGenerated () {
+
+	return bytesGenerated;
+
+    } // bytesGenerated
+
+    public double secondsElapsed () {
+
+	return (startTime == 0 ? 0.0 : (System.nanoTime() - startTime) / 1.0e9);
+
+    } // secondsElapsed
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Parse a number of bytes, which may end in k, m, or g for units of
+    // 2^10, 2^20, or 2^30 bytes.
+    public static long parseBytes (String text) {
+
+	long unit = 1;
+	char last = Character.toLowerCase(text.charAt(text.length() - 1));
+	if (last == 'k') {
+
+	    unit = 1L << 10;
+
+	} else if (last == 'm') {
+
+	    unit = 1L << 20;
+
+	} else if (last == 'g') {
+
+	    unit = 1L << 30;
+
+	}
+	if (unit != 1) {
+
+	    text = text.substring(0, text.length() - 1);
+
+	}
+
+	long bytes = Long.parseLong(text) * unit;
+	if (bytes < 0) {
+
+	    throw new RuntimeException("Negative size: " + text);
+
+	}
+	return bytes;
+
+    } // parseBytes
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // PRIVATE METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Return the next message, of no more than the given number of
+    // bytes, or null if there are no more.
+    abstract protected byte[] generate (long remaining);
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Parse a list of options, handling those common to every
+    // workload and passing the rest to the subclass.
+    protected void parseOptions (String options) {
+
+	String[] fields = options.split(",");
+	for (int i = 0; i < fields.length; i++) {
+
+	    int equals = fields[i].indexOf('=');
+	    String name = (equals == -1 ?
+			   fields[i] :
+			   fields[i].substring(0, equals));
+	    String value = (equals == -1 ?
+			    null :
+			    fields[i].substring(equals + 1));
+
+	    if (name.equals("volume") && (value != null)) {
+
+		volume = parseBytes(value);
+
+	    } else if (name.equals("messages") && (value != null)) {
+
+		messageLimit = Long.parseLong(value);
+
+	    } else if (name.equals("rate") && (value != null)) {
+
+		rate = Double.parseDouble(value);
+
+	    } else if (name.equals("verify") && (value == null)) {
+
+		verify = true;
+
+	    } else if (name.equals("fragment") && (value != null)) {
+
+		fragmentSize = (int)parseBytes(value);
+
+	    } else if (name.equals("compress") && (value != null)) {
+
+		compression = value;
+
+	    } else if (!option(name, value)) {
+
+		throw new RuntimeException("Unknown workload option " +
+					   fields[i]);
+
+	    }
+
+	}
+
+    } // parseOptions
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Handle an option of the subclass's own, whose value is null if
+    // none was given.  Return false if the option is not understood.
+    protected boolean option (String name, String value) {
+
+	return false;
+
+    } // option
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Wait until the next message is due.  The messages are due at
+    // even intervals from the first, so a late message does not delay
+    // those after it.
+    private void pace () {
+
+	long due = startTime + (long)(messagesGenerated * 1.0e9 / rate);
+	long wait;
+	while ((wait = due - System.nanoTime()) > 0) {
+
+	    LockSupport.parkNanos(wait);
+
+	}
+
+    } // pace
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // DATA MEMBERS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // The most bytes and messages to produce, and the messages to
+    // produce per second (or zero to produce them as fast as they are
+    // taken).
+    long volume = Long.MAX_VALUE;
+    long messageLimit = Long.MAX_VALUE;
+    double rate;
+
+    // The scheduler in whose simulated time the workload is paced, or
+    // null if it is paced in real time.
+    EventScheduler scheduler;
+
+    // Whether the messages are verified end to end, the size of their
+    // fragments (or zero), and the method by which they are compressed
+    // (or null).
+    boolean verify;
+    int fragmentSize;
+    String compression;
+
+    // What has been produced so far, and when the first message was
+    // asked for, in real time and, if paced in simulated time, in
+    // ticks.
+    long messagesGenerated;
+    long bytesGenerated;
+    long startTime;
+    long startTick;
+    // ===============================================================
+
+
+
+// ===================================================================
+} // class Workload
+// ===================================================================
@@ -0,0 +1,137 @@
+// ===================================================================
+// WrappingMedium
+// ===================================================================
+
+
+
+// ===================================================================
+// IMPORTS
+
+import java.util.SplittableRandom;
+// ===================================================================
+
+
+
+// ===================================================================
+// A medium that wraps another, which decides what arrives.  Each
+// subclass decides how what is sent reaches the wrapped medium; every
+// question about the medium as a whole is passed on to the wrapped
+// one here, in one place, and a subclass overrides only those whose
+// answers it changes.
+//
+// No wrapper guards the wrapped medium against two threads at once,
+// nor sees what a host in another program sends, so one that carries
+// traffic both ways at once, or that leads to another program, is
+// refused.
+abstract class WrappingMedium extends Medium {
+// ===================================================================
+
+
+
+    // ===============================================================
+    // PUBLIC METHODS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // The constructor.
+    protected WrappingMedium (Medium medium) {
+
+	if (medium.fullDuplex() || (medium.localHost() != -1)) {
+
+	    throw new RuntimeException(getClass().getName() +
+				       " needs a medium driven from one " +
+				       "thread in one program: " +
+				       medium.getClass().getName());
+
+	}
+	this.medium = medium;
+
+    } // WrappingMedium
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Return the wrapped medium's scheduler, if it has one, whether
+    // it carries traffic both ways at once, and the host it runs
+    // here, if it leads to another program.
+    public EventScheduler scheduler () {
+
+	return medium.scheduler();
+
+    } // scheduler
+
+    public boolean fullDuplex () {
+
+	return medium.fullDuplex();
+
+    } // fullDuplex
+
+    public int localHost () {
+
+	return medium.localHost();
+
+    } // localHost
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Pass a new source of randomness to the wrapped medium, and
+    // report what it has carried and flipped, and with what weight.
+    public void setRandom (SplittableRandom random) {
+
+	medium.setRandom(random);
+
+    } // setRandom
+
+    public long bitsCarried () {
+
+	return medium.bitsCarried();
+
+    } // bitsCarried
+
+    public long bitsFlipped () {
+
+	return medium.bitsFlipped();
+
+    } // bitsFlipped
+
+    public double takeLogWeight () {
+
+	return medium.takeLogWeight();
+
+    } // takeLogWeight
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // Let the wrapped medium finish.
+    public void finish () {
+
+	medium.finish();
+
+    } // finish
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // DATA MEMBERS
+    // ===============================================================
+
+
+
+    // ===============================================================
+    // The medium being wrapped.
+    final Medium medium;
+    // ===============================================================
+
+
+
+// ===================================================================
+} // class WrappingMedium
+// ===================================================================